@@ -5,8 +5,6 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
-import java.nio.file.Path;
-
 public class App extends Application {
 
     private MainController controller;
@@ -24,29 +22,28 @@ public class App extends Application {
         String css = App.class.getResource("/styles.css").toExternalForm();
         scene.getStylesheets().add(css);
 
+        // grab controller reference for later
+        controller = loader.getController();
+
+        // first layout pulse after show() = the window has content on screen
+        Runnable[] firstPulse = new Runnable[1];
+        firstPulse[0] = () -> {
+            scene.removePostLayoutPulseListener(firstPulse[0]);
+            controller.markFirstPaint();
+        };
+        scene.addPostLayoutPulseListener(firstPulse[0]);
+
         stage.setTitle("Smart Collections – Media & Notes Manager");
         stage.setScene(scene);
         stage.show();
-
-        // grab controller reference for later
-        controller = loader.getController();
     }
 
     @Override
     public void stop() {
-        // save everything when app closes
+        // stop background work; the journal already holds every change
         try {
             if (controller != null) {
-                LibraryRepository repo = controller.getRepository();
-                PersistenceService ps = new PersistenceService();
-
-                // save to user's home directory
-                Path backup = Path.of(
-                        System.getProperty("user.home"),
-                        "smart-collections-backup.scol"
-                );
-
-                ps.saveTo(backup.toFile(), repo);
+                controller.shutdown();
             }
         } catch (Exception e) {
             System.err.println("Backup failed: " + e.getMessage());
@@ -0,0 +1,139 @@
+// src/main/java/org/example/BackupScheduler.java
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Takes library snapshots on a background thread.
+ *
+ * A snapshot runs every `interval`, or sooner once `changesPerSnapshot`
+ * changes have been journaled, and is skipped when the journal is empty
+ * (nothing changed since the last one); snapshotNow takes one regardless.
+ * The previous snapshot is kept as a gzip generation next to it:
+ * <library>.1.gz is the newest, up to <library>.<generations>.gz. It is
+ * compressed (and fsync'ed) before the new snapshot is written, but the
+ * generations only shift once that write has succeeded, so a failed
+ * snapshot leaves them as they were. The snapshot itself is written by
+ * Journal.compact (temp file, fsync, atomic rename), so a crash mid-write
+ * leaves the old one in place.
+ */
+public final class BackupScheduler {
+
+    private final File library;
+    private final Journal journal;
+    private final LibraryRepository repo;
+    private final int changesPerSnapshot;
+    private final int generations;
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "library-backup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger changes = new AtomicInteger();
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    public BackupScheduler(File library, Journal journal, LibraryRepository repo,
+                           Duration interval, int changesPerSnapshot, int generations) {
+        this.library = library;
+        this.journal = journal;
+        this.repo = repo;
+        this.changesPerSnapshot = changesPerSnapshot;
+        this.generations = generations;
+
+        long ms = interval.toMillis();
+        worker.scheduleWithFixedDelay(this::snapshotIfChanged, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    public static Path generationPath(File library, int n) {
+        return Path.of(library.getPath() + "." + n + ".gz");
+    }
+
+    // count one journaled change; snapshot early if there have been enough
+    public void changed() {
+        if (changes.incrementAndGet() >= changesPerSnapshot || journal.isDamaged()) {
+            snapshotSoon();
+        }
+    }
+
+    // snapshot on the background thread as soon as it is free
+    public void snapshotSoon() {
+        if (queued.compareAndSet(false, true)) {
+            worker.execute(this::snapshotIfChanged);
+        }
+    }
+
+    // snapshot even if nothing was journaled (the repository was replaced wholesale, say)
+    public void snapshotNow() {
+        worker.execute(() -> snapshot(true));
+    }
+
+    // stop taking snapshots; pending changes stay in the journal
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void snapshotIfChanged() {
+        queued.set(false);
+        snapshot(false);
+    }
+
+    private void snapshot(boolean force) {
+        Path previous = Path.of(library.getPath() + ".gz.tmp");
+        try {
+            if (!force && !journal.hasChanges()) return;
+            changes.set(0);
+            boolean keep = library.exists();
+            if (keep) compress(previous);
+            journal.compact(repo);
+            if (keep) rotate(previous);
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Backup failed: " + ex.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(previous);
+            } catch (IOException ex) {
+                System.err.println("Could not remove " + previous.getFileName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    // the current snapshot, gzip'ed and on disk, ready to become generation 1
+    private void compress(Path tmp) throws IOException {
+        try (InputStream in = Files.newInputStream(library.toPath());
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            in.transferTo(out);
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    // shift older generations up by one and make the compressed previous snapshot .1.gz
+    private void rotate(Path previous) throws IOException {
+        Files.deleteIfExists(generationPath(library, generations));
+        for (int n = generations - 1; n >= 1; n--) {
+            Path from = generationPath(library, n);
+            if (Files.exists(from)) {
+                Files.move(from, generationPath(library, n + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(previous, generationPath(library, 1), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,293 @@
+// src/main/java/org/example/ContentIndexer.java
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background stage that reads the text inside items' files into the search
+ * index: "content-index" thread, fed paths by imports, the folder watcher
+ * and a sweep over the library at startup.
+ *
+ * A file is read CHUNK bytes at a time through a FileChannel and decoded
+ * into a reused CharBuffer; Words splits each chunk as it arrives (a word
+ * cut by a chunk boundary is carried over), so no file is ever held as one
+ * String and memory stays the same whatever the file size. Extraction runs
+ * without any lock; the resulting counts go into the index through
+ * IndexService.setContent under the write lock, APPLY_BATCH files at a time.
+ *
+ * Files whose size and mtime match what ContentStore has recorded are
+ * skipped without being opened. How text comes out of a file is up to the
+ * Extractor registered for its extension: plain UTF-8 for .txt and .md, a
+ * small built-in scanner for .pdf (see PdfText) that setExtractor can swap
+ * for a full PDF library.
+ */
+public final class ContentIndexer {
+
+    // bytes per read
+    static final int CHUNK = 1 << 16;
+    // files whose counts go in under one write-lock hold
+    static final int APPLY_BATCH = 64;
+    // nothing past this much of a file is read
+    static final long MAX_BYTES = 64L << 20;
+    // longer runs of letters are encoded data rather than words
+    static final int MAX_WORD = 40;
+    // distinct words kept per file; later new words are dropped, known ones still counted
+    static final int MAX_TERMS = 20_000;
+
+    // pushes a file's text, chunk by chunk, into words
+    @FunctionalInterface
+    public interface Extractor {
+        void extract(Path file, Words words) throws IOException;
+    }
+
+    /**
+     * Splits text into index terms the way IndexService does (runs of ASCII
+     * letters and digits, lower-cased), counting them as they come.
+     */
+    public static final class Words {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final char[] word = new char[MAX_WORD];
+        private int len;
+        private boolean tooLong;
+
+        public void accept(CharSequence text) {
+            for (int i = 0, n = text.length(); i < n; i++) {
+                accept(text.charAt(i));
+            }
+        }
+
+        public void accept(char c) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                append((char) (c + ('a' - 'A')));
+            } else {
+                end();
+            }
+        }
+
+        // the current word (if any) is complete
+        public void end() {
+            if (len > 0 && !tooLong) {
+                String w = new String(word, 0, len);
+                if (counts.size() < MAX_TERMS) {
+                    counts.merge(w, 1, Integer::sum);
+                } else {
+                    counts.computeIfPresent(w, (k, f) -> f + 1);
+                }
+            }
+            len = 0;
+            tooLong = false;
+        }
+
+        private void append(char c) {
+            if (len < MAX_WORD) {
+                word[len++] = c;
+            } else {
+                tooLong = true;
+            }
+        }
+
+        ContentStore.Entry toEntry(long size, long mtime) {
+            end();
+            String[] terms = new String[counts.size()];
+            int[] freqs = new int[counts.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                terms[i] = e.getKey();
+                freqs[i++] = e.getValue();
+            }
+            return new ContentStore.Entry(size, mtime, terms, freqs);
+        }
+    }
+
+    private record Extracted(String path, ContentStore.Entry entry) {}
+
+    private final LibraryRepository repo;
+    private final IndexService index;
+    private final Map<String, Extractor> extractors = new HashMap<>();
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    // queued or being read
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile int filesRead;
+
+    private ContentIndexer(LibraryRepository repo, IndexService index) {
+        this.repo = repo;
+        this.index = index;
+        extractors.put(".txt", ContentIndexer::plainText);
+        extractors.put(".md", ContentIndexer::plainText);
+        extractors.put(".pdf", PdfText::extract);
+        this.thread = Thread.ofPlatform().daemon().name("content-index").unstarted(this::run);
+    }
+
+    public static ContentIndexer start(LibraryRepository repo, IndexService index) {
+        ContentIndexer indexer = new ContentIndexer(repo, index);
+        indexer.thread.start();
+        return indexer;
+    }
+
+    // the hook: how text is pulled out of files with this extension (".pdf", say)
+    public synchronized void setExtractor(String extension, Extractor extractor) {
+        extractors.put(extension.toLowerCase(Locale.ROOT), extractor);
+    }
+
+    // queue the files of these items; unchanged ones are skipped when their turn comes
+    public void submit(Collection<Item> items) {
+        for (Item it : items) {
+            String path = it.getPathOrUrl();
+            if (path != null && extractorFor(path) != null) {
+                pending.incrementAndGet();
+                queue.add(path);
+            }
+        }
+    }
+
+    // every file in the library (at startup, or after loading another library)
+    public void submitAll() {
+        submit(repo.read(() -> new ArrayList<>(repo.all())));
+    }
+
+    // files actually opened and read so far
+    public int filesRead() {
+        return filesRead;
+    }
+
+    // true when nothing is queued or being read
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(2_000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ====== worker ======
+
+    private void run() {
+        List<String> paths = new ArrayList<>(APPLY_BATCH);
+        while (!closed) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                paths.add(first);
+                queue.drainTo(paths, APPLY_BATCH - 1);
+                apply(extractAll(paths));
+            } catch (InterruptedException ex) {
+                break;
+            } catch (RuntimeException ex) {
+                System.err.println("Content indexing failed: " + ex);
+            } finally {
+                pending.addAndGet(-paths.size());
+                paths.clear();
+            }
+        }
+    }
+
+    private List<Extracted> extractAll(List<String> paths) {
+        List<Extracted> out = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        for (String path : paths) {
+            if (closed) break;
+            if (!done.add(path)) continue;
+            Extractor extractor = extractorFor(path);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+            } catch (IOException | InvalidPathException ex) {
+                // gone: whatever was read from it goes too
+                if (repo.read(() -> repo.content().contains(path))) out.add(new Extracted(path, null));
+                continue;
+            }
+            long size = attrs.size();
+            long mtime = attrs.lastModifiedTime().toMillis();
+            if (repo.read(() -> repo.content().isCurrent(path, size, mtime))) continue;
+
+            Words words = new Words();
+            try {
+                extractor.extract(Path.of(path), words);
+                filesRead++;
+            } catch (IOException | RuntimeException ex) {
+                // unreadable now; keep the size and mtime so it isn't retried until it changes
+                System.err.println("Could not read text of " + path + ": " + ex.getMessage());
+                words = new Words();
+            }
+            out.add(new Extracted(path, words.toEntry(size, mtime)));
+        }
+        return out;
+    }
+
+    private void apply(List<Extracted> batch) {
+        if (batch.isEmpty()) return;
+        repo.write(() -> {
+            for (Extracted e : batch) index.setContent(repo, e.path(), e.entry());
+        });
+    }
+
+    private synchronized Extractor extractorFor(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || path.indexOf("://") >= 0) return null;
+        return extractors.get(path.substring(dot).toLowerCase(Locale.ROOT));
+    }
+
+    // ====== extractors ======
+
+    // UTF-8 text (invalid bytes become U+FFFD, which splits words like any other symbol)
+    static void plainText(Path file, Words words) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = ByteBuffer.allocateDirect(CHUNK);
+        CharBuffer out = CharBuffer.allocate(CHUNK);
+        long left = MAX_BYTES;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                if (in.remaining() > left) in.limit(in.position() + (int) left);
+                int n = ch.read(in);
+                if (n > 0) left -= n;
+                eof = n < 0 || left <= 0;
+                in.flip();
+                CoderResult r;
+                do {
+                    r = decoder.decode(in, out, eof);
+                    drain(out, words);
+                } while (r.isOverflow());
+                in.compact();
+            }
+            while (decoder.flush(out).isOverflow()) drain(out, words);
+            drain(out, words);
+        }
+        words.end();
+    }
+
+    private static void drain(CharBuffer out, Words words) {
+        out.flip();
+        words.accept(out);
+        out.clear();
+    }
+}
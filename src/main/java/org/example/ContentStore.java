@@ -0,0 +1,235 @@
+// src/main/java/org/example/ContentStore.java
+package org.example;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Words found inside the files items point at, keyed by path, together with
+ * the size and mtime of the file they were read from. IndexService folds an
+ * item's entry into its terms, so content is searched like any other field
+ * and stays in step through edits, moves and undo.
+ *
+ * Each file's terms are kept packed: varint (word id, count) pairs pointing
+ * into one shared word table, whose words are counted by the files using them
+ * and dropped with the last one. IndexService drops a path's entry as soon as
+ * no item points at it any more.
+ *
+ * Filled by ContentIndexer; change it only through IndexService.setContent,
+ * with the write lock held. Saved next to each library snapshot with the
+ * snapshot's stamp, because the saved index segment contains these postings.
+ */
+public final class ContentStore {
+
+    private static final int MAGIC = 0x53434354; // "SCCT"
+    private static final int VERSION = 1;
+
+    // terms and their counts, in no particular order (how entries come in)
+    public record Entry(long size, long mtime, String[] terms, int[] freqs) {}
+
+    // how entries are held: terms packed as varint (word id, count) pairs
+    private record Packed(long size, long mtime, int count, byte[] terms) {}
+
+    private final Map<String, Packed> entries = new HashMap<>();
+    // the shared word table: id of each word, the word of each id, and how many files use it
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] words = new String[64];
+    private int[] refs = new int[64];
+    private int wordLimit;
+    // ids given back by words no file uses any more
+    private int[] free = new int[16];
+    private int freeCount;
+
+    public static Path pathFor(File library) {
+        return Path.of(library.getPath() + ".content");
+    }
+
+    // true if path was read at exactly this size and mtime
+    public boolean isCurrent(String path, long size, long mtime) {
+        Packed p = path == null ? null : entries.get(path);
+        return p != null && p.size() == size && p.mtime() == mtime;
+    }
+
+    public boolean contains(String path) {
+        return path != null && entries.containsKey(path);
+    }
+
+    // each term read from the file at path with its count; false if there's no entry
+    public boolean forEachTerm(String path, ObjIntConsumer<String> action) {
+        Packed p = path == null ? null : entries.get(path);
+        if (p == null) return false;
+        forEachTerm(p, action);
+        return true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // distinct words across all entries
+    public int wordCount() {
+        return ids.size();
+    }
+
+    void put(String path, Entry e) {
+        Packed added = null;
+        if (e != null) {
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(e.terms().length * 3);
+            for (int i = 0; i < e.terms().length; i++) {
+                writeVarint(packed, acquire(e.terms()[i]));
+                writeVarint(packed, e.freqs()[i]);
+            }
+            added = new Packed(e.size(), e.mtime(), e.terms().length, packed.toByteArray());
+        }
+        // new words are counted before the old entry lets go of its own
+        Packed old = added == null ? entries.remove(path) : entries.put(path, added);
+        if (old != null) {
+            int[] pos = {0};
+            while (pos[0] < old.terms().length) {
+                release(readVarint(old.terms(), pos));
+                readVarint(old.terms(), pos);
+            }
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        ids.clear();
+        Arrays.fill(words, 0, wordLimit, null);
+        wordLimit = 0;
+        freeCount = 0;
+    }
+
+    private void forEachTerm(Packed p, ObjIntConsumer<String> action) {
+        int[] pos = {0};
+        while (pos[0] < p.terms().length) {
+            String word = words[readVarint(p.terms(), pos)];
+            action.accept(word, readVarint(p.terms(), pos));
+        }
+    }
+
+    private int acquire(String word) {
+        Integer known = ids.get(word);
+        int id;
+        if (known != null) {
+            id = known;
+        } else {
+            if (freeCount > 0) {
+                id = free[--freeCount];
+            } else {
+                if (wordLimit == words.length) {
+                    words = Arrays.copyOf(words, wordLimit * 2);
+                    refs = Arrays.copyOf(refs, wordLimit * 2);
+                }
+                id = wordLimit++;
+            }
+            words[id] = word;
+            refs[id] = 0;
+            ids.put(word, id);
+        }
+        refs[id]++;
+        return id;
+    }
+
+    private void release(int id) {
+        if (--refs[id] > 0) return;
+        ids.remove(words[id]);
+        words[id] = null;
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = id;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(byte[] bytes, int[] pos) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[pos[0]++];
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    // entries for the paths still wanted, tmp file + rename
+    void write(Path file, long stamp, Predicate<String> keep) throws IOException {
+        Path tmp = Path.of(file + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp);
+            Map<String, Packed> kept = new HashMap<>();
+            entries.forEach((path, p) -> {
+                if (keep.test(path)) kept.put(path, p);
+            });
+            out.writeInt(kept.size());
+            for (Map.Entry<String, Packed> me : kept.entrySet()) {
+                Packed p = me.getValue();
+                out.writeUTF(me.getKey());
+                out.writeLong(p.size());
+                out.writeLong(p.mtime());
+                out.writeInt(p.count());
+                int[] pos = {0};
+                while (pos[0] < p.terms().length) {
+                    out.writeUTF(words[readVarint(p.terms(), pos)]);
+                    out.writeInt(readVarint(p.terms(), pos));
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the entries saved with the snapshot of this stamp. Returns null if
+     * the file is there but belongs to another snapshot or can't be read (the
+     * saved index then can't be trusted either); a missing file is an empty
+     * store, as for libraries saved before content was indexed.
+     */
+    static ContentStore read(Path file, long stamp) {
+        ContentStore store = new ContentStore();
+        if (!Files.isRegularFile(file)) return store;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stamp) return null;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                int count = in.readInt();
+                String[] terms = new String[count];
+                int[] freqs = new int[count];
+                for (int t = 0; t < count; t++) {
+                    terms[t] = in.readUTF();
+                    freqs[t] = in.readInt();
+                }
+                store.put(path, new Entry(size, mtime, terms, freqs));
+            }
+            return store;
+        } catch (IOException ex) {
+            System.err.println("Ignoring file content index " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // replace everything with another store's entries (on load)
+    void replaceWith(ContentStore other) {
+        clear();
+        entries.putAll(other.entries);
+        ids.putAll(other.ids);
+        words = other.words.clone();
+        refs = other.refs.clone();
+        wordLimit = other.wordLimit;
+        free = other.free.clone();
+        freeCount = other.freeCount;
+    }
+}
@@ -0,0 +1,72 @@
+// src/main/java/org/example/FieldFilter.java
+package org.example;
+
+/**
+ * One structured clause of a search query (tag:, category:, kind:, rating,
+ * created:, codec:, duration). Each clause can give a cheap size estimate, materialize its
+ * posting list, or test a single ordinal, so the planner can pick whichever
+ * is cheaper for the candidates it already has.
+ */
+public sealed interface FieldFilter {
+
+    // roughly how many items match (exact for everything except ranges)
+    int estimate(FieldIndex fx);
+
+    PostingList postings(FieldIndex fx);
+
+    boolean matches(FieldIndex fx, int ordinal);
+
+    record Tag(String tag) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.tagPostings(tag).size(); }
+        public PostingList postings(FieldIndex fx) { return fx.tagPostings(tag); }
+        public boolean matches(FieldIndex fx, int ordinal) { return fx.tagPostings(tag).contains(ordinal); }
+    }
+
+    record Category(ItemCategory category) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.categoryPostings(category).size(); }
+        public PostingList postings(FieldIndex fx) { return fx.categoryPostings(category); }
+        public boolean matches(FieldIndex fx, int ordinal) { return fx.categoryOf(ordinal) == category; }
+    }
+
+    record Kind(MediaKind kind) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.kindPostings(kind).size(); }
+        public PostingList postings(FieldIndex fx) { return fx.kindPostings(kind); }
+        public boolean matches(FieldIndex fx, int ordinal) { return fx.kindOf(ordinal) == kind; }
+    }
+
+    // inclusive rating range
+    record Rating(int min, int max) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.ratingCount(min, max); }
+        public PostingList postings(FieldIndex fx) { return fx.ratingPostings(min, max); }
+        public boolean matches(FieldIndex fx, int ordinal) {
+            int r = fx.ratingOf(ordinal);
+            return r >= min && r <= max;
+        }
+    }
+
+    record Codec(String codec) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.codecPostings(codec).size(); }
+        public PostingList postings(FieldIndex fx) { return fx.codecPostings(codec); }
+        public boolean matches(FieldIndex fx, int ordinal) { return fx.codecPostings(codec).contains(ordinal); }
+    }
+
+    // inclusive range of whole seconds
+    record Duration(int fromSec, int toSec) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.durationCount(fromSec, toSec); }
+        public PostingList postings(FieldIndex fx) { return fx.durationPostings(fromSec, toSec); }
+        public boolean matches(FieldIndex fx, int ordinal) {
+            int s = fx.durationOf(ordinal);
+            return s != FieldIndex.NO_DURATION && s >= fromSec && s <= toSec;
+        }
+    }
+
+    // inclusive range of epoch days
+    record Created(long fromDay, long toDay) implements FieldFilter {
+        public int estimate(FieldIndex fx) { return fx.createdCount(fromDay, toDay); }
+        public PostingList postings(FieldIndex fx) { return fx.createdPostings(fromDay, toDay); }
+        public boolean matches(FieldIndex fx, int ordinal) {
+            long d = fx.createdDayOf(ordinal);
+            return d != FieldIndex.NO_DAY && d >= fromDay && d <= toDay;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+// src/main/java/org/example/FieldIndex.java
+package org.example;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Secondary indexes over structured item fields, keyed by the same dense
+ * ordinals as the KeywordIndex.
+ *
+ * Each field has postings per value (category / media kind bitmaps, rating
+ * buckets, tag and codec lists, sorted day -> items and seconds -> items
+ * maps for createdAt and media duration) plus a
+ * per-ordinal column, so a clause can either be materialized or just probed
+ * for a handful of candidates. plan() runs the most selective clause first.
+ * Paths are indexed too (sorted, so a folder's items are one range), for
+ * import and folder sync rather than for queries.
+ */
+public class FieldIndex implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_RATING = 5;
+    public static final int NO_DAY = Integer.MIN_VALUE;
+    public static final int NO_DURATION = -1;
+
+    // when the candidate set is this many times smaller than a clause, probe instead of intersect
+    private static final int PROBE_RATIO = 8;
+
+    private static final PostingList EMPTY = new PostingList();
+
+    private final EnumMap<ItemCategory, PostingList> categories = new EnumMap<>(ItemCategory.class);
+    private final EnumMap<MediaKind, PostingList> kinds = new EnumMap<>(MediaKind.class);
+    private final PostingList[] ratings = new PostingList[MAX_RATING + 1];
+    private final Map<String, PostingList> tags = new HashMap<>();
+    // sorted by epoch day, for created: ranges
+    private final TreeMap<Integer, PostingList> createdDays = new TreeMap<>();
+    // pathOrUrl -> items, sorted so everything under a folder is one sub-map
+    private final TreeMap<String, PostingList> paths = new TreeMap<>();
+    // from MediaInfo: codec name, and whole seconds for duration ranges
+    private final Map<String, PostingList> codecs = new HashMap<>();
+    private final TreeMap<Integer, PostingList> durations = new TreeMap<>();
+
+    // per-ordinal columns (0 = unset for the enum columns)
+    private byte[] categoryCol = new byte[16];
+    private byte[] kindCol = new byte[16];
+    private byte[] ratingCol = new byte[16];
+    private int[] dayCol = emptyDays(16);
+    private int[] durationCol = noDurations(16);
+
+    public FieldIndex() {
+        for (int i = 0; i <= MAX_RATING; i++) ratings[i] = new PostingList();
+    }
+
+    // ====== maintenance ======
+
+    public void add(int ord, Item it) {
+        ensureCapacity(ord);
+        setCategory(ord, it.getCategory());
+        setKind(ord, it.getMediaKind());
+        setRating(ord, it.getRating());
+        setDay(ord, dayOf(it.getCreatedAt()));
+        for (String tag : it.getTags()) {
+            tags.computeIfAbsent(norm(tag), k -> new PostingList()).add(ord);
+        }
+        if (it.getPathOrUrl() != null) {
+            paths.computeIfAbsent(it.getPathOrUrl(), k -> new PostingList()).add(ord);
+        }
+        String codec = codecOf(it);
+        if (codec != null) codecs.computeIfAbsent(codec, k -> new PostingList()).add(ord);
+        setDuration(ord, secondsOf(it));
+    }
+
+    public void remove(int ord, Item it) {
+        if (ord >= categoryCol.length) return;
+        setCategory(ord, null);
+        setKind(ord, null);
+        ratings[ratingCol[ord]].remove(ord);
+        ratingCol[ord] = 0;
+        setDay(ord, NO_DAY);
+        for (String tag : it.getTags()) {
+            removeTag(norm(tag), ord);
+        }
+        if (it.getPathOrUrl() != null) removeFrom(paths, it.getPathOrUrl(), ord);
+        String codec = codecOf(it);
+        if (codec != null) removeFrom(codecs, codec, ord);
+        setDuration(ord, NO_DURATION);
+    }
+
+    // only the fields that changed are touched
+    public void update(int ord, Item before, Item after) {
+        ensureCapacity(ord);
+        setCategory(ord, after.getCategory());
+        setKind(ord, after.getMediaKind());
+        setRating(ord, after.getRating());
+        setDay(ord, dayOf(after.getCreatedAt()));
+
+        Set<String> oldTags = new HashSet<>();
+        for (String tag : before.getTags()) oldTags.add(norm(tag));
+        Set<String> newTags = new HashSet<>();
+        for (String tag : after.getTags()) newTags.add(norm(tag));
+        for (String tag : oldTags) {
+            if (!newTags.contains(tag)) removeTag(tag, ord);
+        }
+        for (String tag : newTags) {
+            if (!oldTags.contains(tag)) tags.computeIfAbsent(tag, k -> new PostingList()).add(ord);
+        }
+
+        if (!Objects.equals(before.getPathOrUrl(), after.getPathOrUrl())) {
+            if (before.getPathOrUrl() != null) removeFrom(paths, before.getPathOrUrl(), ord);
+            if (after.getPathOrUrl() != null) {
+                paths.computeIfAbsent(after.getPathOrUrl(), k -> new PostingList()).add(ord);
+            }
+        }
+
+        String oldCodec = codecOf(before);
+        String newCodec = codecOf(after);
+        if (!Objects.equals(oldCodec, newCodec)) {
+            if (oldCodec != null) removeFrom(codecs, oldCodec, ord);
+            if (newCodec != null) codecs.computeIfAbsent(newCodec, k -> new PostingList()).add(ord);
+        }
+        setDuration(ord, secondsOf(after));
+    }
+
+    public void clear() {
+        categories.clear();
+        kinds.clear();
+        for (int i = 0; i <= MAX_RATING; i++) ratings[i] = new PostingList();
+        tags.clear();
+        createdDays.clear();
+        paths.clear();
+        codecs.clear();
+        durations.clear();
+        categoryCol = new byte[16];
+        kindCol = new byte[16];
+        ratingCol = new byte[16];
+        dayCol = emptyDays(16);
+        durationCol = noDurations(16);
+    }
+
+    // ====== lookups used by FieldFilter ======
+
+    public PostingList tagPostings(String tag) {
+        return tags.getOrDefault(norm(tag), EMPTY);
+    }
+
+    public boolean hasPath(String path) {
+        return paths.containsKey(path);
+    }
+
+    public PostingList pathPostings(String path) {
+        return paths.getOrDefault(path, EMPTY);
+    }
+
+    // items whose path starts with prefix (a folder plus its separator)
+    public PostingList pathsUnder(String prefix) {
+        return PostingList.union(paths.subMap(prefix, prefix + Character.MAX_VALUE).values());
+    }
+
+    public PostingList categoryPostings(ItemCategory c) {
+        return categories.getOrDefault(c, EMPTY);
+    }
+
+    public PostingList kindPostings(MediaKind k) {
+        return kinds.getOrDefault(k, EMPTY);
+    }
+
+    public int ratingCount(int min, int max) {
+        int n = 0;
+        for (int r = Math.max(0, min); r <= Math.min(MAX_RATING, max); r++) n += ratings[r].size();
+        return n;
+    }
+
+    public PostingList ratingPostings(int min, int max) {
+        List<PostingList> parts = new ArrayList<>();
+        for (int r = Math.max(0, min); r <= Math.min(MAX_RATING, max); r++) parts.add(ratings[r]);
+        return PostingList.union(parts);
+    }
+
+    public int createdCount(long fromDay, long toDay) {
+        int n = 0;
+        for (PostingList p : createdRange(fromDay, toDay).values()) n += p.size();
+        return n;
+    }
+
+    public PostingList createdPostings(long fromDay, long toDay) {
+        return PostingList.union(createdRange(fromDay, toDay).values());
+    }
+
+    public PostingList codecPostings(String codec) {
+        return codecs.getOrDefault(norm(codec), EMPTY);
+    }
+
+    public int durationCount(int fromSec, int toSec) {
+        int n = 0;
+        for (PostingList p : durationRange(fromSec, toSec).values()) n += p.size();
+        return n;
+    }
+
+    public PostingList durationPostings(int fromSec, int toSec) {
+        return PostingList.union(durationRange(fromSec, toSec).values());
+    }
+
+    public ItemCategory categoryOf(int ord) {
+        int v = ord < categoryCol.length ? categoryCol[ord] : 0;
+        return v == 0 ? null : ItemCategory.values()[v - 1];
+    }
+
+    public MediaKind kindOf(int ord) {
+        int v = ord < kindCol.length ? kindCol[ord] : 0;
+        return v == 0 ? null : MediaKind.values()[v - 1];
+    }
+
+    public int ratingOf(int ord) {
+        return ord < ratingCol.length ? ratingCol[ord] : 0;
+    }
+
+    public long createdDayOf(int ord) {
+        return ord < dayCol.length ? dayCol[ord] : NO_DAY;
+    }
+
+    public int durationOf(int ord) {
+        return ord < durationCol.length ? durationCol[ord] : NO_DURATION;
+    }
+
+    // ====== planner ======
+
+    /**
+     * Items matching every filter, optionally restricted to `start`
+     * (e.g. the keyword matches; null means "all items"). Clauses run in
+     * order of estimated size, so the working set shrinks as fast as
+     * possible; once it is much smaller than the next clause, the clause is
+     * checked per candidate through the columns instead of materialized.
+     */
+    public PostingList plan(List<FieldFilter> filters, PostingList start) {
+        List<FieldFilter> ordered = new ArrayList<>(filters);
+        Map<FieldFilter, Integer> estimates = new HashMap<>();
+        for (FieldFilter f : ordered) estimates.put(f, f.estimate(this));
+        ordered.sort(Comparator.comparingInt(estimates::get));
+
+        PostingList cur = start;
+        for (FieldFilter f : ordered) {
+            int est = estimates.get(f);
+            if (est == 0) return new PostingList();
+
+            if (cur == null) {
+                cur = f.postings(this);
+            } else if ((long) cur.size() * PROBE_RATIO < est) {
+                cur = cur.filter(ord -> f.matches(this, ord));
+            } else {
+                cur = PostingList.and(cur, f.postings(this));
+            }
+            if (cur.isEmpty()) return cur;
+        }
+        return cur == null ? new PostingList() : cur;
+    }
+
+    // ====== internals ======
+
+    private NavigableMap<Integer, PostingList> createdRange(long fromDay, long toDay) {
+        int from = (int) Math.max(Integer.MIN_VALUE + 1, fromDay);
+        int to = (int) Math.min(Integer.MAX_VALUE, toDay);
+        if (from > to) return Collections.emptyNavigableMap();
+        return createdDays.subMap(from, true, to, true);
+    }
+
+    private NavigableMap<Integer, PostingList> durationRange(int fromSec, int toSec) {
+        if (Math.max(0, fromSec) > toSec) return Collections.emptyNavigableMap();
+        return durations.subMap(Math.max(0, fromSec), true, toSec, true);
+    }
+
+    private void setCategory(int ord, ItemCategory c) {
+        ItemCategory old = categoryOf(ord);
+        if (old == c) return;
+        if (old != null) removeFrom(categories, old, ord);
+        if (c != null) categories.computeIfAbsent(c, k -> new PostingList()).add(ord);
+        categoryCol[ord] = (byte) (c == null ? 0 : c.ordinal() + 1);
+    }
+
+    private void setKind(int ord, MediaKind k) {
+        MediaKind old = kindOf(ord);
+        if (old == k) return;
+        if (old != null) removeFrom(kinds, old, ord);
+        if (k != null) kinds.computeIfAbsent(k, x -> new PostingList()).add(ord);
+        kindCol[ord] = (byte) (k == null ? 0 : k.ordinal() + 1);
+    }
+
+    private void setRating(int ord, int rating) {
+        int r = Math.max(0, Math.min(MAX_RATING, rating));
+        int old = ratingCol[ord];
+        // rating 0 is both "unset" and a real bucket, so always make sure we're in it
+        if (old != r) ratings[old].remove(ord);
+        ratings[r].add(ord);
+        ratingCol[ord] = (byte) r;
+    }
+
+    private void setDay(int ord, int day) {
+        int old = dayCol[ord];
+        if (old == day) return;
+        if (old != NO_DAY) removeFrom(createdDays, old, ord);
+        if (day != NO_DAY) createdDays.computeIfAbsent(day, k -> new PostingList()).add(ord);
+        dayCol[ord] = day;
+    }
+
+    private void setDuration(int ord, int seconds) {
+        int old = durationCol[ord];
+        if (old == seconds) return;
+        if (old != NO_DURATION) removeFrom(durations, old, ord);
+        if (seconds != NO_DURATION) durations.computeIfAbsent(seconds, k -> new PostingList()).add(ord);
+        durationCol[ord] = seconds;
+    }
+
+    private static String codecOf(Item it) {
+        MediaInfo m = it.getMedia();
+        return m == null || m.codec() == null ? null : norm(m.codec());
+    }
+
+    private static int secondsOf(Item it) {
+        MediaInfo m = it.getMedia();
+        return m == null || m.durationMs() < 0 ? NO_DURATION : (int) Math.min(Integer.MAX_VALUE, m.durationMs() / 1000);
+    }
+
+    private void removeTag(String tag, int ord) {
+        removeFrom(tags, tag, ord);
+    }
+
+    private static <K> void removeFrom(Map<K, PostingList> map, K key, int ord) {
+        PostingList p = map.get(key);
+        if (p == null) return;
+        p.remove(ord);
+        if (p.isEmpty()) map.remove(key);
+    }
+
+    private void ensureCapacity(int ord) {
+        if (ord < categoryCol.length) return;
+        int cap = Math.max(ord + 1, categoryCol.length * 2);
+        categoryCol = Arrays.copyOf(categoryCol, cap);
+        kindCol = Arrays.copyOf(kindCol, cap);
+        ratingCol = Arrays.copyOf(ratingCol, cap);
+        int oldLen = dayCol.length;
+        dayCol = Arrays.copyOf(dayCol, cap);
+        Arrays.fill(dayCol, oldLen, cap, NO_DAY);
+        durationCol = Arrays.copyOf(durationCol, cap);
+        Arrays.fill(durationCol, oldLen, cap, NO_DURATION);
+    }
+
+    private static int[] emptyDays(int n) {
+        int[] days = new int[n];
+        Arrays.fill(days, NO_DAY);
+        return days;
+    }
+
+    private static int[] noDurations(int n) {
+        int[] secs = new int[n];
+        Arrays.fill(secs, NO_DURATION);
+        return secs;
+    }
+
+    // days are counted in the local time zone, like the user reads them
+    static int dayOf(Instant t) {
+        return t == null ? NO_DAY : (int) t.atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    private static String norm(String s) {
+        return s.toLowerCase(Locale.ROOT).trim();
+    }
+}
@@ -0,0 +1,545 @@
+// src/main/java/org/example/FolderWatcher.java
+package org.example;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps watched folders and the library in step.
+ *
+ * Every directory under a watched root is registered with a WatchService.
+ * Creates and deletes are collected on the "folder-watch" thread and
+ * applied together once things have been quiet for QUIET_MS (or MAX_PENDING
+ * have piled up), under one write-lock hold: new supported files become
+ * items, vanished ones are removed, and a delete paired with a create of
+ * the same file name (a move) or of the only new file in the same folder
+ * (a rename) just updates the item's path, so its tags and rating stay.
+ *
+ * Roots and the mtime of every directory seen are saved to a state file.
+ * On the next start each directory is stat'ed, and only those whose mtime
+ * moved (i.e. had entries created, deleted or renamed while we weren't
+ * looking) are listed again, instead of rescanning every tree.
+ *
+ * Items are only removed when the folder they were in has been listed and
+ * they weren't in it (or a delete event said so). A folder that can't be
+ * read, and a root or top-level folder that lists empty although items are
+ * recorded under it (an unmounted drive's mount point), is taken to be
+ * offline: its items stay, and it is tried again every OFFLINE_RETRY_MS.
+ */
+public final class FolderWatcher {
+
+    // gets what one flush changed, while the write lock is still held
+    public interface Listener {
+        void changed(List<Item> put, List<ItemId> removed);
+    }
+
+    private static final long QUIET_MS = 300;
+    // a steady trickle of events is still flushed this often
+    private static final long MAX_DELAY_MS = 2_000;
+    private static final int MAX_PENDING = 1_000;
+    private static final long SAVE_EVERY_MS = 30_000;
+    private static final long OFFLINE_RETRY_MS = 30_000;
+    // same-name files considered per vanished item when pairing moves
+    private static final int MAX_CANDIDATES = 64;
+
+    private static final int STATE_MAGIC = 0x53435754; // "SCWT"
+    private static final int STATE_VERSION = 1;
+
+    private final Path stateFile;
+    private final LibraryRepository repo;
+    private final IndexService index;
+    private final Listener listener;
+    private final WatchService ws;
+
+    // owned by the watcher thread; other threads post commands instead
+    private final Set<Path> roots = new LinkedHashSet<>();
+    private final Map<Path, Long> dirMtimes = new HashMap<>();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    // last event per path wins: true = created, false = deleted
+    private final Map<Path, Boolean> changes = new LinkedHashMap<>();
+    private final Set<Path> rescans = new LinkedHashSet<>();
+    // folders that couldn't be read (or looked unmounted) the last time they were visited
+    private final Set<Path> offline = new LinkedHashSet<>();
+    private long pendingSince;
+    private long lastSave = System.currentTimeMillis();
+    private long lastRetry = System.currentTimeMillis();
+    private boolean watchLimitReported;
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private FolderWatcher(Path stateFile, LibraryRepository repo, IndexService index, Listener listener)
+            throws IOException {
+        this.stateFile = stateFile;
+        this.repo = repo;
+        this.index = index;
+        this.listener = listener;
+        this.ws = FileSystems.getDefault().newWatchService();
+        this.thread = Thread.ofPlatform().daemon().name("folder-watch").unstarted(this::run);
+    }
+
+    /**
+     * Load the roots saved for this library, reconcile them with the disk
+     * and start watching, all on the watcher thread.
+     */
+    public static FolderWatcher start(File library, LibraryRepository repo, IndexService index,
+                                      Listener listener) throws IOException {
+        FolderWatcher w = new FolderWatcher(statePathFor(library), repo, index, listener);
+        w.thread.start();
+        return w;
+    }
+
+    public static Path statePathFor(File library) {
+        return Path.of(library.getPath() + ".watch");
+    }
+
+    // start watching root (and pick up anything in it that isn't in the library yet)
+    public void watch(Path root) {
+        Path abs = root.toAbsolutePath();
+        commands.add(() -> {
+            roots.add(abs);
+            reconcile(abs, true);
+            flush();
+            saveState();
+        });
+    }
+
+    // stop watching everything; items already imported stay
+    public void unwatchAll() {
+        commands.add(() -> {
+            keys.keySet().forEach(WatchKey::cancel);
+            keys.clear();
+            roots.clear();
+            dirMtimes.clear();
+            changes.clear();
+            rescans.clear();
+            offline.clear();
+            saveState();
+        });
+    }
+
+    // list every watched folder again, e.g. after another library was loaded
+    public void rescanAll() {
+        commands.add(() -> {
+            dirMtimes.clear();
+            for (Path root : roots) reconcile(root, false);
+            flush();
+            saveState();
+        });
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(2_000);
+            ws.close();
+        } catch (IOException | InterruptedException ex) {
+            System.err.println("Folder watcher did not stop cleanly: " + ex.getMessage());
+        }
+    }
+
+    // ====== watcher thread ======
+
+    private void run() {
+        try {
+            loadState();
+            for (Path root : roots) reconcile(root, true);
+            flush();
+            saveState();
+
+            while (!closed) {
+                for (Runnable c; (c = commands.poll()) != null; ) c.run();
+
+                WatchKey key = ws.poll(QUIET_MS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collect(key);
+                    boolean overdue = System.currentTimeMillis() - pendingSince >= MAX_DELAY_MS;
+                    if (changes.size() + rescans.size() < MAX_PENDING && !overdue) continue;
+                }
+                flush();
+                if (!offline.isEmpty() && System.currentTimeMillis() - lastRetry >= OFFLINE_RETRY_MS) retryOffline();
+                if (System.currentTimeMillis() - lastSave >= SAVE_EVERY_MS) saveState();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // closing
+        } catch (RuntimeException ex) {
+            System.err.println("Folder watching stopped: " + ex.getMessage());
+        }
+        flush();
+        saveState();
+    }
+
+    private void collect(WatchKey key) {
+        Path dir = keys.get(key);
+        if (changes.isEmpty() && rescans.isEmpty()) pendingSince = System.currentTimeMillis();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (dir == null) continue;
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were dropped; list the folder again
+                rescans.add(dir);
+                continue;
+            }
+            Path child = dir.resolve((Path) ev.context());
+            changes.put(child, ev.kind() == StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            // a root whose drive went away; look again later
+            if (dir != null && isTopLevel(dir)) offline.add(dir);
+        }
+    }
+
+    // from the parent where there is one, so a folder that was really removed is noticed
+    private void retryOffline() {
+        lastRetry = System.currentTimeMillis();
+        for (Path dir : new ArrayList<>(offline)) {
+            reconcile(roots.contains(dir) || dir.getParent() == null ? dir : dir.getParent(), true);
+        }
+    }
+
+    // turn the pending events into files that appeared and paths that vanished, then apply them
+    private void flush() {
+        if (changes.isEmpty() && rescans.isEmpty()) return;
+        List<Path> appeared = new ArrayList<>();
+        List<Path> vanished = new ArrayList<>();
+        Set<Path> touchedDirs = new HashSet<>();
+
+        for (Map.Entry<Path, Boolean> e : changes.entrySet()) {
+            Path p = e.getKey();
+            touchedDirs.add(p.getParent());
+            BasicFileAttributes attrs = e.getValue() ? stat(p) : null;
+            if (attrs == null) {
+                vanished.add(p);
+                forgetTree(p);
+            } else if (attrs.isDirectory()) {
+                // a new folder (or one moved in) may already have files in it
+                scanTree(p, appeared);
+            } else if (ImportService.isSupported(p)) {
+                appeared.add(p);
+            }
+        }
+        for (Path dir : rescans) reconcile(dir, false, appeared, vanished);
+        changes.clear();
+        rescans.clear();
+
+        for (Path dir : touchedDirs) {
+            BasicFileAttributes attrs = stat(dir);
+            if (attrs != null && dirMtimes.containsKey(dir)) dirMtimes.put(dir, attrs.lastModifiedTime().toMillis());
+        }
+        apply(appeared, vanished);
+    }
+
+    private void apply(List<Path> appeared, List<Path> vanished) {
+        if (appeared.isEmpty() && vanished.isEmpty()) return;
+        repo.write(() -> {
+            FieldIndex fi = repo.fieldIndex();
+
+            // items whose file (or folder) is gone
+            Map<ItemId, Item> gone = new LinkedHashMap<>();
+            for (Path p : vanished) {
+                String path = p.toString();
+                for (Item it : itemsAt(fi.pathPostings(path))) gone.put(it.getId(), it);
+                for (Item it : itemsAt(fi.pathsUnder(path + File.separator))) gone.put(it.getId(), it);
+            }
+
+            // files that aren't items yet
+            Set<Path> fresh = new LinkedHashSet<>();
+            for (Path p : appeared) {
+                if (!fi.hasPath(p.toString())) fresh.add(p);
+            }
+
+            List<Item> put = new ArrayList<>();
+            List<ItemId> removed = new ArrayList<>();
+            Map<Item, Path> moves = pairMoves(gone.values(), fresh);
+            for (Item old : gone.values()) {
+                Path to = moves.get(old);
+                if (to != null) {
+                    Path from = Path.of(old.getPathOrUrl());
+                    Item moved = Journal.copyOf(old);
+                    moved.setPathOrUrl(to.toString());
+                    // keep a title the user changed, follow the file name otherwise
+                    if (Objects.equals(old.getTitle(), String.valueOf(from.getFileName()))) {
+                        moved.setTitle(to.getFileName().toString());
+                    }
+                    index.update(repo, old, moved);
+                    repo.add(moved);
+                    put.add(moved);
+                    fresh.remove(to);
+                } else {
+                    index.unindex(repo, old);
+                    repo.remove(old.getId());
+                    removed.add(old.getId());
+                }
+            }
+            for (Path p : fresh) {
+                Item it = ImportService.itemFor(p);
+                repo.add(it);
+                index.index(repo, it);
+                put.add(it);
+            }
+            if (!put.isEmpty() || !removed.isEmpty()) listener.changed(put, removed);
+        });
+    }
+
+    /**
+     * Which vanished items are really the same file under a new path: first
+     * by file name (moves, including a renamed parent folder), preferring the
+     * candidate whose folder path looks most alike; then, per folder, a lone
+     * vanished item and a lone new file with the same extension (a rename).
+     */
+    static Map<Item, Path> pairMoves(Collection<Item> gone, Set<Path> fresh) {
+        Map<Item, Path> moves = new HashMap<>();
+        if (gone.isEmpty() || fresh.isEmpty()) return moves;
+
+        Map<String, List<Path>> byName = new HashMap<>();
+        for (Path p : fresh) byName.computeIfAbsent(p.getFileName().toString(), k -> new ArrayList<>()).add(p);
+
+        // every same-name pairing, most alike first, so one item can't take another's file
+        record Pairing(Item item, Path to, int score) {}
+        List<Pairing> pairings = new ArrayList<>();
+        for (Item it : gone) {
+            Path from = Path.of(it.getPathOrUrl());
+            List<Path> cands = byName.getOrDefault(String.valueOf(from.getFileName()), List.of());
+            for (Path cand : cands.subList(0, Math.min(cands.size(), MAX_CANDIDATES))) {
+                pairings.add(new Pairing(it, cand, likeness(from.getParent(), cand.getParent())));
+            }
+        }
+        pairings.sort(Comparator.comparingInt(Pairing::score).reversed());
+        Set<Path> used = new HashSet<>();
+        for (Pairing pr : pairings) {
+            if (!moves.containsKey(pr.item()) && used.add(pr.to())) moves.put(pr.item(), pr.to());
+        }
+        List<Item> unpaired = new ArrayList<>();
+        for (Item it : gone) {
+            if (!moves.containsKey(it)) unpaired.add(it);
+        }
+
+        Map<Path, List<Item>> goneByDir = new HashMap<>();
+        for (Item it : unpaired) goneByDir.computeIfAbsent(Path.of(it.getPathOrUrl()).getParent(), k -> new ArrayList<>()).add(it);
+        Map<Path, List<Path>> freshByDir = new HashMap<>();
+        for (Path p : fresh) {
+            if (!used.contains(p)) freshByDir.computeIfAbsent(p.getParent(), k -> new ArrayList<>()).add(p);
+        }
+        goneByDir.forEach((dir, items) -> {
+            List<Path> cands = freshByDir.getOrDefault(dir, List.of());
+            if (items.size() == 1 && cands.size() == 1
+                    && extensionOf(items.get(0).getPathOrUrl()).equals(extensionOf(cands.get(0).toString()))) {
+                moves.put(items.get(0), cands.get(0));
+            }
+        });
+        return moves;
+    }
+
+    // leading plus trailing path segments two folders share
+    private static int likeness(Path a, Path b) {
+        if (a == null || b == null) return 0;
+        int n = Math.min(a.getNameCount(), b.getNameCount());
+        int score = 0;
+        while (score < n && a.getName(score).equals(b.getName(score))) score++;
+        for (int i = 1; i <= n - score && a.getName(a.getNameCount() - i).equals(b.getName(b.getNameCount() - i)); i++) {
+            score++;
+        }
+        return score;
+    }
+
+    private static String extensionOf(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot < 0 ? "" : path.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    // ====== reconciliation ======
+
+    private void reconcile(Path root, boolean trustMtimes) {
+        List<Path> appeared = new ArrayList<>();
+        List<Path> vanished = new ArrayList<>();
+        reconcile(root, trustMtimes, appeared, vanished);
+        apply(appeared, vanished);
+    }
+
+    /**
+     * Walk the folders under root, registering each with the watch service.
+     * A folder whose mtime matches the saved one is taken as unchanged and
+     * only its known subfolders are visited; any other folder is listed and
+     * compared with the items recorded for it.
+     */
+    private void reconcile(Path root, boolean trustMtimes, List<Path> appeared, List<Path> vanished) {
+        Map<Path, List<Path>> knownKids = new HashMap<>();
+        for (Path dir : dirMtimes.keySet()) {
+            if (dir.getParent() != null) knownKids.computeIfAbsent(dir.getParent(), k -> new ArrayList<>()).add(dir);
+        }
+
+        Deque<Path> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Path dir = stack.pop();
+            BasicFileAttributes attrs = stat(dir);
+            if (attrs == null || !attrs.isDirectory()) {
+                // gone, or just unreachable (unmounted, no permission): we can't
+                // tell which, so keep its items; a listing of its parent says if it was removed
+                markOffline(dir);
+                continue;
+            }
+            register(dir);
+            long mtime = attrs.lastModifiedTime().toMillis();
+            Long seen = dirMtimes.get(dir);
+            List<Path> kids = knownKids.getOrDefault(dir, List.of());
+            if (trustMtimes && seen != null && seen == mtime) {
+                offline.remove(dir);
+                kids.forEach(stack::push);
+                continue;
+            }
+
+            Set<String> files = new HashSet<>();
+            Set<Path> subdirs = new HashSet<>();
+            // listed but not stat'able: neither gone nor new
+            Set<Path> unread = new HashSet<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p : entries) {
+                    BasicFileAttributes a = stat(p);
+                    if (a == null) {
+                        unread.add(p);
+                        continue;
+                    }
+                    if (a.isDirectory()) {
+                        subdirs.add(p);
+                        stack.push(p);
+                    } else if (ImportService.isSupported(p)) {
+                        files.add(p.toString());
+                        appeared.add(p);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                markOffline(dir);
+                continue;
+            }
+            if (files.isEmpty() && subdirs.isEmpty() && unread.isEmpty() && isTopLevel(dir) && (!kids.isEmpty() || hasItemsUnder(dir))) {
+                // most likely the mount point of a drive that isn't there
+                markOffline(dir);
+                continue;
+            }
+            offline.remove(dir);
+            dirMtimes.put(dir, mtime);
+            for (Path kid : kids) {
+                if (!subdirs.contains(kid) && !unread.contains(kid)) {
+                    vanished.add(kid);
+                    forgetTree(kid);
+                }
+            }
+            // items recorded directly in this folder whose file is gone
+            String prefix = dir + File.separator;
+            repo.read(() -> {
+                for (Item it : itemsAt(repo.fieldIndex().pathsUnder(prefix))) {
+                    String path = it.getPathOrUrl();
+                    if (path.indexOf(File.separatorChar, prefix.length()) < 0 && !files.contains(path)
+                            && !unread.contains(Path.of(path))) {
+                        vanished.add(Path.of(path));
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    // register a new folder tree and collect the supported files already in it
+    private void scanTree(Path top, List<Path> appeared) {
+        reconcile(top, false, appeared, new ArrayList<>());
+    }
+
+    private void register(Path dir) {
+        try {
+            keys.put(dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE), dir);
+        } catch (IOException ex) {
+            // e.g. out of inotify watches; the folder is still reconciled on the next start
+            if (!watchLimitReported) {
+                System.err.println("Cannot watch " + dir + ": " + ex.getMessage());
+                watchLimitReported = true;
+            }
+        }
+    }
+
+    private void markOffline(Path dir) {
+        if (offline.add(dir)) System.err.println("Watched folder unavailable, keeping its items: " + dir);
+    }
+
+    // a watched root or a folder directly in one
+    private boolean isTopLevel(Path dir) {
+        return roots.contains(dir) || roots.contains(dir.getParent());
+    }
+
+    private boolean hasItemsUnder(Path dir) {
+        String prefix = dir + File.separator;
+        return repo.read(() -> !repo.fieldIndex().pathsUnder(prefix).isEmpty());
+    }
+
+    private void forgetTree(Path dir) {
+        String prefix = dir + File.separator;
+        dirMtimes.keySet().removeIf(d -> d.equals(dir) || d.toString().startsWith(prefix));
+        offline.removeIf(d -> d.startsWith(dir));
+    }
+
+    private List<Item> itemsAt(PostingList ords) {
+        List<Item> out = new ArrayList<>();
+        KeywordIndex kw = repo.keywordIndex();
+        for (int ord : ords.toArray()) {
+            ItemId id = kw.idAt(ord);
+            if (id != null) repo.find(id).ifPresent(out::add);
+        }
+        return out;
+    }
+
+    private static BasicFileAttributes stat(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // ====== state file ======
+
+    private void loadState() {
+        if (!Files.exists(stateFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            if (in.readInt() != STATE_MAGIC || in.readInt() > STATE_VERSION) return;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) roots.add(Path.of(in.readUTF()));
+            n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                long mtime = in.readLong();
+                dirMtimes.put(Path.of(in.readUTF()), mtime);
+            }
+        } catch (IOException | InvalidPathException ex) {
+            // without it every root is listed in full, which is still correct
+            System.err.println("Folder watch state not read: " + ex.getMessage());
+            dirMtimes.clear();
+        }
+    }
+
+    private void saveState() {
+        lastSave = System.currentTimeMillis();
+        Path tmp = Path.of(stateFile + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(STATE_MAGIC);
+                out.writeInt(STATE_VERSION);
+                out.writeInt(roots.size());
+                for (Path root : roots) out.writeUTF(root.toString());
+                out.writeInt(dirMtimes.size());
+                for (Map.Entry<Path, Long> e : dirMtimes.entrySet()) {
+                    out.writeLong(e.getValue());
+                    out.writeUTF(e.getKey().toString());
+                }
+            }
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("Folder watch state not saved: " + ex.getMessage());
+        }
+    }
+}
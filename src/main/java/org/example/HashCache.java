@@ -0,0 +1,165 @@
+// src/main/java/org/example/HashCache.java
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Content hashes (SHA-256) of files, remembered per path together with the
+ * size and mtime they were computed for. A file whose size and mtime still
+ * match is never read again; anything else is streamed through a
+ * FileChannel into the digest. Sizes are kept even for files never hashed;
+ * duplicate checks bucket by the size a stat (or a folder walk) reports,
+ * so a file that changed since it was last seen lands in the right bucket.
+ *
+ * Saved next to the library as <library>.hashes. Safe to use from many
+ * threads at once.
+ */
+public final class HashCache {
+
+    private static final int MAGIC = 0x53434853; // "SCHS"
+    private static final int VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    private static final int READ_SIZE = 1 << 16;
+
+    private record Entry(long size, long mtime, byte[] hash) {}
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger filesRead = new AtomicInteger();
+    private volatile boolean dirty;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_SIZE));
+
+    private HashCache(Path file) {
+        this.file = file;
+    }
+
+    public static Path pathFor(File library) {
+        return Path.of(library.getPath() + ".hashes");
+    }
+
+    // the cache saved for this library, or an empty one
+    public static HashCache load(File library) {
+        HashCache cache = new HashCache(pathFor(library));
+        if (!Files.exists(cache.file)) return cache;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return cache;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                byte[] hash = null;
+                if (in.readBoolean()) {
+                    hash = new byte[HASH_BYTES];
+                    in.readFully(hash);
+                }
+                cache.entries.put(path, new Entry(size, mtime, hash));
+            }
+        } catch (IOException ex) {
+            // a cache is only a cache; start over
+            System.err.println("Hash cache not read: " + ex.getMessage());
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    public void save() throws IOException {
+        if (!dirty) return;
+        // cleared before the copy so changes made meanwhile mark it again; set back if the write fails
+        dirty = false;
+        try {
+            write();
+        } catch (IOException | RuntimeException ex) {
+            dirty = true;
+            throw ex;
+        }
+    }
+
+    private void write() throws IOException {
+        Path tmp = Path.of(file + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, Entry> copy = Map.copyOf(entries);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Entry> e : copy.entrySet()) {
+                Entry en = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(en.size());
+                out.writeLong(en.mtime());
+                out.writeBoolean(en.hash() != null);
+                if (en.hash() != null) out.write(en.hash());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // current size (one stat; a hash stays if size and mtime still match), or -1 if the file can't be read
+    public long sizeOf(Path p) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            if (!a.isRegularFile()) return -1;
+            remember(p, a.size(), a.lastModifiedTime().toMillis());
+            return a.size();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    // record a size seen elsewhere (e.g. during a walk), keeping a hash that still applies
+    public void remember(Path p, long size, long mtime) {
+        entries.compute(p.toString(), (k, old) -> {
+            if (old != null && old.size() == size && old.mtime() == mtime) return old;
+            dirty = true;
+            return new Entry(size, mtime, null);
+        });
+    }
+
+    // the file's content hash; read from disk only if it changed since the last time
+    public byte[] hash(Path p) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+        long size = a.size();
+        long mtime = a.lastModifiedTime().toMillis();
+        Entry e = entries.get(p.toString());
+        if (e != null && e.hash() != null && e.size() == size && e.mtime() == mtime) return e.hash();
+
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        ByteBuffer buf = BUFFER.get();
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            while (true) {
+                buf.clear();
+                if (ch.read(buf) < 0) break;
+                buf.flip();
+                md.update(buf);
+            }
+        }
+        byte[] hash = md.digest();
+        filesRead.incrementAndGet();
+        entries.put(p.toString(), new Entry(size, mtime, hash));
+        dirty = true;
+        return hash;
+    }
+
+    // files actually read by hash() since this cache was loaded
+    public int filesRead() {
+        return filesRead.get();
+    }
+}
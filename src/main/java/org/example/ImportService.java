@@ -1,10 +1,45 @@
 package org.example;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Folder import, the one place it happens.
+ *
+ * Every directory is listed by its own fork-join task, so on a slow or
+ * network-mounted disk many listings (and the stat of every entry) are in
+ * flight at once instead of one after another. Workers classify the files
+ * they find and hand new items to the calling thread, which adds them to
+ * the repository and index BATCH at a time (or whatever has arrived after
+ * FLUSH_MS) while the walk carries on, so new items become visible and
+ * searchable a batch at a time instead of all at the end.
+ * Paths reached twice are skipped through a concurrent set, and paths
+ * already in the library through the FieldIndex path index when the batch
+ * goes in, so nothing walks the whole library up front.
+ *
+ * Optionally (given a HashCache) files are also deduplicated by content:
+ * they are bucketed by size, and only a file whose size matches another's
+ * is hashed, together with the files it has to be told apart from. Hashes
+ * come from the cache whenever size and mtime haven't changed.
+ *
+ * A Progress handed in counts files scanned and added as the walk goes, and
+ * cancelling it stops the walk: directories not yet listed are skipped and
+ * items found but not yet added are dropped. Batches already added stay.
+ */
 public class ImportService {
 
     // file types we support
@@ -12,94 +47,460 @@ public class ImportService {
             ".txt", ".md", ".pdf", ".mp3", ".mp4"
     );
 
-    // recursively import files from folder
+    // listings in flight at once; mostly waiting on the disk, so more than the core count
+    private static final int WALK_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+    // items per write-lock hold
+    static final int BATCH = 1_000;
+    // a partial batch goes in once it has waited this long
+    static final long FLUSH_MS = 250;
+
+    // files with the same content: the one kept (or already in the library) and the others
+    public record DuplicateGroup(String kept, List<String> duplicates) {}
+
+    // sameContent lists the files skipped because their content was already there
+    public record Summary(int added, int duplicates, int unreadable, List<DuplicateGroup> sameContent,
+                          boolean cancelled) {}
+
+    /**
+     * Live counts for one import, readable from any thread while it runs,
+     * and the switch that stops it.
+     */
+    public static final class Progress {
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong added = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // supported files looked at so far
+        public long scanned() {
+            return scanned.get();
+        }
+
+        // new items in the library so far
+        public long added() {
+            return added.get();
+        }
+
+        public long elapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        public double filesPerSecond() {
+            long ms = elapsedMs();
+            return ms == 0 ? 0 : scanned() * 1000.0 / ms;
+        }
+    }
+
+    // what mergeDuplicates changed, for the caller to journal
+    public record MergeResult(List<Item> kept, List<ItemId> removed, List<Memento> undo) {}
+
     public int importFolder(LibraryRepository repo, File rootDir, IndexService indexService) {
+        return importFolder(repo, rootDir, indexService, null, new Progress(), batch -> { }).added();
+    }
+
+    public Summary importFolder(LibraryRepository repo, File rootDir, IndexService indexService,
+                                Consumer<List<Item>> onBatch) {
+        return importFolder(repo, rootDir, indexService, null, new Progress(), onBatch);
+    }
+
+    /**
+     * Recursively import supported files under rootDir. onBatch sees each
+     * batch of new items while the write lock is still held (to journal it,
+     * say). With hashes, files whose content is already in the library (or
+     * earlier in this import) are skipped and reported. Blocks until the
+     * whole tree has been walked or progress is cancelled.
+     */
+    public Summary importFolder(LibraryRepository repo, File rootDir, IndexService indexService,
+                                HashCache hashes, Progress progress, Consumer<List<Item>> onBatch) {
         if (rootDir == null || !rootDir.exists()) {
-            return 0;
+            return new Summary(0, 0, 0, List.of(), false);
         }
 
-        // track existing files to avoid duplicates
-        Set<String> knownPaths = repo.all().stream()
-                .map(Item::getPathOrUrl)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+        ForkJoinPool pool = new ForkJoinPool(WALK_THREADS);
+        Walk walk = new Walk(hashes == null ? null : ContentIndex.ofLibrary(repo, hashes, pool), progress);
+        int added = 0;
+        try {
+            Path root = rootDir.toPath().toAbsolutePath();
+            ForkJoinTask<?> done = rootDir.isDirectory()
+                    ? pool.submit(walk.task(root))
+                    : pool.submit(() -> walk.consider(root, stat(root)));
+            List<Item> batch = new ArrayList<>(BATCH);
+            long batchStarted = 0;
+            while (!progress.isCancelled()) {
+                Item it = walk.found.poll(50, TimeUnit.MILLISECONDS);
+                if (it != null) {
+                    if (batch.isEmpty()) batchStarted = System.nanoTime();
+                    batch.add(it);
+                    walk.found.drainTo(batch, BATCH - batch.size());
+                }
+                boolean finished = it == null && done.isDone() && walk.found.isEmpty();
+                boolean due = !batch.isEmpty()
+                        && System.nanoTime() - batchStarted >= TimeUnit.MILLISECONDS.toNanos(FLUSH_MS);
+                if (batch.size() >= BATCH || due || (finished && !batch.isEmpty())) {
+                    int n = insert(repo, indexService, batch, onBatch);
+                    added += n;
+                    progress.added.addAndGet(n);
+                    walk.duplicates.addAndGet(batch.size() - n);
+                    batch = new ArrayList<>(BATCH);
+                }
+                if (finished) break;
+            }
+            if (!progress.isCancelled()) done.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Summary(added, walk.duplicates.get(), walk.unreadable.get(),
+                walk.content == null ? List.of() : walk.content.groups(), progress.isCancelled());
+    }
 
-        int importedCount = walkRecursive(repo, rootDir, knownPaths);
+    /**
+     * Groups of library items whose files have the same content, the first
+     * in library order being the one to keep. Only files sharing a size
+     * with another are hashed.
+     */
+    public List<DuplicateGroup> findDuplicates(LibraryRepository repo, HashCache hashes) {
+        List<String> paths = repo.read(() -> {
+            List<String> out = new ArrayList<>();
+            for (Item it : repo.all()) {
+                if (it.getPathOrUrl() != null) out.add(it.getPathOrUrl());
+            }
+            return out;
+        });
+        ForkJoinPool pool = new ForkJoinPool(WALK_THREADS);
+        try {
+            long[] sizes = pool.submit(() -> paths.parallelStream()
+                    .mapToLong(p -> sizeOf(hashes, p))
+                    .toArray()).join();
+            Map<Long, List<String>> bySize = new LinkedHashMap<>();
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] > 0) bySize.computeIfAbsent(sizes[i], k -> new ArrayList<>()).add(paths.get(i));
+            }
+            List<List<String>> buckets = new ArrayList<>();
+            for (List<String> b : bySize.values()) {
+                if (b.size() > 1) buckets.add(b);
+            }
+            return pool.submit(() -> buckets.parallelStream()
+                    .flatMap(b -> sameContent(hashes, b).stream())
+                    .toList()).join();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        // rebuild index after import
-        indexService.reindex(repo);
+    /**
+     * Fold each group into its kept item: tags are combined, the best rating
+     * and the first non-empty description win, and the other items are
+     * removed. Every change gets an undo memento, all joined into one step,
+     * so a single Undo takes the whole merge back. Call with the write lock held.
+     */
+    public MergeResult mergeDuplicates(LibraryRepository repo, IndexService indexService,
+                                       List<DuplicateGroup> groups) {
+        List<Item> kept = new ArrayList<>();
+        List<ItemId> removed = new ArrayList<>();
+        List<Memento> undo = new ArrayList<>();
+        for (DuplicateGroup g : groups) {
+            List<Item> keepers = itemsAt(repo, g.kept());
+            if (keepers.isEmpty()) continue;
+            Item keeper = keepers.get(0);
+            List<Item> others = new ArrayList<>(keepers.subList(1, keepers.size()));
+            for (String path : g.duplicates()) others.addAll(itemsAt(repo, path));
+            if (others.isEmpty()) continue;
 
-        return importedCount;
+            Item before = Journal.copyOf(keeper);
+            Set<String> tags = new LinkedHashSet<>(keeper.getTags());
+            int rating = keeper.getRating();
+            String description = keeper.getDescription();
+            for (Item o : others) {
+                tags.addAll(o.getTags());
+                rating = Math.max(rating, o.getRating());
+                if (description == null || description.isBlank()) description = o.getDescription();
+                Memento m = new Memento(o, true, !undo.isEmpty());
+                repo.undoStack().push(m);
+                undo.add(m);
+                indexService.unindex(repo, o);
+                repo.remove(o.getId());
+                removed.add(o.getId());
+            }
+            keeper.setTags(new ArrayList<>(tags));
+            keeper.setRating(rating);
+            keeper.setDescription(description);
+            indexService.update(repo, before, keeper);
+            // undone first, so the keeper is back as it was before the removed items return
+            Memento m = new Memento(before, false, true);
+            repo.undoStack().push(m);
+            undo.add(m);
+            kept.add(keeper);
+        }
+        return new MergeResult(kept, removed, undo);
     }
 
-    // walk directory tree using stack to avoid recursion limits
-    private int walkRecursive(LibraryRepository repo, File start, Set<String> knownPaths) {
-        int count = 0;
+    private static List<Item> itemsAt(LibraryRepository repo, String path) {
+        List<Item> out = new ArrayList<>();
+        for (int ord : repo.fieldIndex().pathPostings(path).toArray()) {
+            ItemId id = repo.keywordIndex().idAt(ord);
+            if (id != null) repo.find(id).ifPresent(out::add);
+        }
+        return out;
+    }
 
-        Deque<File> stack = new ArrayDeque<>();
-        stack.push(start);
+    // paths in one size bucket, grouped by hash; unreadable files are left out
+    private static List<DuplicateGroup> sameContent(HashCache hashes, List<String> paths) {
+        Map<ByteBuffer, List<String>> byHash = new LinkedHashMap<>();
+        for (String p : paths) {
+            try {
+                byHash.computeIfAbsent(ByteBuffer.wrap(hashes.hash(Path.of(p))), k -> new ArrayList<>()).add(p);
+            } catch (IOException | InvalidPathException ex) {
+                // gone or not a local file
+            }
+        }
+        List<DuplicateGroup> out = new ArrayList<>();
+        for (List<String> same : byHash.values()) {
+            if (same.size() > 1) out.add(new DuplicateGroup(same.get(0), List.copyOf(same.subList(1, same.size()))));
+        }
+        return out;
+    }
 
-        while (!stack.isEmpty()) {
-            File node = stack.pop();
+    private static long sizeOf(HashCache hashes, String path) {
+        try {
+            return hashes.sizeOf(Path.of(path));
+        } catch (InvalidPathException ex) {
+            return -1;
+        }
+    }
 
-            if (node.isDirectory()) {
-                // add subdirectories to stack
-                File[] kids = node.listFiles();
-                if (kids != null) {
-                    for (File k : kids) {
-                        stack.push(k);
-                    }
-                }
-            } else {
-                String nameLower = node.getName().toLowerCase(Locale.ROOT);
+    private static BasicFileAttributes stat(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
 
-                // check if file type is supported
-                boolean allowed = ALLOWED_EXT.stream().anyMatch(nameLower::endsWith);
-                if (!allowed) {
-                    continue;
-                }
+    /**
+     * Size buckets of the files seen so far (the library's, then each new
+     * one), each member hashed only once a second file of its size shows up.
+     */
+    private static final class ContentIndex {
+        private static final class Member {
+            final String path;
+            byte[] hash;
+
+            Member(String path, byte[] hash) {
+                this.path = path;
+                this.hash = hash;
+            }
+        }
+
+        private final HashCache hashes;
+        private final Set<String> libraryPaths;
+        private final Map<Long, List<Member>> bySize = new ConcurrentHashMap<>();
+        private final Map<String, List<String>> groups = new ConcurrentHashMap<>();
+
+        private ContentIndex(HashCache hashes, Set<String> libraryPaths) {
+            this.hashes = hashes;
+            this.libraryPaths = libraryPaths;
+        }
 
-                String absPath = node.getAbsolutePath();
-                if (knownPaths.contains(absPath)) {
-                    continue;
+        static ContentIndex ofLibrary(LibraryRepository repo, HashCache hashes, ForkJoinPool pool) {
+            Set<String> paths = repo.read(() -> {
+                Set<String> out = new LinkedHashSet<>();
+                for (Item it : repo.all()) {
+                    if (it.getPathOrUrl() != null) out.add(it.getPathOrUrl());
                 }
+                return out;
+            });
+            ContentIndex index = new ContentIndex(hashes, paths);
+            // every library file is stat'ed: one that changed since the last import belongs in another bucket
+            pool.submit(() -> paths.parallelStream().forEach(p -> {
+                long size = sizeOf(hashes, p);
+                if (size > 0) index.bucket(size).add(new Member(p, null));
+            })).join();
+            return index;
+        }
+
+        private List<Member> bucket(long size) {
+            return bySize.computeIfAbsent(size, k -> Collections.synchronizedList(new ArrayList<>()));
+        }
 
-                // figure out category from file extension
-                ItemCategory category;
-                MediaKind mediaKind;
-                if (nameLower.endsWith(".mp3")) {
-                    category = ItemCategory.AUDIO;
-                    mediaKind = MediaKind.AUDIO;
-                } else if (nameLower.endsWith(".mp4")) {
-                    category = ItemCategory.VIDEO;
-                    mediaKind = MediaKind.VIDEO;
-                } else if (nameLower.endsWith(".pdf")) {
-                    category = ItemCategory.DOCUMENT;
-                    mediaKind = MediaKind.OTHER;
-                } else {
-                    category = ItemCategory.NOTE;
-                    mediaKind = MediaKind.OTHER;
+        // path of a file seen earlier with the same content as this one, else null (and this one is recorded)
+        String duplicateOf(Path file, BasicFileAttributes attrs) {
+            String path = file.toString();
+            hashes.remember(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+            // empty files all "match"; a path already in the library is a plain path duplicate
+            if (attrs.size() == 0 || libraryPaths.contains(path)) return null;
+
+            List<Member> bucket = bucket(attrs.size());
+            synchronized (bucket) {
+                if (bucket.isEmpty()) {
+                    bucket.add(new Member(path, null));
+                    return null;
+                }
+                byte[] hash;
+                try {
+                    hash = hashes.hash(file);
+                } catch (IOException ex) {
+                    return null;
                 }
+                for (Member m : bucket) {
+                    if (m.hash == null) {
+                        try {
+                            m.hash = hashes.hash(Path.of(m.path));
+                        } catch (IOException | InvalidPathException ex) {
+                            m.hash = new byte[0];
+                        }
+                    }
+                    if (Arrays.equals(m.hash, hash)) {
+                        groups.computeIfAbsent(m.path, k -> Collections.synchronizedList(new ArrayList<>())).add(path);
+                        return m.path;
+                    }
+                }
+                bucket.add(new Member(path, hash));
+                return null;
+            }
+        }
 
-                Item item = new Item(node.getName());
-                item.setCategory(category);
-                item.setMediaKind(mediaKind);
-                item.setPathOrUrl(absPath);
-                item.setRating(0);
-                item.setTags(List.of(extensionOf(node.getName())));
-                item.setCreatedAt(Instant.now());
-                item.setDescription("");
+        List<DuplicateGroup> groups() {
+            List<DuplicateGroup> out = new ArrayList<>();
+            groups.forEach((kept, dups) -> out.add(new DuplicateGroup(kept, List.copyOf(dups))));
+            return out;
+        }
+    }
 
+    // add the items whose paths aren't in the library yet; returns how many
+    static int insert(LibraryRepository repo, IndexService indexService,
+                      List<Item> batch, Consumer<List<Item>> onBatch) {
+        List<Item> added = new ArrayList<>(batch.size());
+        repo.write(() -> {
+            for (Item item : batch) {
+                if (repo.fieldIndex().hasPath(item.getPathOrUrl())) continue;
                 repo.add(item);
-                knownPaths.add(absPath);
-                count++;
+                indexService.index(repo, item);
+                added.add(item);
             }
+            if (!added.isEmpty()) onBatch.accept(List.copyOf(added));
+        });
+        return added.size();
+    }
+
+    // state shared by the walking tasks
+    private static final class Walk {
+        final ContentIndex content;
+        final Progress progress;
+        final Set<String> seenPaths = ConcurrentHashMap.newKeySet();
+        final BlockingQueue<Item> found = new LinkedBlockingQueue<>();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger unreadable = new AtomicInteger();
+
+        Walk(ContentIndex content, Progress progress) {
+            this.content = content;
+            this.progress = progress;
+        }
+
+        RecursiveAction task(Path dir) {
+            return new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    if (progress.isCancelled()) return;
+                    List<RecursiveAction> subdirs = new ArrayList<>();
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        for (Path p : entries) {
+                            if (progress.isCancelled()) return;
+                            // links to directories aren't followed, so a cycle can't trap the walk
+                            BasicFileAttributes attrs;
+                            try {
+                                attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                            } catch (IOException ex) {
+                                unreadable.incrementAndGet();
+                                continue;
+                            }
+                            if (attrs.isDirectory()) {
+                                subdirs.add(task(p));
+                            } else {
+                                consider(p, attrs);
+                            }
+                        }
+                    } catch (IOException | DirectoryIteratorException ex) {
+                        unreadable.incrementAndGet();
+                    }
+                    invokeAll(subdirs);
+                }
+            };
+        }
+
+        void consider(Path file, BasicFileAttributes attrs) {
+            if (attrs == null || !isSupported(file)) return;
+            progress.scanned.incrementAndGet();
+            String name = file.getFileName().toString();
+            String nameLower = name.toLowerCase(Locale.ROOT);
+
+            String absPath = file.toString();
+            if (!seenPaths.add(absPath)) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            if (content != null && content.duplicateOf(file, attrs) != null) {
+                duplicates.incrementAndGet();
+                return;
+            }
+            found.add(classify(name, nameLower, absPath));
+        }
+    }
+
+    // check if file type is supported
+    static boolean isSupported(Path file) {
+        Path name = file.getFileName();
+        if (name == null) return false;
+        String nameLower = name.toString().toLowerCase(Locale.ROOT);
+        return ALLOWED_EXT.stream().anyMatch(nameLower::endsWith);
+    }
+
+    // a new item for a supported file
+    static Item itemFor(Path file) {
+        String name = file.getFileName().toString();
+        return classify(name, name.toLowerCase(Locale.ROOT), file.toString());
+    }
+
+    // figure out category from file extension
+    private static Item classify(String name, String nameLower, String absPath) {
+        ItemCategory category;
+        MediaKind mediaKind;
+        if (nameLower.endsWith(".mp3")) {
+            category = ItemCategory.AUDIO;
+            mediaKind = MediaKind.AUDIO;
+        } else if (nameLower.endsWith(".mp4")) {
+            category = ItemCategory.VIDEO;
+            mediaKind = MediaKind.VIDEO;
+        } else if (nameLower.endsWith(".pdf")) {
+            category = ItemCategory.DOCUMENT;
+            mediaKind = MediaKind.OTHER;
+        } else {
+            category = ItemCategory.NOTE;
+            mediaKind = MediaKind.OTHER;
         }
 
-        return count;
+        Item item = new Item(name);
+        item.setCategory(category);
+        item.setMediaKind(mediaKind);
+        item.setPathOrUrl(absPath);
+        item.setRating(0);
+        item.setTags(List.of(extensionOf(name)));
+        item.setCreatedAt(Instant.now());
+        item.setDescription("");
+        return item;
     }
 
-    private String extensionOf(String filename) {
+    private static String extensionOf(String filename) {
         int dot = filename.lastIndexOf('.');
         if (dot >= 0 && dot < filename.length() - 1) {
             return filename.substring(dot).toLowerCase(Locale.ROOT);
@@ -0,0 +1,306 @@
+// src/main/java/org/example/IndexSegment.java
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable on-disk copy of a KeywordIndex, opened with FileChannel.map.
+ *
+ * Layout (big-endian):
+ *   header      magic, version, library stamp, counts, section offsets
+ *   ids         per ordinal: int length (-1 = free) + UTF-8 item id
+ *   docLengths  int per ordinal
+ *   dictionary  per term, sorted: int termOffset, int postingOffset, int docFreq
+ *   termBytes   per term: short length + UTF-8
+ *   postings    per term: varint count, byte hasFreqs, delta-varint ordinals, [freq bytes]
+ *
+ * Lookups binary-search the dictionary and decode postings straight from the
+ * mapped buffer; nothing is copied onto the heap until a term is asked for.
+ * The stamp ties a segment to the library file it was saved with, so a
+ * segment that doesn't match is simply ignored and the index rebuilt.
+ *
+ * The mapping is released by close(), not left to the collector: a save
+ * writes the new segment to a temp file and can only rename it over the
+ * one in use once that is closed (see KeywordIndex.rebase).
+ */
+public final class IndexSegment {
+
+    private static final int MAGIC = 0x53434958; // "SCIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int DICT_ENTRY = 12;
+
+    private final ByteBuffer buf;
+    private final long stamp;
+    private final int ordinalLimit;
+    private final int termCount;
+    private final long totalLength;
+    private final int idsOffset;
+    private final int docLenOffset;
+    private final int dictOffset;
+    private final int termBytesOffset;
+    private final int postingsOffset;
+
+    private IndexSegment(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not an index segment.");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("Unsupported index segment version: " + buf.getInt(4));
+        }
+        this.stamp = buf.getLong(8);
+        this.ordinalLimit = buf.getInt(16);
+        this.termCount = buf.getInt(20);
+        this.totalLength = buf.getLong(24);
+        this.idsOffset = buf.getInt(32);
+        this.docLenOffset = buf.getInt(36);
+        this.dictOffset = buf.getInt(40);
+        this.termBytesOffset = buf.getInt(44);
+        this.postingsOffset = buf.getInt(48);
+        if (buf.getInt(52) != buf.capacity()) {
+            throw new IOException("Index segment is truncated.");
+        }
+    }
+
+    /**
+     * Map a segment if it exists and belongs to the library with this stamp;
+     * returns null for a missing, stale or unreadable segment.
+     */
+    public static IndexSegment open(Path file, long expectedStamp) {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            IndexSegment seg = new IndexSegment(mapped);
+            return seg.stamp == expectedStamp ? seg : null;
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Ignoring index segment " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // write the index as a segment (temp file + rename, so readers never see half a file)
+    public static void write(Path file, KeywordIndex kw, long stamp) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeTo(tmp, kw, stamp);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // write the index as a segment to file as it is, for the caller to rename into place
+    public static void writeTo(Path file, KeywordIndex kw, long stamp) throws IOException {
+        int limit = kw.ordinalLimit();
+
+        ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        DataOutputStream idsOut = new DataOutputStream(ids);
+        ByteArrayOutputStream lengths = new ByteArrayOutputStream(limit * 4);
+        DataOutputStream lengthsOut = new DataOutputStream(lengths);
+        for (int ord = 0; ord < limit; ord++) {
+            ItemId id = kw.idAt(ord);
+            if (id == null) {
+                idsOut.writeInt(-1);
+            } else {
+                byte[] b = id.value().getBytes(StandardCharsets.UTF_8);
+                idsOut.writeInt(b.length);
+                idsOut.write(b);
+            }
+            lengthsOut.writeInt(kw.docLength(ord));
+        }
+
+        ByteArrayOutputStream dict = new ByteArrayOutputStream();
+        DataOutputStream dictOut = new DataOutputStream(dict);
+        ByteArrayOutputStream terms = new ByteArrayOutputStream();
+        DataOutputStream termsOut = new DataOutputStream(terms);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        int[] termCount = {0};
+
+        for (String term : kw.termsStartingWith("")) {
+            PostingList p = kw.get(term);
+            if (p == null) continue;
+
+            dictOut.writeInt(terms.size());
+            dictOut.writeInt(postings.size());
+            dictOut.writeInt(p.size());
+
+            byte[] tb = term.getBytes(StandardCharsets.UTF_8);
+            termsOut.writeShort(tb.length);
+            termsOut.write(tb);
+
+            encodePostings(postings, p);
+            termCount[0]++;
+        }
+
+        long total = (long) HEADER_SIZE + ids.size() + lengths.size() + dict.size() + terms.size() + postings.size();
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Index too large for a single segment.");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int idsAt = HEADER_SIZE;
+        int lenAt = idsAt + ids.size();
+        int dictAt = lenAt + lengths.size();
+        int termsAt = dictAt + dict.size();
+        int postAt = termsAt + terms.size();
+        header.putInt(MAGIC).putInt(VERSION).putLong(stamp)
+                .putInt(limit).putInt(termCount[0]).putLong(kw.totalLength())
+                .putInt(idsAt).putInt(lenAt).putInt(dictAt).putInt(termsAt).putInt(postAt)
+                .putInt((int) total);
+        header.clear();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(ch, header);
+            writeFully(ch, ByteBuffer.wrap(ids.toByteArray()));
+            writeFully(ch, ByteBuffer.wrap(lengths.toByteArray()));
+            writeFully(ch, ByteBuffer.wrap(dict.toByteArray()));
+            writeFully(ch, ByteBuffer.wrap(terms.toByteArray()));
+            writeFully(ch, ByteBuffer.wrap(postings.toByteArray()));
+            ch.force(true);
+        }
+    }
+
+    // release the mapping; nothing may read this segment any more (callers hold the write lock)
+    public void close() {
+        Mappings.unmap(buf);
+    }
+
+    // ====== reads ======
+
+    public long stamp() {
+        return stamp;
+    }
+
+    public int ordinalLimit() {
+        return ordinalLimit;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    // item ids by ordinal (null = free ordinal), decoded once when the index is attached
+    public String[] readIds() {
+        String[] out = new String[ordinalLimit];
+        int pos = idsOffset;
+        for (int ord = 0; ord < ordinalLimit; ord++) {
+            int len = buf.getInt(pos);
+            pos += 4;
+            if (len >= 0) {
+                out[ord] = decode(pos, len);
+                pos += len;
+            }
+        }
+        return out;
+    }
+
+    public int[] readDocLengths() {
+        int[] out = new int[Math.max(16, ordinalLimit)];
+        for (int ord = 0; ord < ordinalLimit; ord++) {
+            out[ord] = buf.getInt(docLenOffset + ord * 4);
+        }
+        return out;
+    }
+
+    // index of the term in the dictionary, or -(insertion point + 1)
+    public int find(String term) {
+        int lo = 0, hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = termAt(mid).compareTo(term);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    public String termAt(int i) {
+        int at = termBytesOffset + buf.getInt(dictOffset + i * DICT_ENTRY);
+        int len = buf.getShort(at) & 0xFFFF;
+        return decode(at + 2, len);
+    }
+
+    public int docFreqAt(int i) {
+        return buf.getInt(dictOffset + i * DICT_ENTRY + 8);
+    }
+
+    public PostingList postingsAt(int i) {
+        int[] pos = {postingsOffset + buf.getInt(dictOffset + i * DICT_ENTRY + 4)};
+        int n = readVarint(pos);
+        boolean hasFreqs = buf.get(pos[0]++) != 0;
+
+        int[] ords = new int[Math.max(n, 2)];
+        int prev = 0;
+        for (int k = 0; k < n; k++) {
+            prev += readVarint(pos);
+            ords[k] = prev;
+        }
+        byte[] freqs = null;
+        if (hasFreqs) {
+            freqs = new byte[Math.max(n, 2)];
+            buf.get(pos[0], freqs, 0, n);
+        }
+        return PostingList.ofSorted(ords, freqs, n);
+    }
+
+    // ====== encoding helpers ======
+
+    private static void encodePostings(ByteArrayOutputStream out, PostingList p) {
+        writeVarint(out, p.size());
+        byte[] freqs = new byte[p.size()];
+        boolean[] hasFreqs = {false};
+        int[] prev = {0};
+        int[] n = {0};
+        ByteArrayOutputStream deltas = new ByteArrayOutputStream();
+        p.forEachWithFreq((ord, f) -> {
+            writeVarint(deltas, ord - prev[0]);
+            prev[0] = ord;
+            freqs[n[0]++] = (byte) f;
+            if (f != 1) hasFreqs[0] = true;
+        });
+        out.write(hasFreqs[0] ? 1 : 0);
+        out.writeBytes(deltas.toByteArray());
+        if (hasFreqs[0]) out.writeBytes(freqs);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private int readVarint(int[] pos) {
+        int v = 0, shift = 0;
+        while (true) {
+            byte b = buf.get(pos[0]++);
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+            shift += 7;
+        }
+    }
+
+    private String decode(int at, int len) {
+        byte[] b = new byte[len];
+        buf.get(at, b, 0, len);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+}
@@ -2,44 +2,203 @@
 package org.example;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 
 public class IndexService {
 
-    // rebuild search index from scratch
+    private static final Pattern NON_WORD = Pattern.compile("[^A-Za-z0-9]+");
+
+    // field weights: a word in the title counts more than one in the description
+    static final int TITLE_WEIGHT = 3;
+    static final int TAG_WEIGHT = 2;
+    static final int DESCRIPTION_WEIGHT = 1;
+    // per occurrence inside the item's file
+    static final int CONTENT_WEIGHT = 1;
+    // embedded track title, artist, album and genre
+    static final int MEDIA_WEIGHT = 2;
+
+    // rebuild search index from scratch (repair / full rebuild only)
     public void reindex(LibraryRepository repo) {
         repo.keywordIndex().clear();
+        repo.fieldIndex().clear();
         repo.tagFrequency().clear();
 
         for (Item it : repo.all()) {
-            // index title and description words
-            indexText(repo.keywordIndex(), it.getId(), it.getTitle());
-            indexText(repo.keywordIndex(), it.getId(), it.getDescription());
+            index(repo, it);
+        }
+    }
+
+    // make the index match the items after a load: keep postings from a saved
+    // segment if it covers exactly these items, otherwise rebuild everything.
+    // Field postings and tag counts aren't saved; they're cheap to redo.
+    // Returns true if a full reindex was needed.
+    public boolean ensureIndexed(LibraryRepository repo) {
+        KeywordIndex kw = repo.keywordIndex();
+        boolean covered = kw.docCount() == repo.size();
+        for (Item it : repo.all()) {
+            if (!covered) break;
+            covered = kw.existingOrdinal(it.getId()) >= 0;
+        }
+        if (!covered) {
+            reindex(repo);
+            return true;
+        }
 
-            // index tags and count frequency
+        repo.fieldIndex().clear();
+        repo.tagFrequency().clear();
+        for (Item it : repo.all()) {
+            repo.fieldIndex().add(kw.existingOrdinal(it.getId()), it);
             for (String tag : it.getTags()) {
-                String norm = norm(tag);
-                repo.tagFrequency().put(
-                        norm,
-                        repo.tagFrequency().getOrDefault(norm, 0) + 1
-                );
-                repo.keywordIndex()
-                        .computeIfAbsent(norm, k -> new HashSet<>())
-                        .add(it.getId());
+                repo.tagFrequency().merge(norm(tag), 1, Integer::sum);
             }
         }
+        return false;
     }
 
-    // split text into words and add to index
-    private void indexText(Map<String, Set<ItemId>> kwIndex, ItemId id, String text) {
+    // add a single item's words and tags to the index
+    public void index(LibraryRepository repo, Item it) {
+        KeywordIndex kw = repo.keywordIndex();
+        int ord = kw.ordinalOf(it.getId());
+        Map<String, Integer> tf = termsOf(repo, it);
+        tf.forEach((term, f) -> kw.add(term, ord, f));
+        kw.setDocLength(ord, lengthOf(tf));
+        repo.fieldIndex().add(ord, it);
+
+        for (String tag : it.getTags()) {
+            repo.tagFrequency().merge(norm(tag), 1, Integer::sum);
+        }
+    }
+
+    // remove a single item's words and tags from the index
+    public void unindex(LibraryRepository repo, Item it) {
+        KeywordIndex kw = repo.keywordIndex();
+        int ord = kw.existingOrdinal(it.getId());
+        if (ord < 0) return;
+
+        for (String term : termsOf(repo, it).keySet()) {
+            kw.remove(term, ord);
+        }
+        repo.fieldIndex().remove(ord, it);
+        for (String tag : it.getTags()) {
+            decrementTag(repo, norm(tag));
+        }
+        kw.release(it.getId());
+        dropUnusedContent(repo, it.getPathOrUrl());
+    }
+
+    // apply only the difference between two versions of the same item (and tell the repository's listeners)
+    public void update(LibraryRepository repo, Item before, Item after) {
+        if (!before.getId().equals(after.getId())) {
+            unindex(repo, before);
+            index(repo, after);
+            return;
+        }
+
+        int ord = repo.keywordIndex().ordinalOf(after.getId());
+        applyDiff(repo.keywordIndex(), ord, termsOf(repo, before), termsOf(repo, after));
+        repo.fieldIndex().update(ord, before, after);
+        if (!Objects.equals(before.getPathOrUrl(), after.getPathOrUrl())) {
+            dropUnusedContent(repo, before.getPathOrUrl());
+        }
+
+        // tag counts: only touch the tags that actually changed
+        Map<String, Integer> delta = new HashMap<>();
+        for (String tag : before.getTags()) delta.merge(norm(tag), -1, Integer::sum);
+        for (String tag : after.getTags()) delta.merge(norm(tag), 1, Integer::sum);
+        delta.forEach((tag, d) -> {
+            if (d > 0) {
+                repo.tagFrequency().merge(tag, d, Integer::sum);
+            } else {
+                for (int i = d; i < 0; i++) decrementTag(repo, tag);
+            }
+        });
+        repo.fireUpdated(after);
+    }
+
+    /**
+     * Replace the words read from the file at path (null = none), re-scoring
+     * every item that points at it. The write lock must be held.
+     */
+    public void setContent(LibraryRepository repo, String path, ContentStore.Entry entry) {
+        KeywordIndex kw = repo.keywordIndex();
+        List<Item> items = new ArrayList<>();
+        for (int ord : repo.fieldIndex().pathPostings(path).toArray()) {
+            ItemId id = kw.idAt(ord);
+            if (id != null) repo.find(id).ifPresent(items::add);
+        }
+        List<Map<String, Integer>> before = new ArrayList<>(items.size());
+        for (Item it : items) before.add(termsOf(repo, it));
+        // nobody points at it any more (removed while it was being read)
+        if (items.isEmpty()) entry = null;
+        repo.content().put(path, entry);
+        for (int i = 0; i < items.size(); i++) {
+            Item it = items.get(i);
+            applyDiff(kw, kw.ordinalOf(it.getId()), before.get(i), termsOf(repo, it));
+        }
+    }
+
+    // words read from a file no item points at any more (ContentIndexer reads it again if one comes back)
+    private void dropUnusedContent(LibraryRepository repo, String path) {
+        if (path != null && !repo.fieldIndex().hasPath(path)) repo.content().put(path, null);
+    }
+
+    // move an ordinal's postings from one set of terms to another
+    private void applyDiff(KeywordIndex kw, int ord, Map<String, Integer> oldTf, Map<String, Integer> newTf) {
+        for (String term : oldTf.keySet()) {
+            if (!newTf.containsKey(term)) {
+                kw.remove(term, ord);
+            }
+        }
+        newTf.forEach((term, f) -> {
+            if (!f.equals(oldTf.get(term))) {
+                kw.add(term, ord, f);
+            }
+        });
+        kw.setDocLength(ord, lengthOf(newTf));
+    }
+
+    // every term an item is findable by, with its field-weighted frequency
+    private Map<String, Integer> termsOf(LibraryRepository repo, Item it) {
+        Map<String, Integer> tf = new HashMap<>();
+        // index title and description words
+        addWords(tf, it.getTitle(), TITLE_WEIGHT);
+        addWords(tf, it.getDescription(), DESCRIPTION_WEIGHT);
+        // tags are indexed as whole terms
+        for (String tag : it.getTags()) {
+            tf.merge(norm(tag), TAG_WEIGHT, Integer::sum);
+        }
+        MediaInfo media = it.getMedia();
+        if (media != null) {
+            addWords(tf, media.title(), MEDIA_WEIGHT);
+            addWords(tf, media.artist(), MEDIA_WEIGHT);
+            addWords(tf, media.album(), MEDIA_WEIGHT);
+            addWords(tf, media.genre(), MEDIA_WEIGHT);
+        }
+        // words inside the file, if ContentIndexer has read it
+        repo.content().forEachTerm(it.getPathOrUrl(), (term, f) -> tf.merge(term, f * CONTENT_WEIGHT, Integer::sum));
+        return tf;
+    }
+
+    // split text into words
+    private void addWords(Map<String, Integer> tf, String text, int weight) {
         if (text == null) return;
-        for (String raw : text.split("[^A-Za-z0-9]+")) {
+        for (String raw : NON_WORD.split(text)) {
             if (raw.isBlank()) continue;
-            String norm = norm(raw);
-            kwIndex.computeIfAbsent(norm, k -> new HashSet<>()).add(id);
+            tf.merge(norm(raw), weight, Integer::sum);
         }
     }
 
+    private int lengthOf(Map<String, Integer> tf) {
+        int len = 0;
+        for (int f : tf.values()) len += f;
+        return len;
+    }
+
+    private void decrementTag(LibraryRepository repo, String tag) {
+        repo.tagFrequency().computeIfPresent(tag, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
     private String norm(String s) {
         return s.toLowerCase(Locale.ROOT).trim();
     }
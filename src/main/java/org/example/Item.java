@@ -5,7 +5,9 @@ import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Item implements Serializable {
 
@@ -21,10 +23,28 @@ public class Item implements Serializable {
     private String pathOrUrl;
     private String description;
     private MediaKind mediaKind;
+    // read from the file by MediaScanner; null until then
+    private MediaInfo media;
+
+    // set instead of description when the text is still in the library file
+    private transient TextStore.Ref descriptionRef;
+
+    // change tracking for differential saves: which fields changed since the
+    // last save, and when (on a clock shared by all items, so "changed since
+    // save X" is one compare). Setting a field to the value it has isn't a change.
+    static final int TITLE = 1, CATEGORY = 1 << 1, TAGS = 1 << 2, RATING = 1 << 3,
+            CREATED = 1 << 4, PATH = 1 << 5, DESCRIPTION = 1 << 6, KIND = 1 << 7, MEDIA = 1 << 8;
+    private static final AtomicLong CLOCK = new AtomicLong();
+    private transient int changedFields;
+    private transient long changedAt;
 
     public Item(String title) {
         // generate unique id
-        this.id = new ItemId(UUID.randomUUID().toString());
+        this(new ItemId(UUID.randomUUID().toString()), title);
+    }
+
+    public Item(ItemId id, String title) {
+        this.id = id;
         this.title = title;
         this.category = ItemCategory.NOTE;
         this.rating = 0;
@@ -49,6 +69,7 @@ public class Item implements Serializable {
     }
 
     public void setTitle(String t) {
+        if (!Objects.equals(title, t)) touch(TITLE);
         this.title = t;
     }
 
@@ -57,6 +78,7 @@ public class Item implements Serializable {
     }
 
     public void setCategory(ItemCategory c) {
+        if (category != c) touch(CATEGORY);
         this.category = c;
     }
 
@@ -65,6 +87,7 @@ public class Item implements Serializable {
     }
 
     public void setTags(List<String> t) {
+        if (!Objects.equals(tags, t)) touch(TAGS);
         this.tags = t;
     }
 
@@ -73,6 +96,7 @@ public class Item implements Serializable {
     }
 
     public void setRating(int r) {
+        if (rating != r) touch(RATING);
         this.rating = r;
     }
 
@@ -81,6 +105,7 @@ public class Item implements Serializable {
     }
 
     public void setCreatedAt(Instant createdAt) {
+        if (!Objects.equals(this.createdAt, createdAt)) touch(CREATED);
         this.createdAt = createdAt;
     }
 
@@ -89,15 +114,61 @@ public class Item implements Serializable {
     }
 
     public void setPathOrUrl(String pathOrUrl) {
+        if (!Objects.equals(this.pathOrUrl, pathOrUrl)) touch(PATH);
         this.pathOrUrl = pathOrUrl;
     }
 
     public String getDescription() {
+        if (description == null && descriptionRef != null) {
+            return descriptionRef.text();
+        }
         return description;
     }
 
     public void setDescription(String d) {
+        // the same text again keeps a description that is still on disk there
+        if (Objects.equals(getDescription(), d)) return;
         this.description = d;
+        this.descriptionRef = null;
+        touch(DESCRIPTION);
+    }
+
+    // ====== change tracking ======
+
+    static long clock() {
+        return CLOCK.get();
+    }
+
+    static long tick() {
+        return CLOCK.incrementAndGet();
+    }
+
+    private void touch(int field) {
+        changedFields |= field;
+        changedAt = tick();
+    }
+
+    // fields changed since the item was loaded or last saved
+    int changedFields() {
+        return changedFields;
+    }
+
+    long changedAt() {
+        return changedAt;
+    }
+
+    // a save taken at clock value upTo has the fields; a later change keeps them all marked
+    void forgetChanges(long upTo) {
+        if (changedAt <= upTo) changedFields = 0;
+    }
+
+    TextStore.Ref descriptionRef() {
+        return descriptionRef;
+    }
+
+    void setDescriptionRef(TextStore.Ref ref) {
+        this.description = null;
+        this.descriptionRef = ref;
     }
 
     public MediaKind getMediaKind() {
@@ -105,9 +176,19 @@ public class Item implements Serializable {
     }
 
     public void setMediaKind(MediaKind mediaKind) {
+        if (this.mediaKind != mediaKind) touch(KIND);
         this.mediaKind = mediaKind;
     }
 
+    public MediaInfo getMedia() {
+        return media;
+    }
+
+    public void setMedia(MediaInfo media) {
+        if (!Objects.equals(this.media, media)) touch(MEDIA);
+        this.media = media;
+    }
+
     @Override
     public String toString() {
         String cat = (category != null) ? category.name() : "UNCAT";
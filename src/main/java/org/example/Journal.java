@@ -0,0 +1,570 @@
+// src/main/java/org/example/Journal.java
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of library changes since the last snapshot.
+ *
+ * Layout (big-endian):
+ *   header   int magic "SCJL", int version, long snapshot stamp
+ *   entries  int length, byte op, payload, int CRC32 of op + payload
+ *
+ * Changes are appended (and forced to disk) while the repository write lock
+ * is held, so the journal and the in-memory state never disagree. On
+ * startup the entries are replayed over the snapshot whose stamp matches
+ * the header; a torn or corrupt tail from a crash is cut off at the last
+ * good entry. compact() (driven by BackupScheduler) saves a new snapshot
+ * and restarts the journal empty under the new stamp. A journal whose stamp doesn't match the
+ * snapshot (e.g. the snapshot was replaced before the journal was reset)
+ * is already contained in that snapshot and is discarded.
+ */
+public final class Journal {
+
+    private static final int MAGIC = 0x53434A4C; // "SCJL"
+    // 2 added media metadata to item records; a version 1 journal is replayed
+    // and appended to as version 1 (without media) until the next snapshot
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    // recently-viewed pushes held back before they are written without a force
+    private static final int DEFERRED_LIMIT = 64;
+
+    private static final byte ITEM_PUT = 1;
+    private static final byte ITEM_DELETE = 2;
+    private static final byte TASK_ADD = 3;
+    private static final byte TASK_REMOVE = 4;
+    private static final byte UNDO_PUSH = 5;
+    private static final byte UNDO_POP = 6;
+    private static final byte RECENT_PUSH = 7;
+    private static final byte ITEM_FIELDS = 8;
+    private static final byte LISTS_SET = 9;
+
+    private final File library;
+    private final Path file;
+    private final PersistenceService persist;
+
+    private FileChannel ch;
+    private long stamp;
+    // entries collected by batch(), written together
+    private List<byte[]> pending;
+    // how many batch() calls are running (they nest)
+    private int batchDepth;
+    // recently-viewed pushes waiting to go out ahead of the next forced write
+    private final List<byte[]> deferred = new ArrayList<>();
+    // set when an append fails; the next snapshot captures everything instead
+    private boolean damaged;
+    // format of the entries in this file
+    private int version = VERSION;
+
+    private Journal(Path file, File library, PersistenceService persist) {
+        this.library = library;
+        this.file = file;
+        this.persist = persist;
+    }
+
+    // journal kept next to a library snapshot
+    public static Path pathFor(File library) {
+        return Path.of(library.getPath() + ".journal");
+    }
+
+    /**
+     * Open the journal belonging to the snapshot with this stamp, replaying
+     * its entries into repo (whose index must already match the snapshot).
+     * A missing or stale journal is started over.
+     */
+    public static Journal open(File library, long stamp, PersistenceService persist,
+                               LibraryRepository repo, IndexService index) throws IOException {
+        return open(pathFor(library), library, stamp, persist, repo, index);
+    }
+
+    /**
+     * Same, for a log at any path (PersistenceService keeps differential saves
+     * in one). With a null repo the entries are only checked, not applied.
+     */
+    static Journal open(Path file, File library, long stamp, PersistenceService persist,
+                        LibraryRepository repo, IndexService index) throws IOException {
+        Journal j = new Journal(file, library, persist);
+        j.stamp = stamp;
+        j.ch = FileChannel.open(j.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long end = j.ch.size() >= HEADER_SIZE ? j.replay(repo, index) : -1;
+        if (end < 0) {
+            j.reset(stamp);
+        } else {
+            j.ch.truncate(end);
+            j.ch.position(end);
+        }
+        return j;
+    }
+
+    public synchronized long size() throws IOException {
+        return ch.size();
+    }
+
+    // ====== appends (call with the repository write lock held) ======
+
+    public void itemPut(Item it) {
+        append(ITEM_PUT, out -> writeItem(out, it, version));
+    }
+
+    public void itemsPut(Collection<Item> items) {
+        batch(() -> items.forEach(this::itemPut));
+    }
+
+    public void itemDeleted(ItemId id) {
+        append(ITEM_DELETE, out -> writeString(out, id.value()));
+    }
+
+    public void taskAdded(TodoTask t) {
+        append(TASK_ADD, out -> writeTask(out, t));
+    }
+
+    public void taskRemoved(TodoTask t) {
+        append(TASK_REMOVE, out -> writeTask(out, t));
+    }
+
+    public void undoPushed(Memento m) {
+        append(UNDO_PUSH, out -> {
+            out.writeByte(m.flags());
+            writeItem(out, m.snapshot(), version);
+        });
+    }
+
+    public void undoPopped() {
+        append(UNDO_POP, out -> { });
+    }
+
+    /**
+     * Selection changes aren't worth an fsync each: they are held in memory
+     * and written along with the next real entry (or at close). A crash loses
+     * only the latest recents; a snapshot contains them anyway.
+     */
+    public synchronized void recentPushed(ItemId id) {
+        deferred.add(encode(RECENT_PUSH, out -> writeString(out, id.value())));
+        if (deferred.size() >= DEFERRED_LIMIT) write(List.of(), false);
+    }
+
+    // only the given fields of an item already in the snapshot
+    public void itemFieldsChanged(Item it, int changed) {
+        append(ITEM_FIELDS, out -> {
+            int fields = version >= 2 ? changed : changed & ~Item.MEDIA;
+            writeString(out, it.getId().value());
+            out.writeInt(fields);
+            if ((fields & Item.TITLE) != 0) writeString(out, it.getTitle());
+            if ((fields & Item.CATEGORY) != 0) writeString(out, it.getCategory() == null ? null : it.getCategory().name());
+            if ((fields & Item.KIND) != 0) writeString(out, it.getMediaKind() == null ? null : it.getMediaKind().name());
+            if ((fields & Item.RATING) != 0) out.writeInt(it.getRating());
+            if ((fields & Item.CREATED) != 0) writeInstant(out, it.getCreatedAt());
+            if ((fields & Item.PATH) != 0) writeString(out, it.getPathOrUrl());
+            if ((fields & Item.DESCRIPTION) != 0) writeString(out, it.getDescription());
+            if ((fields & Item.TAGS) != 0) {
+                out.writeInt(it.getTags().size());
+                for (String tag : it.getTags()) writeString(out, tag);
+            }
+            if ((fields & Item.MEDIA) != 0) writeMedia(out, it.getMedia());
+        });
+    }
+
+    // replace tasks, recently viewed and undo wholesale
+    public void listsReplaced(Collection<TodoTask> tasks, Collection<ItemId> recents, Collection<Memento> undo) {
+        append(LISTS_SET, out -> {
+            out.writeInt(tasks.size());
+            for (TodoTask t : tasks) writeTask(out, t);
+            out.writeInt(recents.size());
+            for (ItemId id : recents) writeString(out, id.value());
+            out.writeInt(undo.size());
+            for (Memento m : undo) {
+                out.writeByte(m.flags());
+                writeItem(out, m.snapshot(), version);
+            }
+        });
+    }
+
+    // run several appends and write them with a single force; a batch inside
+    // another one joins it, and everything goes out when the outermost one ends
+    public synchronized void batch(Runnable appends) {
+        if (batchDepth++ == 0) pending = new ArrayList<>();
+        try {
+            appends.run();
+        } finally {
+            if (--batchDepth == 0) {
+                List<byte[]> entries = pending;
+                pending = null;
+                if (!entries.isEmpty()) write(entries, true);
+            }
+        }
+    }
+
+    // ====== compaction ======
+
+    // true if anything was logged since the last snapshot (or logging failed)
+    public synchronized boolean hasChanges() throws IOException {
+        return damaged || ch.size() > HEADER_SIZE;
+    }
+
+    public synchronized boolean isDamaged() {
+        return damaged;
+    }
+
+    /**
+     * Save a snapshot and start the journal over. Holds the read lock, so
+     * searches keep running but edits wait until the snapshot is written;
+     * that is why it uses the fast codec rather than the default one.
+     */
+    public void compact(LibraryRepository repo) throws IOException {
+        IOException[] failure = {null};
+        PersistenceService.Snapshot snap = repo.read(() -> {
+            synchronized (this) {
+                try {
+                    // once the snapshot is in place the old journal's stamp no longer matches it
+                    PersistenceService.Snapshot written = persist.snapshot(library, repo, LibraryCodec.LZ);
+                    reset(written.stamp());
+                    return written;
+                } catch (IOException ex) {
+                    failure[0] = ex;
+                    return null;
+                }
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        persist.install(snap, repo);
+    }
+
+    // pending entries stay on disk and are replayed next time
+    public synchronized void close() throws IOException {
+        if (!deferred.isEmpty()) write(List.of(), true);
+        ch.close();
+    }
+
+    // ====== internals ======
+
+    @FunctionalInterface
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private synchronized void append(byte op, Payload payload) {
+        byte[] entry = encode(op, payload);
+        if (pending != null) {
+            pending.add(entry);
+        } else {
+            write(List.of(entry), true);
+        }
+    }
+
+    // the deferred entries go first; force makes them durable
+    private synchronized void write(List<byte[]> entries, boolean force) {
+        if (damaged) return;
+        if (!deferred.isEmpty()) {
+            List<byte[]> all = new ArrayList<>(deferred);
+            all.addAll(entries);
+            entries = all;
+            deferred.clear();
+        }
+        try {
+            int total = 0;
+            for (byte[] e : entries) total += e.length;
+            ByteBuffer buf = ByteBuffer.allocate(total);
+            for (byte[] e : entries) buf.put(e);
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            if (force) ch.force(false);
+        } catch (IOException ex) {
+            System.err.println("Journal write failed: " + ex.getMessage());
+            damaged = true;
+        }
+    }
+
+    private static byte[] encode(byte op, Payload payload) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeByte(op);
+            payload.write(out);
+            byte[] b = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(b);
+            ByteBuffer entry = ByteBuffer.allocate(4 + b.length + 4);
+            entry.putInt(b.length).put(b).putInt((int) crc.getValue());
+            return entry.array();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // in-memory stream
+        }
+    }
+
+    // start an empty journal for the snapshot with this stamp
+    private void reset(long newStamp) throws IOException {
+        ch.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(newStamp).flip();
+        ch.position(0);
+        while (header.hasRemaining()) ch.write(header);
+        ch.force(true);
+        stamp = newStamp;
+        version = VERSION;
+        damaged = false;
+        // the new snapshot holds them
+        deferred.clear();
+    }
+
+    // apply the entries to repo; returns the end of the last good entry, or -1 if the journal is stale
+    private long replay(LibraryRepository repo, IndexService index) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.getInt() != MAGIC) return -1;
+        int ver = buf.getInt();
+        if (ver < 1 || ver > VERSION || buf.getLong() != stamp) return -1;
+        version = ver;
+
+        if (repo == null) return applyAll(buf, null, null, ver);
+        long[] good = {buf.position()};
+        repo.write(() -> good[0] = applyAll(buf, repo, index, ver));
+        return good[0];
+    }
+
+    private static long applyAll(ByteBuffer buf, LibraryRepository repo, IndexService index, int ver) {
+        int applied = 0;
+        long good = buf.position();
+        while (buf.remaining() >= 4) {
+            int len = buf.getInt();
+            if (len <= 0 || buf.remaining() < len + 4) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), buf.position(), len);
+            ByteBuffer entry = buf.slice(buf.position(), len);
+            buf.position(buf.position() + len);
+            if (buf.getInt() != (int) crc.getValue()) break;
+
+            try {
+                if (repo != null) apply(entry, repo, index, ver);
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                break;
+            }
+            applied++;
+            good = buf.position();
+        }
+        if (good < buf.limit()) {
+            System.err.println("Journal: dropped a damaged tail after " + applied + " entries.");
+        }
+        return good;
+    }
+
+    private static void apply(ByteBuffer in, LibraryRepository repo, IndexService index, int ver) {
+        byte op = in.get();
+        switch (op) {
+            case ITEM_PUT -> {
+                Item it = readItem(in, ver);
+                Optional<Item> existing = repo.find(it.getId());
+                if (existing.isPresent()) {
+                    index.update(repo, existing.get(), it);
+                    repo.add(it);
+                } else {
+                    repo.add(it);
+                    index.index(repo, it);
+                }
+            }
+            case ITEM_DELETE -> repo.find(new ItemId(readString(in))).ifPresent(existing -> {
+                index.unindex(repo, existing);
+                repo.remove(existing.getId());
+            });
+            case TASK_ADD -> repo.taskQueue().add(readTask(in));
+            case TASK_REMOVE -> {
+                TodoTask t = readTask(in);
+                for (Iterator<TodoTask> i = repo.taskQueue().iterator(); i.hasNext(); ) {
+                    if (sameTask(i.next(), t)) {
+                        i.remove();
+                        break;
+                    }
+                }
+            }
+            case UNDO_PUSH -> {
+                int flags = in.get();
+                repo.undoStack().push(Memento.of(readItem(in, ver), flags));
+            }
+            case UNDO_POP -> repo.undoStack().poll();
+            case RECENT_PUSH -> repo.recentlyViewed().push(new ItemId(readString(in)));
+            case ITEM_FIELDS -> {
+                ItemId id = new ItemId(readString(in));
+                int fields = in.getInt();
+                // the item went away in a way that wasn't logged; nothing to apply the fields to,
+                // and stopping here would cut off every entry after this one
+                Item before = repo.find(id).orElse(null);
+                if (before == null) {
+                    System.err.println("Journal: skipped changes to unknown item " + id.value());
+                    return;
+                }
+                Item it = copyOf(before);
+                if ((fields & Item.TITLE) != 0) it.setTitle(readString(in));
+                if ((fields & Item.CATEGORY) != 0) it.setCategory(enumOrNull(ItemCategory.class, readString(in)));
+                if ((fields & Item.KIND) != 0) it.setMediaKind(enumOrNull(MediaKind.class, readString(in)));
+                if ((fields & Item.RATING) != 0) it.setRating(in.getInt());
+                if ((fields & Item.CREATED) != 0) it.setCreatedAt(readInstant(in));
+                if ((fields & Item.PATH) != 0) it.setPathOrUrl(readString(in));
+                if ((fields & Item.DESCRIPTION) != 0) it.setDescription(readString(in));
+                if ((fields & Item.TAGS) != 0) {
+                    int n = in.getInt();
+                    List<String> tags = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) tags.add(readString(in));
+                    it.setTags(tags);
+                }
+                if ((fields & Item.MEDIA) != 0) it.setMedia(readMedia(in));
+                index.update(repo, before, it);
+                repo.add(it);
+            }
+            case LISTS_SET -> {
+                int n = in.getInt();
+                List<TodoTask> tasks = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) tasks.add(readTask(in));
+                n = in.getInt();
+                List<ItemId> recents = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) recents.add(new ItemId(readString(in)));
+                n = in.getInt();
+                List<Memento> undo = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    int flags = in.get();
+                    undo.add(Memento.of(readItem(in, ver), flags));
+                }
+                repo.taskQueue().clear();
+                repo.taskQueue().addAll(tasks);
+                repo.recentlyViewed().clear();
+                repo.recentlyViewed().addAll(recents);
+                repo.undoStack().clear();
+                repo.undoStack().addAll(undo);
+            }
+            default -> throw new IllegalArgumentException("Unknown journal entry: " + op);
+        }
+    }
+
+    static Item copyOf(Item src) {
+        Item c = new Item(src.getId(), src.getTitle());
+        c.setCategory(src.getCategory());
+        c.setMediaKind(src.getMediaKind());
+        c.setRating(src.getRating());
+        c.setCreatedAt(src.getCreatedAt());
+        c.setPathOrUrl(src.getPathOrUrl());
+        c.setDescription(src.getDescription());
+        c.setTags(new ArrayList<>(src.getTags()));
+        c.setMedia(src.getMedia());
+        return c;
+    }
+
+    private static <E extends Enum<E>> E enumOrNull(Class<E> type, String name) {
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    static boolean sameTask(TodoTask a, TodoTask b) {
+        return Objects.equals(a.getTitle(), b.getTitle())
+                && Objects.equals(a.getCreatedAt(), b.getCreatedAt())
+                && Objects.equals(a.getDueDate(), b.getDueDate());
+    }
+
+    // ====== field encoding ======
+
+    private static void writeItem(DataOutputStream out, Item it, int ver) throws IOException {
+        writeString(out, it.getId().value());
+        writeString(out, it.getTitle());
+        writeString(out, it.getCategory() == null ? null : it.getCategory().name());
+        writeString(out, it.getMediaKind() == null ? null : it.getMediaKind().name());
+        out.writeInt(it.getRating());
+        writeInstant(out, it.getCreatedAt());
+        writeString(out, it.getPathOrUrl());
+        writeString(out, it.getDescription());
+        out.writeInt(it.getTags().size());
+        for (String tag : it.getTags()) writeString(out, tag);
+        if (ver >= 2) writeMedia(out, it.getMedia());
+    }
+
+    private static void writeMedia(DataOutputStream out, MediaInfo m) throws IOException {
+        out.writeBoolean(m != null);
+        if (m == null) return;
+        out.writeLong(m.durationMs());
+        writeString(out, m.codec());
+        writeString(out, m.title());
+        writeString(out, m.artist());
+        writeString(out, m.album());
+        writeString(out, m.genre());
+        out.writeInt(m.year());
+    }
+
+    private static MediaInfo readMedia(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return new MediaInfo(in.getLong(), readString(in), readString(in), readString(in),
+                readString(in), readString(in), in.getInt());
+    }
+
+    private static Item readItem(ByteBuffer in, int ver) {
+        Item it = new Item(new ItemId(readString(in)), readString(in));
+        String category = readString(in);
+        String kind = readString(in);
+        it.setCategory(category == null ? null : ItemCategory.valueOf(category));
+        it.setMediaKind(kind == null ? null : MediaKind.valueOf(kind));
+        it.setRating(in.getInt());
+        it.setCreatedAt(readInstant(in));
+        it.setPathOrUrl(readString(in));
+        it.setDescription(readString(in));
+        int n = in.getInt();
+        List<String> tags = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) tags.add(readString(in));
+        it.setTags(tags);
+        if (ver >= 2) it.setMedia(readMedia(in));
+        return it;
+    }
+
+    private static void writeTask(DataOutputStream out, TodoTask t) throws IOException {
+        writeString(out, t.getTitle());
+        writeInstant(out, t.getCreatedAt());
+        out.writeLong(t.getDueDate() == null ? Long.MIN_VALUE : t.getDueDate().toEpochDay());
+    }
+
+    private static TodoTask readTask(ByteBuffer in) {
+        String title = readString(in);
+        Instant created = readInstant(in);
+        long due = in.getLong();
+        return new TodoTask(title, created, due == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(due));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant t) throws IOException {
+        out.writeBoolean(t != null);
+        if (t != null) {
+            out.writeLong(t.getEpochSecond());
+            out.writeInt(t.getNano());
+        }
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        return Instant.ofEpochSecond(in.getLong(), in.getInt());
+    }
+}
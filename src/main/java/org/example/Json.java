@@ -0,0 +1,195 @@
+// src/main/java/org/example/Json.java
+package org.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for one-object-per-line files: write a string literal,
+ * and parse one value into String / Long / Double / Boolean / null /
+ * List / Map. No dependency, and nothing is kept beyond the line at hand.
+ */
+final class Json {
+
+    private final String src;
+    private int pos;
+
+    private Json(String src) {
+        this.src = src;
+    }
+
+    // one JSON object, the whole of `line`
+    static Map<String, Object> parseObject(String line) throws IOException {
+        Json p = new Json(line);
+        p.skipSpace();
+        if (p.peek() != '{') throw p.error("expected an object");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> obj = (Map<String, Object>) p.value();
+        p.skipSpace();
+        if (p.pos != p.src.length()) throw p.error("unexpected text after the object");
+        return obj;
+    }
+
+    static void writeString(Appendable out, String s) throws IOException {
+        if (s == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            out.append(s, from, i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+            from = i + 1;
+        }
+        out.append(s, from, s.length());
+        out.append('"');
+    }
+
+    private Object value() throws IOException {
+        skipSpace();
+        char c = peek();
+        switch (c) {
+            case '{': {
+                pos++;
+                Map<String, Object> obj = new LinkedHashMap<>();
+                skipSpace();
+                if (peek() == '}') {
+                    pos++;
+                    return obj;
+                }
+                while (true) {
+                    skipSpace();
+                    if (peek() != '"') throw error("expected a field name");
+                    String key = string();
+                    skipSpace();
+                    expect(':');
+                    obj.put(key, value());
+                    skipSpace();
+                    if (peek() == ',') {
+                        pos++;
+                    } else {
+                        expect('}');
+                        return obj;
+                    }
+                }
+            }
+            case '[': {
+                pos++;
+                List<Object> list = new ArrayList<>();
+                skipSpace();
+                if (peek() == ']') {
+                    pos++;
+                    return list;
+                }
+                while (true) {
+                    list.add(value());
+                    skipSpace();
+                    if (peek() == ',') {
+                        pos++;
+                    } else {
+                        expect(']');
+                        return list;
+                    }
+                }
+            }
+            case '"':
+                return string();
+            case 't':
+                literal("true");
+                return Boolean.TRUE;
+            case 'f':
+                literal("false");
+                return Boolean.FALSE;
+            case 'n':
+                literal("null");
+                return null;
+            default:
+                return number();
+        }
+    }
+
+    private String string() throws IOException {
+        expect('"');
+        StringBuilder sb = null;
+        int from = pos;
+        while (true) {
+            char c = peek();
+            pos++;
+            if (c == '"') {
+                return sb == null ? src.substring(from, pos - 1) : sb.append(src, from, pos - 1).toString();
+            }
+            if (c != '\\') continue;
+            if (sb == null) sb = new StringBuilder();
+            sb.append(src, from, pos - 1);
+            char e = peek();
+            pos++;
+            switch (e) {
+                case '"', '\\', '/' -> sb.append(e);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > src.length()) throw error("bad escape");
+                    try {
+                        sb.append((char) Integer.parseInt(src, pos, pos + 4, 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("bad escape");
+            }
+            from = pos;
+        }
+    }
+
+    private Object number() throws IOException {
+        int from = pos;
+        while (pos < src.length() && "+-0123456789.eE".indexOf(src.charAt(pos)) >= 0) pos++;
+        String n = src.substring(from, pos);
+        try {
+            if (n.indexOf('.') < 0 && n.indexOf('e') < 0 && n.indexOf('E') < 0) return Long.parseLong(n);
+            return Double.parseDouble(n);
+        } catch (NumberFormatException ex) {
+            throw error("expected a value");
+        }
+    }
+
+    private void literal(String word) throws IOException {
+        if (!src.startsWith(word, pos)) throw error("expected a value");
+        pos += word.length();
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) throw error("expected '" + c + "'");
+        pos++;
+    }
+
+    private char peek() throws IOException {
+        if (pos >= src.length()) throw error("unexpected end of line");
+        return src.charAt(pos);
+    }
+
+    private void skipSpace() {
+        while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+    }
+
+    private IOException error(String what) {
+        return new IOException("Bad JSON at column " + (pos + 1) + ": " + what);
+    }
+}
@@ -0,0 +1,388 @@
+// src/main/java/org/example/KeywordIndex.java
+package org.example;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Inverted index: term -> posting list of dense item ordinals.
+ *
+ * Every indexed item gets a small int ordinal so postings can be stored as
+ * int arrays / bitmaps instead of sets of ItemId objects. Ordinals of
+ * unindexed items are recycled to keep the id space (and bitmaps) dense.
+ *
+ * Terms are kept sorted, which doubles as the term dictionary for prefix
+ * expansion and search-as-you-type suggestions.
+ *
+ * For relevance scoring each posting carries a (field-weighted) term
+ * frequency and each ordinal has a document length.
+ *
+ * A trigram index over the terms (for fuzzy matching) is built on first use
+ * and kept in step afterwards; it is not saved with the library.
+ *
+ * After a load the postings live in a memory-mapped IndexSegment and only
+ * terms touched since then are copied onto the heap. Lists decoded for a
+ * search are kept in a small LRU cache (DECODED_BYTES), so typing a query
+ * doesn't decode the same common terms on every keystroke. A save writes a new
+ * segment and rebase() swaps it in, unless the index changed meanwhile.
+ */
+public class KeywordIndex implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    // heap allowed for posting lists decoded from the segment
+    static final long DECODED_BYTES = 16 << 20;
+
+    private final NavigableMap<String, PostingList> postings = new TreeMap<>();
+
+    // ItemId <-> ordinal
+    private final Map<ItemId, Integer> ordinals = new HashMap<>();
+    private final ArrayList<ItemId> ids = new ArrayList<>();
+    private final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    // weighted token count per ordinal, plus the running total for the average
+    private int[] docLengths = new int[16];
+    private long totalLength;
+
+    // lazily built, see grams()
+    private transient TermGramIndex grams;
+
+    // saved segment underneath the in-memory postings (null when built from scratch);
+    // `postings` then only holds terms changed since load, empty list = deleted
+    private transient IndexSegment base;
+
+    // recently read lists of unchanged terms, decoded from base; shared by readers, so guarded by itself
+    private final transient LinkedHashMap<String, PostingList> decoded = new LinkedHashMap<>(64, 0.75f, true);
+    private transient long decodedBytes;
+
+    // terms with at least one posting, kept up to date rather than counted
+    private transient int termCount;
+
+    // bumped on every change, so a segment written from the index can tell whether it still matches
+    private transient long version;
+
+    // ====== ordinals ======
+
+    // ordinal for an item, assigning one if needed
+    public int ordinalOf(ItemId id) {
+        Integer ord = ordinals.get(id);
+        if (ord != null) return ord;
+
+        int assigned;
+        if (!freeOrdinals.isEmpty()) {
+            assigned = freeOrdinals.pop();
+            ids.set(assigned, id);
+        } else {
+            assigned = ids.size();
+            ids.add(id);
+        }
+        ordinals.put(id, assigned);
+        version++;
+        return assigned;
+    }
+
+    // ordinal if the item is indexed, otherwise -1
+    public int existingOrdinal(ItemId id) {
+        Integer ord = ordinals.get(id);
+        return ord == null ? -1 : ord;
+    }
+
+    public ItemId idAt(int ordinal) {
+        return ordinal >= 0 && ordinal < ids.size() ? ids.get(ordinal) : null;
+    }
+
+    // upper bound (exclusive) of ordinals handed out so far
+    public int ordinalLimit() {
+        return ids.size();
+    }
+
+    // give the ordinal back once all of the item's postings are gone
+    public void release(ItemId id) {
+        Integer ord = ordinals.remove(id);
+        if (ord != null) {
+            setDocLength(ord, 0);
+            ids.set(ord, null);
+            freeOrdinals.push(ord);
+            version++;
+        }
+    }
+
+    // number of indexed items
+    public int docCount() {
+        return ordinals.size();
+    }
+
+    // ====== document lengths ======
+
+    public void setDocLength(int ordinal, int length) {
+        if (ordinal >= docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, Math.max(ordinal + 1, docLengths.length * 2));
+        }
+        totalLength += length - docLengths[ordinal];
+        docLengths[ordinal] = length;
+        version++;
+    }
+
+    public int docLength(int ordinal) {
+        return ordinal < docLengths.length ? docLengths[ordinal] : 0;
+    }
+
+    public double averageDocLength() {
+        return ordinals.isEmpty() ? 0 : (double) totalLength / ordinals.size();
+    }
+
+    // ====== postings ======
+
+    // add a posting, or update its frequency if it is already there
+    public void add(String term, int ordinal, int freq) {
+        PostingList p = writable(term);
+        if (p == null) {
+            p = new PostingList();
+            postings.put(term, p);
+        }
+        if (p.isEmpty()) {
+            termCount++;
+            if (grams != null) grams.add(term);
+        }
+        p.add(ordinal, freq);
+        version++;
+    }
+
+    public void remove(String term, int ordinal) {
+        PostingList p = writable(term);
+        if (p == null || p.isEmpty()) return;
+        p.remove(ordinal);
+        version++;
+        if (p.isEmpty()) {
+            termCount--;
+            // an empty list hides the term in the segment underneath
+            if (base == null || base.find(term) < 0) postings.remove(term);
+            if (grams != null) grams.remove(term);
+        }
+    }
+
+    // in-memory list for a term, copied out of the segment on first change
+    private PostingList writable(String term) {
+        PostingList p = postings.get(term);
+        if (p == null && base != null) {
+            int i = base.find(term);
+            if (i >= 0) {
+                // a copy of its own: a search may still hold the cached one
+                p = base.postingsAt(i);
+                postings.put(term, p);
+                synchronized (decoded) {
+                    PostingList cached = decoded.remove(term);
+                    if (cached != null) decodedBytes -= cached.sizeInBytes();
+                }
+            }
+        }
+        return p;
+    }
+
+    // a term's list in the segment, through the cache; null if the segment doesn't have it
+    private PostingList fromBase(String term) {
+        synchronized (decoded) {
+            PostingList p = decoded.get(term);
+            if (p != null) return p;
+        }
+        int i = base.find(term);
+        if (i < 0) return null;
+        PostingList p = base.postingsAt(i);
+        synchronized (decoded) {
+            PostingList raced = decoded.putIfAbsent(term, p);
+            if (raced != null) return raced;
+            decodedBytes += p.sizeInBytes();
+            Iterator<PostingList> eldest = decoded.values().iterator();
+            while (decodedBytes > DECODED_BYTES && decoded.size() > 1) {
+                decodedBytes -= eldest.next().sizeInBytes();
+                eldest.remove();
+            }
+        }
+        return p;
+    }
+
+    private void dropDecoded() {
+        synchronized (decoded) {
+            decoded.clear();
+            decodedBytes = 0;
+        }
+    }
+
+    // trigram index over the dictionary; built on the first fuzzy query
+    public synchronized TermGramIndex grams() {
+        if (grams == null) {
+            TermGramIndex built = new TermGramIndex();
+            for (String term : termsStartingWith("")) built.add(term);
+            grams = built;
+        }
+        return grams;
+    }
+
+    // posting list for a term, or null; treat it as read-only
+    public PostingList get(String term) {
+        PostingList p = postings.get(term);
+        if (p != null) return p.isEmpty() ? null : p;
+        return base == null ? null : fromBase(term);
+    }
+
+    // number of items containing the term, without decoding its postings
+    public int docFreq(String term) {
+        PostingList p = postings.get(term);
+        if (p != null) return p.size();
+        if (base == null) return 0;
+        int i = base.find(term);
+        return i >= 0 ? base.docFreqAt(i) : 0;
+    }
+
+    // terms starting with prefix, in sorted order, at most limit of them
+    public List<String> termsWithPrefix(String prefix, int limit) {
+        List<String> out = new ArrayList<>();
+        for (String term : termsStartingWith(prefix)) {
+            if (out.size() >= limit) break;
+            out.add(term);
+        }
+        return out;
+    }
+
+    // sorted terms that start with prefix, merging the segment and in-memory changes
+    public Iterable<String> termsStartingWith(String prefix) {
+        return () -> new PrefixIterator(prefix);
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public boolean isEmpty() {
+        return ordinals.isEmpty();
+    }
+
+    public void clear() {
+        postings.clear();
+        ordinals.clear();
+        ids.clear();
+        freeOrdinals.clear();
+        docLengths = new int[16];
+        totalLength = 0;
+        grams = null;
+        closeBase();
+        termCount = 0;
+        version++;
+    }
+
+    // ====== segment ======
+
+    // start from a saved segment; postings stay on disk until a term is changed
+    public void attach(IndexSegment segment) {
+        clear();
+        String[] segIds = segment.readIds();
+        for (int ord = 0; ord < segIds.length; ord++) {
+            if (segIds[ord] == null) {
+                ids.add(null);
+                freeOrdinals.push(ord);
+            } else {
+                ItemId id = new ItemId(segIds[ord]);
+                ids.add(id);
+                ordinals.put(id, ord);
+            }
+        }
+        docLengths = segment.readDocLengths();
+        totalLength = segment.totalLength();
+        termCount = segment.termCount();
+        base = segment;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Read the postings from a segment written out of this index at the
+     * given version, dropping the heap copies and releasing the segment
+     * they were on. Returns false, changing nothing, if the index has
+     * changed since; the caller then discards the segment.
+     */
+    public boolean rebase(IndexSegment segment, long writtenAt) {
+        if (writtenAt != version) return false;
+        postings.clear();
+        closeBase();
+        base = segment;
+        return true;
+    }
+
+    private void closeBase() {
+        dropDecoded();
+        if (base != null) base.close();
+        base = null;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    // rough size of the postings held on the heap, for diagnostics
+    public long postingBytes() {
+        long total = 0;
+        for (PostingList p : postings.values()) total += p.sizeInBytes();
+        return total;
+    }
+
+    // walks the segment's dictionary and the in-memory map side by side
+    private final class PrefixIterator implements Iterator<String> {
+        private final String prefix;
+        private final Iterator<Map.Entry<String, PostingList>> changed;
+        private Map.Entry<String, PostingList> nextChanged;
+        private int baseIdx;
+        private String nextBase;
+        private String next;
+
+        PrefixIterator(String prefix) {
+            this.prefix = prefix;
+            this.changed = (prefix.isEmpty() ? postings
+                    : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false)).entrySet().iterator();
+            this.nextChanged = changed.hasNext() ? changed.next() : null;
+            if (base != null) {
+                int i = base.find(prefix);
+                baseIdx = i >= 0 ? i : -(i + 1);
+                nextBase = readBase();
+            }
+            advance();
+        }
+
+        private String readBase() {
+            if (base == null || baseIdx >= base.termCount()) return null;
+            String t = base.termAt(baseIdx++);
+            return t.startsWith(prefix) ? t : null;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && (nextChanged != null || nextBase != null)) {
+                int c = nextChanged == null ? 1 : nextBase == null ? -1
+                        : nextChanged.getKey().compareTo(nextBase);
+                if (c <= 0) {
+                    if (!nextChanged.getValue().isEmpty()) next = nextChanged.getKey();
+                    if (c == 0) nextBase = readBase();
+                    nextChanged = changed.hasNext() ? changed.next() : null;
+                } else {
+                    next = nextBase;
+                    nextBase = readBase();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) throw new NoSuchElementException();
+            String t = next;
+            advance();
+            return t;
+        }
+    }
+}
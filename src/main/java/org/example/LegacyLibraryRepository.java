@@ -0,0 +1,51 @@
+// src/main/java/org/example/LegacyLibraryRepository.java
+package org.example;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * LibraryRepository as the first release serialized it (serialVersionUID 1,
+ * items in a List, keyword index and tag counts saved along). Frozen: it
+ * exists only so readLegacy can read those files, and must keep exactly
+ * these fields. Its indexes are ignored; the loader rebuilds its own.
+ */
+final class LegacyLibraryRepository implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final List<Item> items = new ArrayList<>();
+    private final Deque<ItemId> recentStack = new ArrayDeque<>();
+    private final Deque<Memento> undoStack = new ArrayDeque<>();
+    private final PriorityQueue<TodoTask> taskQueue = new PriorityQueue<>();
+    private final Map<String, Set<ItemId>> keywordIndex = new HashMap<>();
+    private final Map<String, Integer> tagFrequency = new HashMap<>();
+
+    LibraryFormat.Contents toContents(long stamp) {
+        return new LibraryFormat.Contents(stamp, new ArrayList<>(items), new ArrayList<>(taskQueue),
+                new ArrayList<>(recentStack), new ArrayList<>(undoStack));
+    }
+
+    /**
+     * Reads a serialized library, whichever LibraryRepository it was written
+     * with: a stream naming the old class version gets this class instead.
+     */
+    static final class Input extends ObjectInputStream {
+
+        private static final String REPOSITORY = LibraryRepository.class.getName();
+
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(REPOSITORY) && desc.getSerialVersionUID() == serialVersionUID) {
+                return ObjectStreamClass.lookup(LegacyLibraryRepository.class);
+            }
+            return desc;
+        }
+    }
+}
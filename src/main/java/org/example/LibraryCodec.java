@@ -0,0 +1,92 @@
+// src/main/java/org/example/LibraryCodec.java
+package org.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression for library files, picked per save. The file is written as
+ * a run of compressed blocks and every block (and every long description)
+ * records which codec it used, so a reader never needs to be told.
+ *
+ *   NONE     blocks stored as they are
+ *   DEFLATE  java.util.zip, smallest files
+ *   LZ       byte-oriented LZ77 (LzCodec), a little larger but much faster
+ */
+public enum LibraryCodec {
+    NONE(0),
+    DEFLATE(1),
+    LZ(2);
+
+    // compressors are costly to create, so each thread keeps one
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    final byte id;
+
+    LibraryCodec(int id) {
+        this.id = (byte) id;
+    }
+
+    static LibraryCodec of(int id) throws IOException {
+        for (LibraryCodec c : values()) {
+            if (c.id == id) return c;
+        }
+        throw new IOException("Unknown compression: " + id);
+    }
+
+    // compressed copy of src[off, off + len), or null if it would not be smaller
+    byte[] compress(byte[] src, int off, int len) {
+        return switch (this) {
+            case NONE -> null;
+            case DEFLATE -> deflate(src, off, len);
+            case LZ -> LzCodec.compress(src, off, len);
+        };
+    }
+
+    // decode src[off, off + len) into exactly dstLen bytes at dst[dstOff]
+    void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+        switch (this) {
+            case NONE -> {
+                if (len != dstLen) throw new IOException("Library file is corrupt.");
+                System.arraycopy(src, off, dst, dstOff, len);
+            }
+            case DEFLATE -> inflate(src, off, len, dst, dstOff, dstLen);
+            case LZ -> LzCodec.decompress(src, off, len, dst, dstOff, dstLen);
+        }
+    }
+
+    private static byte[] deflate(byte[] src, int off, int len) {
+        Deflater d = DEFLATER.get();
+        d.reset();
+        d.setInput(src, off, len);
+        d.finish();
+        // anything that doesn't fit in len bytes isn't worth keeping
+        byte[] out = new byte[len];
+        int n = 0;
+        while (!d.finished() && n < out.length) {
+            n += d.deflate(out, n, out.length - n);
+        }
+        return d.finished() && n < len ? Arrays.copyOf(out, n) : null;
+    }
+
+    private static void inflate(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+        Inflater inf = INFLATER.get();
+        inf.reset();
+        inf.setInput(src, off, len);
+        int n = 0;
+        try {
+            while (n < dstLen) {
+                int k = inf.inflate(dst, dstOff + n, dstLen - n);
+                if (k == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) break;
+                n += k;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Library file is corrupt.", ex);
+        }
+        if (n != dstLen || !inf.finished()) throw new IOException("Library file is corrupt.");
+    }
+}
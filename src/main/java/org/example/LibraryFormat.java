@@ -0,0 +1,537 @@
+// src/main/java/org/example/LibraryFormat.java
+package org.example;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Binary library file (version 5), read and written through a FileChannel.
+ *
+ * Layout (big-endian):
+ *   header   int magic "SCOL", int version, long stamp
+ *   strings  int count, then one record per string (tags, paths, enum names),
+ *            sorted and front-coded: chars shared with the previous string, then the rest
+ *   items    int count, then one record per item (media metadata, when
+ *            present, comes last, so files saved before it existed still read)
+ *   tasks    int count, then one record per task
+ *   recents  int count, then one record per item id
+ *   undo     int count, then one record per memento
+ *   bodies   long length, then the UTF-8 of every long description
+ *
+ * Every record is an int byte length followed by its fields, so a reader
+ * ignores fields appended by a later version instead of failing. Strings
+ * are an int UTF-8 length (-1 = null) followed by the bytes; fields that
+ * repeat a lot refer to the string table by index (-1 = null).
+ *
+ * Everything after the header up to the bodies is cut into blocks of about
+ * BUFFER_SIZE bytes, each framed as byte codec, int raw length, int stored
+ * length, then the stored bytes. The codec is picked per save; a block that
+ * doesn't shrink is stored as it is.
+ *
+ * Descriptions of BODY_THRESHOLD bytes or more are stored in the bodies
+ * section, each compressed on its own, and referenced by (offset, stored
+ * length, raw length, codec). On load that section is memory-mapped and
+ * handed to a TextStore, so item records stay small on the heap and a
+ * description is only decoded when it is asked for.
+ * Version 3 (all descriptions inline) and 4 (no blocks, no front coding,
+ * bodies stored as they are) files are still read.
+ */
+final class LibraryFormat {
+
+    static final int MAGIC = 0x53434F4C; // "SCOL"
+    static final int VERSION = 5;
+    private static final int BUFFER_SIZE = 1 << 16;
+    static final int BODY_THRESHOLD = 256;
+    // items are handed to the progress callback in groups of this many
+    static final int ITEM_BATCH = 2_000;
+
+    private static final byte DESC_INLINE = 0;
+    private static final byte DESC_BODY = 1;
+
+    record Contents(long stamp, List<Item> items, List<TodoTask> tasks,
+                    List<ItemId> recents, List<Memento> undo) {}
+
+    // where the bodies landed in a written file, and the mapped descriptions that went there
+    record Written(long bodyPosition, long bodyLength, List<TextStore.Moved> moved) {}
+
+    private LibraryFormat() {}
+
+    // ====== writing ======
+
+    static Written write(Path file, LibraryRepository repo, long stamp, LibraryCodec codec) throws IOException {
+        // the string table goes first, so collect it up front; sorted, so
+        // paths from the same folder sit together and share their prefix
+        Set<String> strings = new HashSet<>(repo.size() * 2);
+        for (Item it : repo.all()) collectStrings(it, strings);
+        for (Memento m : repo.undoStack()) collectStrings(m.snapshot(), strings);
+        String[] sorted = strings.toArray(new String[0]);
+        Arrays.sort(sorted);
+        Map<String, Integer> table = new HashMap<>(sorted.length * 2);
+        for (String str : sorted) table.put(str, table.size());
+
+        // long descriptions are spooled to a side file and appended at the end
+        List<TextStore.Moved> moved = new ArrayList<>();
+        Path spool = file.resolveSibling(file.getFileName() + ".bodies");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel bodies = FileChannel.open(spool, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer head = ByteBuffer.allocate(16).putInt(MAGIC).putInt(VERSION).putLong(stamp).flip();
+            while (head.hasRemaining()) ch.write(head);
+            Out out = new Out(ch, codec);
+
+            out.putInt(sorted.length);
+            String prev = "";
+            for (String str : sorted) {
+                int at = out.beginRecord();
+                int shared = sharedPrefix(prev, str);
+                out.putInt(shared);
+                out.putString(str.substring(shared));
+                out.endRecord(at);
+                prev = str;
+            }
+
+            out.putInt(repo.size());
+            for (Item it : repo.all()) {
+                int at = out.beginRecord();
+                writeItem(out, it, table, bodies, codec, moved);
+                out.endRecord(at);
+            }
+
+            out.putInt(repo.taskQueue().size());
+            for (TodoTask t : repo.taskQueue()) {
+                int at = out.beginRecord();
+                out.putString(t.getTitle());
+                out.putInstant(t.getCreatedAt());
+                out.putLong(t.getDueDate() == null ? Long.MIN_VALUE : t.getDueDate().toEpochDay());
+                out.endRecord(at);
+            }
+
+            out.putInt(repo.recentlyViewed().size());
+            for (ItemId id : repo.recentlyViewed()) {
+                int at = out.beginRecord();
+                out.putString(id.value());
+                out.endRecord(at);
+            }
+
+            out.putInt(repo.undoStack().size());
+            for (Memento m : repo.undoStack()) {
+                int at = out.beginRecord();
+                out.putByte(m.flags());
+                writeItem(out, m.snapshot(), table, bodies, codec, moved);
+                out.endRecord(at);
+            }
+
+            // the last block ends right after this, and the bodies follow uncut
+            long bodyLength = bodies.size();
+            out.putLong(bodyLength);
+            out.flush();
+            long bodyPosition = ch.position();
+            for (long pos = 0; pos < bodyLength; ) {
+                pos += bodies.transferTo(pos, bodyLength - pos, ch);
+            }
+            ch.force(true);
+            return new Written(bodyPosition, bodyLength, moved);
+        }
+    }
+
+    private static void collectStrings(Item it, Set<String> strings) {
+        if (it.getCategory() != null) strings.add(it.getCategory().name());
+        if (it.getMediaKind() != null) strings.add(it.getMediaKind().name());
+        if (it.getPathOrUrl() != null) strings.add(it.getPathOrUrl());
+        strings.addAll(it.getTags());
+        MediaInfo m = it.getMedia();
+        if (m != null) {
+            for (String s : new String[]{m.codec(), m.artist(), m.album(), m.genre()}) {
+                if (s != null) strings.add(s);
+            }
+        }
+    }
+
+    // chars b shares with a, never splitting a surrogate pair
+    private static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        if (i > 0 && Character.isHighSurrogate(b.charAt(i - 1))) i--;
+        return i;
+    }
+
+    private static void writeItem(Out out, Item it, Map<String, Integer> table,
+                                  FileChannel bodies, LibraryCodec codec, List<TextStore.Moved> moved)
+            throws IOException {
+        out.putString(it.getId().value());
+        out.putString(it.getTitle());
+        out.putInt(indexOf(table, it.getCategory() == null ? null : it.getCategory().name()));
+        out.putInt(indexOf(table, it.getMediaKind() == null ? null : it.getMediaKind().name()));
+        out.putInt(it.getRating());
+        out.putInstant(it.getCreatedAt());
+        out.putInt(indexOf(table, it.getPathOrUrl()));
+        writeDescription(out, it, bodies, codec, moved);
+        out.putInt(it.getTags().size());
+        for (String tag : it.getTags()) out.putInt(table.get(tag));
+        // appended after the version 5 fields; earlier files simply end here
+        MediaInfo m = it.getMedia();
+        out.putByte(m == null ? 0 : 1);
+        if (m != null) {
+            out.putLong(m.durationMs());
+            out.putInt(indexOf(table, m.codec()));
+            out.putString(m.title());
+            out.putInt(indexOf(table, m.artist()));
+            out.putInt(indexOf(table, m.album()));
+            out.putInt(indexOf(table, m.genre()));
+            out.putInt(m.year());
+        }
+    }
+
+    // a description still mapped from the file it came from always goes to the bodies and is
+    // listed in moved, so it can be pointed at the new file once that replaces the old one
+    private static void writeDescription(Out out, Item it, FileChannel bodies, LibraryCodec codec,
+                                         List<TextStore.Moved> moved) throws IOException {
+        TextStore.Ref ref = it.descriptionRef();
+        ByteBuffer body = ref != null && ref.codec() == codec ? ref.bytes() : null;
+        int rawLength;
+        LibraryCodec stored;
+        if (body != null) {
+            // packed the same way; copy the bytes as they are
+            rawLength = ref.rawLength();
+            stored = ref.codec();
+        } else {
+            String d = it.getDescription();
+            byte[] b = d == null ? null : d.getBytes(StandardCharsets.UTF_8);
+            if (b == null || (ref == null && b.length < BODY_THRESHOLD)) {
+                out.putByte(DESC_INLINE);
+                out.putBytes(b);
+                return;
+            }
+            byte[] packed = codec.compress(b, 0, b.length);
+            body = ByteBuffer.wrap(packed != null ? packed : b);
+            rawLength = b.length;
+            stored = packed != null ? codec : LibraryCodec.NONE;
+        }
+        long offset = bodies.position();
+        int length = body.remaining();
+        out.putByte(DESC_BODY);
+        out.putLong(offset);
+        out.putInt(length);
+        out.putInt(rawLength);
+        out.putByte(stored.id);
+        while (body.hasRemaining()) bodies.write(body);
+        if (ref != null) moved.add(new TextStore.Moved(it, offset, length, rawLength, stored));
+    }
+
+    private static int indexOf(Map<String, Integer> table, String s) {
+        return s == null ? -1 : table.get(s);
+    }
+
+    // ====== reading ======
+
+    // stamp in a library file's header, 0 if it isn't one of ours
+    static long readStamp(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(16);
+            while (head.hasRemaining() && ch.read(head) > 0) { }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC ? head.getLong(8) : 0;
+        }
+    }
+
+    // read a library; onItems sees the items in batches as they are decoded
+    static Contents read(Path file, Consumer<List<Item>> onItems) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = readFully(ch, 16);
+            if (head.getInt() != MAGIC) {
+                throw new IOException("Not a Smart Collections file.");
+            }
+            int ver = head.getInt();
+            if (ver < 3 || ver > VERSION) {
+                throw new IOException("Unsupported version: " + ver);
+            }
+            long stamp = head.getLong();
+            In in = new In(ch, ver >= 5);
+
+            TextStore store = ver >= 4 ? new TextStore() : null;
+
+            String[] table = new String[in.count()];
+            String prev = "";
+            for (int i = 0; i < table.length; i++) {
+                ByteBuffer r = in.record();
+                if (ver >= 5) {
+                    int shared = r.getInt();
+                    prev = prev.substring(0, shared) + getString(r);
+                    table[i] = prev;
+                } else {
+                    table[i] = getString(r);
+                }
+            }
+
+            int n = in.count();
+            List<Item> items = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                items.add(readItem(in.record(), table, store, ver));
+                if (items.size() % ITEM_BATCH == 0 || i == n - 1) {
+                    int from = (items.size() - 1) / ITEM_BATCH * ITEM_BATCH;
+                    onItems.accept(List.copyOf(items.subList(from, items.size())));
+                }
+            }
+
+            n = in.count();
+            List<TodoTask> tasks = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                ByteBuffer r = in.record();
+                String title = getString(r);
+                Instant created = getInstant(r);
+                long due = r.getLong();
+                tasks.add(new TodoTask(title, created, due == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(due)));
+            }
+
+            n = in.count();
+            List<ItemId> recents = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) recents.add(new ItemId(getString(in.record())));
+
+            n = in.count();
+            List<Memento> undo = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                ByteBuffer r = in.record();
+                int flags = r.get();
+                undo.add(Memento.of(readItem(r, table, store, ver), flags));
+            }
+
+            if (store != null) {
+                long bodyLength = in.header(8).getLong();
+                store.attach(ch, file, in.offset(), bodyLength);
+            }
+            return new Contents(stamp, items, tasks, recents, undo);
+        } catch (IndexOutOfBoundsException | java.nio.BufferUnderflowException ex) {
+            // also covers a front-coded string sharing more than its predecessor has
+            throw new IOException("Library file is corrupt.", ex);
+        }
+    }
+
+    private static Item readItem(ByteBuffer r, String[] table, TextStore store, int ver) throws IOException {
+        Item it = new Item(new ItemId(getString(r)), getString(r));
+        String category = entry(table, r.getInt());
+        String kind = entry(table, r.getInt());
+        it.setCategory(category == null ? null : ItemCategory.valueOf(category));
+        it.setMediaKind(kind == null ? null : MediaKind.valueOf(kind));
+        it.setRating(r.getInt());
+        it.setCreatedAt(getInstant(r));
+        it.setPathOrUrl(entry(table, r.getInt()));
+        if (store == null || r.get() == DESC_INLINE) {
+            it.setDescription(getString(r));
+        } else {
+            long offset = r.getLong();
+            int length = r.getInt();
+            it.setDescriptionRef(ver >= 5
+                    ? store.ref(offset, length, r.getInt(), LibraryCodec.of(r.get()))
+                    : store.ref(offset, length, length, LibraryCodec.NONE));
+        }
+        int tagCount = r.getInt();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) tags.add(table[r.getInt()]);
+        it.setTags(tags);
+        if (r.hasRemaining() && r.get() != 0) {
+            it.setMedia(new MediaInfo(r.getLong(), entry(table, r.getInt()), getString(r),
+                    entry(table, r.getInt()), entry(table, r.getInt()), entry(table, r.getInt()), r.getInt()));
+        }
+        // as saved: nothing has changed yet
+        it.forgetChanges(Long.MAX_VALUE);
+        return it;
+    }
+
+    private static String entry(String[] table, int idx) {
+        return idx < 0 ? null : table[idx];
+    }
+
+    private static String getString(ByteBuffer r) {
+        int len = r.getInt();
+        if (len < 0) return null;
+        String s = new String(r.array(), r.arrayOffset() + r.position(), len, StandardCharsets.UTF_8);
+        r.position(r.position() + len);
+        return s;
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, int n) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(n);
+        while (b.hasRemaining()) {
+            if (ch.read(b) < 0) throw new EOFException("Library file is truncated.");
+        }
+        return b.flip();
+    }
+
+    private static Instant getInstant(ByteBuffer r) {
+        if (r.get() == 0) return null;
+        return Instant.ofEpochSecond(r.getLong(), r.getInt());
+    }
+
+    // growable write buffer, drained to the channel as one compressed block at a time
+    private static final class Out {
+        private final FileChannel ch;
+        private final LibraryCodec codec;
+        private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Out(FileChannel ch, LibraryCodec codec) {
+            this.ch = ch;
+            this.codec = codec;
+        }
+
+        private void ensure(int n) {
+            if (buf.remaining() >= n) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+
+        void putByte(int b) {
+            ensure(1);
+            buf.put((byte) b);
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putLong(long v) {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void putString(String s) {
+            putBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // length-prefixed, -1 for null
+        void putBytes(byte[] b) {
+            if (b == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(b.length);
+            ensure(b.length);
+            buf.put(b);
+        }
+
+        void putInstant(Instant t) {
+            if (t == null) {
+                putByte(0);
+                return;
+            }
+            putByte(1);
+            putLong(t.getEpochSecond());
+            putInt(t.getNano());
+        }
+
+        // reserve the length slot; returns where it is
+        int beginRecord() {
+            int at = buf.position();
+            putInt(0);
+            return at;
+        }
+
+        // fill in the length, and drain the buffer once it is full enough
+        void endRecord(int at) throws IOException {
+            buf.putInt(at, buf.position() - at - 4);
+            if (buf.position() >= BUFFER_SIZE) flush();
+        }
+
+        void flush() throws IOException {
+            int raw = buf.position();
+            if (raw == 0) return;
+            byte[] packed = codec.compress(buf.array(), 0, raw);
+            ByteBuffer body = packed != null ? ByteBuffer.wrap(packed) : buf.flip();
+            ByteBuffer frame = ByteBuffer.allocate(9)
+                    .put(packed != null ? codec.id : LibraryCodec.NONE.id)
+                    .putInt(raw)
+                    .putInt(body.remaining())
+                    .flip();
+            while (frame.hasRemaining()) ch.write(frame);
+            while (body.hasRemaining()) ch.write(body);
+            buf.clear();
+        }
+    }
+
+    // read buffer that hands out whole records as slices; blocked files are
+    // decompressed into it one block at a time
+    private static final class In {
+        private final FileChannel ch;
+        private final boolean blocked;
+        private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        In(FileChannel ch, boolean blocked) {
+            this.ch = ch;
+            this.blocked = blocked;
+        }
+
+        // make at least n bytes available, reading (and growing) as needed
+        private void fill(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            if (blocked) {
+                while (buf.remaining() < n) nextBlock();
+                return;
+            }
+            room(n);
+            while (buf.position() < n) {
+                if (ch.read(buf) < 0) throw new EOFException("Library file is truncated.");
+            }
+            buf.flip();
+        }
+
+        private void nextBlock() throws IOException {
+            ByteBuffer frame = readFully(ch, 9);
+            LibraryCodec codec = LibraryCodec.of(frame.get());
+            int raw = frame.getInt();
+            int stored = frame.getInt();
+            if (raw < 0 || stored < 0) throw new IOException("Library file is corrupt.");
+            ByteBuffer packed = readFully(ch, stored);
+            room(buf.remaining() + raw);
+            codec.decompress(packed.array(), 0, stored, buf.array(), buf.position(), raw);
+            buf.position(buf.position() + raw);
+            buf.flip();
+        }
+
+        // move the unread bytes to the front with room for n in all; leaves buf open for writing
+        private void room(int n) {
+            if (buf.capacity() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(n, buf.capacity() * 2));
+                bigger.put(buf);
+                buf = bigger;
+            } else {
+                buf.compact();
+            }
+        }
+
+        ByteBuffer header(int n) throws IOException {
+            fill(n);
+            ByteBuffer b = buf.slice(buf.position(), n);
+            buf.position(buf.position() + n);
+            return b;
+        }
+
+        // file offset of the next unread byte (in a blocked file, only valid between blocks)
+        long offset() throws IOException {
+            if (blocked && buf.hasRemaining()) throw new IOException("Library file is corrupt.");
+            return ch.position() - buf.remaining();
+        }
+
+        int count() throws IOException {
+            int n = header(4).getInt();
+            if (n < 0) throw new IOException("Library file is corrupt.");
+            return n;
+        }
+
+        ByteBuffer record() throws IOException {
+            int len = count();
+            return header(len);
+        }
+    }
+}
@@ -3,14 +3,35 @@ package org.example;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 public class LibraryRepository implements Serializable {
 
     @Serial
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 5L;
 
-    // main storage for all items
-    private final List<Item> items = new ArrayList<>();
+    /**
+     * Hears about every change to the set of items or to an item's fields,
+     * on the thread making it and with the write lock held, so keep it short.
+     */
+    public interface ChangeListener {
+        // a new item, at the end of the library order
+        void added(Item it);
+
+        // the item with this id now has these field values; it keeps its place
+        // (it may be a new instance for the id, or the same one edited in place)
+        void updated(Item it);
+
+        void removed(ItemId id);
+
+        // everything is gone (a library is being loaded)
+        void cleared();
+    }
+
+    // main storage for all items, keyed by id (keeps insertion order)
+    private final LinkedHashMap<ItemId, Item> items = new LinkedHashMap<>();
 
     // stack for recently viewed items
     private final Deque<ItemId> recentStack = new ArrayDeque<>();
@@ -21,26 +42,129 @@ public class LibraryRepository implements Serializable {
     // priority queue sorts tasks by due date
     private final PriorityQueue<TodoTask> taskQueue = new PriorityQueue<>();
 
-    // search index: word -> item ids
-    private final Map<String, Set<ItemId>> keywordIndex = new HashMap<>();
+    // search index: word -> item ordinals (saved separately as an IndexSegment)
+    private final transient KeywordIndex keywordIndex = new KeywordIndex();
+
+    // secondary indexes for tag:/category:/kind:/rating/created: clauses (rebuilt on load)
+    private final transient FieldIndex fieldIndex = new FieldIndex();
 
     // counts how often each tag appears
-    private final Map<String, Integer> tagFrequency = new HashMap<>();
+    private final transient Map<String, Integer> tagFrequency = new HashMap<>();
+
+    // words inside the files items point at, by path (saved next to each snapshot)
+    private final transient ContentStore content = new ContentStore();
+
+    // ids added or removed, with the Item clock at the time (for differential saves)
+    private final transient Map<ItemId, Long> membershipChanges = new HashMap<>();
+    // ids edited in place, likewise; together they are everything a differential save has to look at
+    private final transient Map<ItemId, Long> edits = new HashMap<>();
+
+    // searches read from background threads; edits on the FX thread take the write side
+    private final transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final transient List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(ChangeListener l) {
+        listeners.add(l);
+    }
+
+    public <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // read-only view in insertion order
+    public Collection<Item> all() {
+        return Collections.unmodifiableCollection(items.values());
+    }
 
-    public List<Item> all() {
-        return items;
+    public int size() {
+        return items.size();
     }
 
     public Optional<Item> find(ItemId id) {
-        return items.stream().filter(i -> i.getId().equals(id)).findFirst();
+        return Optional.ofNullable(items.get(id));
     }
 
+    // a new item, or a new version of one already here (which keeps its place)
     public void add(Item it) {
-        items.add(it);
+        Item old = items.put(it.getId(), it);
+        membershipChanges.put(it.getId(), Item.tick());
+        for (ChangeListener l : listeners) {
+            if (old == null) {
+                l.added(it);
+            } else {
+                l.updated(it);
+            }
+        }
     }
 
     public void remove(ItemId id) {
-        items.removeIf(i -> i.getId().equals(id));
+        if (items.remove(id) != null) {
+            for (ChangeListener l : listeners) l.removed(id);
+        }
+        membershipChanges.put(id, Item.tick());
+    }
+
+    public void clearItems() {
+        items.clear();
+        membershipChanges.clear();
+        edits.clear();
+        for (ChangeListener l : listeners) l.cleared();
+    }
+
+    // an item was edited in place (IndexService.update reports every edit)
+    void fireUpdated(Item it) {
+        if (items.get(it.getId()) != it) return;
+        edits.put(it.getId(), Item.tick());
+        for (ChangeListener l : listeners) l.updated(it);
+    }
+
+    // ids added, replaced or removed after the given Item clock value
+    public List<ItemId> membershipChangedSince(long clock) {
+        List<ItemId> out = new ArrayList<>();
+        membershipChanges.forEach((id, at) -> {
+            if (at > clock) out.add(id);
+        });
+        return out;
+    }
+
+    // ids edited in place after the given Item clock value
+    public List<ItemId> editedSince(long clock) {
+        List<ItemId> out = new ArrayList<>();
+        edits.forEach((id, at) -> {
+            if (at > clock) out.add(id);
+        });
+        return out;
+    }
+
+    // drop change records (membership and edits) a save has already covered,
+    // along with the changed-field marks of the items they name
+    public void forgetMembershipChanges(long upTo) {
+        forget(membershipChanges, upTo);
+        forget(edits, upTo);
+    }
+
+    private void forget(Map<ItemId, Long> changes, long upTo) {
+        changes.entrySet().removeIf(e -> {
+            if (e.getValue() > upTo) return false;
+            Item it = items.get(e.getKey());
+            if (it != null) it.forgetChanges(upTo);
+            return true;
+        });
     }
 
     public Deque<ItemId> recentlyViewed() {
@@ -59,25 +183,40 @@ public class LibraryRepository implements Serializable {
         return new ArrayList<>(taskQueue);
     }
 
-    public Map<String, Set<ItemId>> keywordIndex() {
+    public KeywordIndex keywordIndex() {
         return keywordIndex;
     }
 
+    public FieldIndex fieldIndex() {
+        return fieldIndex;
+    }
+
     public Map<String, Integer> tagFrequency() {
         return tagFrequency;
     }
 
-    // restore item from memento snapshot
-    public void apply(Memento m) {
+    public ContentStore content() {
+        return content;
+    }
+
+    // restore item from memento snapshot, keeping the index in step
+    public void apply(Memento m, IndexService index) {
         Item snap = m.snapshot();
 
         if (m.deleted()) {
-            // bring back deleted item
-            remove(snap.getId());
-            items.add(snap);
+            // bring back deleted item (goes to the end, like before)
+            Item existing = items.get(snap.getId());
+            if (existing != null) {
+                index.unindex(this, existing);
+                remove(snap.getId());
+            }
+            add(snap);
+            index.index(this, snap);
         } else {
             // restore old field values
             find(snap.getId()).ifPresent(current -> {
+                index.update(this, current, snap);
+
                 current.setTitle(snap.getTitle());
                 current.setCategory(snap.getCategory());
                 current.setTags(new ArrayList<>(snap.getTags()));
@@ -86,6 +225,8 @@ public class LibraryRepository implements Serializable {
                 current.setDescription(snap.getDescription());
                 current.setCreatedAt(snap.getCreatedAt());
                 current.setMediaKind(snap.getMediaKind());
+                current.setMedia(snap.getMedia());
+                fireUpdated(current);
             });
         }
     }
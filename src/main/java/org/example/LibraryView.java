@@ -0,0 +1,158 @@
+// src/main/java/org/example/LibraryView.java
+package org.example;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The library list's rows, kept in step with LibraryRepository by its
+ * change events instead of being rebuilt from repo.all() after every edit.
+ *
+ * Events arrive on whichever thread changes the repository; they are queued
+ * and applied on the FX thread in one go (one runLater per burst, however
+ * many changes it holds). Runs of additions become one addAll, an edited
+ * item becomes a set() of its own row, which the ListView answers by
+ * redrawing just that cell if it is on screen, and a burst of removals is
+ * one change. Each list keeps a row index per id, so an edit costs the same
+ * in a list of ten items as in one of 500k.
+ *
+ * Besides the whole library the view can show a list of search results,
+ * which follows edits and removals of the items in it (but doesn't gain
+ * new items).
+ */
+public final class LibraryView implements LibraryRepository.ChangeListener {
+
+    private sealed interface Change {}
+    private record Added(Item it) implements Change {}
+    private record Updated(Item it) implements Change {}
+    private record Removed(ItemId id) implements Change {}
+    private record Cleared() implements Change {}
+
+    private final Rows all = new Rows();
+    private Rows results;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // ====== events (any thread, write lock held) ======
+
+    @Override
+    public void added(Item it) {
+        post(new Added(it));
+    }
+
+    @Override
+    public void updated(Item it) {
+        post(new Updated(it));
+    }
+
+    @Override
+    public void removed(ItemId id) {
+        post(new Removed(id));
+    }
+
+    @Override
+    public void cleared() {
+        post(new Cleared());
+    }
+
+    private void post(Change c) {
+        pending.add(c);
+        if (scheduled.compareAndSet(false, true)) Platform.runLater(this::flush);
+    }
+
+    // ====== FX thread ======
+
+    // every item, in library order
+    public ObservableList<Item> showAll() {
+        flush();
+        results = null;
+        return all.list;
+    }
+
+    // just these items, in this order
+    public ObservableList<Item> showResults(List<Item> hits) {
+        flush();
+        results = new Rows();
+        results.addAll(hits);
+        return results.list;
+    }
+
+    // apply whatever has been queued (before selecting an item just added, say)
+    public void flush() {
+        scheduled.set(false);
+        List<Item> adds = new ArrayList<>();
+        Set<ItemId> removes = new HashSet<>();
+        Change c;
+        while ((c = pending.poll()) != null) {
+            if (!(c instanceof Added) && !adds.isEmpty()) {
+                all.addAll(adds);
+                adds.clear();
+            }
+            if (!(c instanceof Removed) && !removes.isEmpty()) {
+                removeAll(removes);
+                removes.clear();
+            }
+            switch (c) {
+                case Added a -> adds.add(a.it());
+                case Removed r -> removes.add(r.id());
+                case Updated u -> {
+                    all.set(u.it());
+                    if (results != null) results.set(u.it());
+                }
+                case Cleared ignored -> {
+                    all.clear();
+                    if (results != null) results.clear();
+                }
+            }
+        }
+        if (!adds.isEmpty()) all.addAll(adds);
+        if (!removes.isEmpty()) removeAll(removes);
+    }
+
+    private void removeAll(Set<ItemId> ids) {
+        all.removeAll(ids);
+        if (results != null) results.removeAll(ids);
+    }
+
+    // an observable list plus the row of each id in it
+    private static final class Rows {
+        final ObservableList<Item> list = FXCollections.observableArrayList();
+        final Map<ItemId, Integer> rows = new HashMap<>();
+
+        void addAll(List<Item> items) {
+            int row = list.size();
+            for (Item it : items) rows.put(it.getId(), row++);
+            list.addAll(items);
+        }
+
+        void set(Item it) {
+            Integer row = rows.get(it.getId());
+            if (row != null) list.set(row, it);
+        }
+
+        // one change event; rows after the first one removed are renumbered
+        void removeAll(Set<ItemId> ids) {
+            int first = Integer.MAX_VALUE;
+            Set<Item> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (ItemId id : ids) {
+                Integer row = rows.remove(id);
+                if (row == null) continue;
+                first = Math.min(first, row);
+                gone.add(list.get(row));
+            }
+            if (gone.isEmpty()) return;
+            list.removeAll(gone);
+            for (int row = first; row < list.size(); row++) rows.put(list.get(row).getId(), row);
+        }
+
+        void clear() {
+            list.clear();
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+// src/main/java/org/example/LzCodec.java
+package org.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Small LZ77 codec for library blocks, in the spirit of LZ4: no entropy
+ * coding, one hash probe per position, so it compresses at a few hundred
+ * MB/s and decodes faster still. Repeated paths, tags and ids within a
+ * block are what it catches.
+ *
+ * A block is a run of sequences:
+ *   token    byte, literal count in the high nibble, match length - 4 in the low
+ *   [more literal count bytes, 255 = keep adding]
+ *   literals
+ *   offset   2 bytes little-endian, back from the current output position
+ *   [more match length bytes, 255 = keep adding]
+ * The last sequence stops after its literals.
+ */
+final class LzCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 14;
+
+    private LzCodec() {}
+
+    // compressed copy of src[off, off + len), or null if it would not be smaller
+    static byte[] compress(byte[] src, int off, int len) {
+        byte[] dst = new byte[len + len / 255 + 16];
+        int[] table = new int[1 << HASH_BITS]; // position + 1, 0 = empty
+        int end = off + len;
+        int anchor = off;
+        int p = off;
+        int o = 0;
+
+        while (p + MIN_MATCH <= end) {
+            int seq = intAt(src, p);
+            int h = (seq * 0x9E3779B1) >>> (32 - HASH_BITS);
+            int cand = table[h] - 1;
+            table[h] = p + 1;
+            if (cand < 0 || p - cand > MAX_OFFSET || intAt(src, cand) != seq) {
+                // step further the longer nothing has matched, so incompressible data goes fast
+                p += 1 + ((p - anchor) >>> 6);
+                continue;
+            }
+            int m = p + MIN_MATCH;
+            int c = cand + MIN_MATCH;
+            while (m < end && src[m] == src[c]) {
+                m++;
+                c++;
+            }
+            o = sequence(src, anchor, p - anchor, p - cand, m - p, dst, o);
+            anchor = p = m;
+        }
+        o = sequence(src, anchor, end - anchor, 0, 0, dst, o);
+        return o < len ? Arrays.copyOf(dst, o) : null;
+    }
+
+    // literals, then a match unless this is the last sequence (length 0)
+    private static int sequence(byte[] src, int lit, int litLen, int offset, int matchLen, byte[] dst, int o) {
+        int ml = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        dst[o++] = (byte) ((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+        if (litLen >= 15) o = length(litLen - 15, dst, o);
+        System.arraycopy(src, lit, dst, o, litLen);
+        o += litLen;
+        if (matchLen == 0) return o;
+        dst[o++] = (byte) offset;
+        dst[o++] = (byte) (offset >>> 8);
+        if (ml >= 15) o = length(ml - 15, dst, o);
+        return o;
+    }
+
+    private static int length(int n, byte[] dst, int o) {
+        while (n >= 255) {
+            dst[o++] = (byte) 255;
+            n -= 255;
+        }
+        dst[o++] = (byte) n;
+        return o;
+    }
+
+    // decode src[off, off + len) into exactly dstLen bytes at dst[dstOff]
+    static void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+        int ip = off;
+        int end = off + len;
+        int op = dstOff;
+        int opEnd = dstOff + dstLen;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int lit = token >>> 4;
+                if (lit == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        lit += b;
+                    } while (b == 255);
+                }
+                if (ip + lit > end || op + lit > opEnd) throw new IOException("Library file is corrupt.");
+                System.arraycopy(src, ip, dst, op, lit);
+                ip += lit;
+                op += lit;
+                if (ip == end) break;
+
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int ml = token & 15;
+                if (ml == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        ml += b;
+                    } while (b == 255);
+                }
+                ml += MIN_MATCH;
+                int from = op - offset;
+                if (offset == 0 || from < dstOff || op + ml > opEnd) throw new IOException("Library file is corrupt.");
+                if (offset >= ml) {
+                    System.arraycopy(dst, from, dst, op, ml);
+                    op += ml;
+                } else {
+                    // overlapping match repeats the last `offset` bytes
+                    for (int i = 0; i < ml; i++) dst[op++] = dst[from + i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Library file is corrupt.", ex);
+        }
+        if (op != opEnd) throw new IOException("Library file is corrupt.");
+    }
+
+    private static int intAt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
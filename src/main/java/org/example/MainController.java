@@ -1,9 +1,15 @@
 // src/main/java/org/example/MainController.java
 package org.example;
 
+import javafx.animation.Animation;
 import javafx.animation.FadeTransition;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
@@ -12,11 +18,14 @@ import javafx.stage.FileChooser;
 import javafx.util.Duration;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * MainController
@@ -24,7 +33,7 @@ import java.util.stream.Collectors;
  * Handles:
  * - Library list + CRUD (New, Import, Undo)
  * - Edit mode / Save Changes for selected item
- * - Search
+ * - Search (button + search-as-you-type with suggestions, run off the FX thread)
  * - Recently viewed stack
  * - Task queue (PriorityQueue)
  * - Media preview/play/pause
@@ -46,6 +55,7 @@ public class MainController {
     @FXML private TextField pathField;
     @FXML private TextArea descField;
     @FXML private MediaView mediaView;
+    @FXML private Label mediaInfoLabel;
 
     // ====== FXML: Lists / status / tasks / controls ======
     @FXML private TextField searchField;
@@ -60,17 +70,77 @@ public class MainController {
     @FXML private Button browseButton;
     @FXML private Button playButton;
     @FXML private Button pauseButton;
+    @FXML private Button cancelImportButton;
+    @FXML private CheckMenuItem skipSameContentItem;
+    // compression for Save Library (File > Save Compression)
+    @FXML private RadioMenuItem compressFastestItem;
+    @FXML private RadioMenuItem compressNoneItem;
 
     // ====== Services / state ======
     private final LibraryRepository repo = new LibraryRepository();
+    // the library list's rows, updated from the repository's change events
+    private final LibraryView libraryView = new LibraryView();
     private final IndexService index = new IndexService();
     private final SearchService searcher = new SearchService();
     private final PersistenceService persist = new PersistenceService();
+    private final NdjsonService ndjson = new NdjsonService();
+    private final ImportService importer = new ImportService();
     private final MediaService media = new MediaService();
+    private final SearchExecutor searchRunner = new SearchExecutor(repo, Platform::runLater);
+
+    // every change is appended here; the backup file is the snapshot it replays onto
+    private final File backupFile = Path.of(System.getProperty("user.home"), "smart-collections-backup.scol").toFile();
+    private Journal journal;
+    private BackupScheduler backups;
+    private FolderWatcher watcher;
+    // reads the text inside imported notes and PDFs into the index
+    private ContentIndexer contentIndexer;
+    // reads duration, codec and tags from audio and video file headers
+    private MediaScanner mediaScanner;
+    // content hashes of library files, kept next to the backup
+    private HashCache hashes;
+    // the folder import running now, if any (FX thread only)
+    private ImportService.Progress importing;
+    // a Save Library is being written (FX thread only)
+    private boolean saving;
+
+    // set on the FX thread once the startup load, index and journal replay are done
+    private boolean ready = false;
+    // milliseconds since JVM start, -1 until known
+    private long firstPaintMs = -1;
+    private long searchableMs = -1;
+
+    // snapshot at most this often, or sooner after this many changes; keep this many old ones
+    private static final java.time.Duration BACKUP_INTERVAL = java.time.Duration.ofMinutes(5);
+    private static final int BACKUP_AFTER_CHANGES = 500;
+    private static final int BACKUP_GENERATIONS = 5;
+    // how often a running import's counts are shown
+    private static final int IMPORT_PROGRESS_MS = 250;
+    // duplicate groups listed in the merge confirmation
+    private static final int MERGE_PREVIEW_GROUPS = 50;
 
     private Item editingOriginal = null;
     private boolean editMode = false;
 
+    // search-as-you-type: wait for a short pause in typing before querying
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+    private static final int MAX_SUGGESTIONS = 8;
+    // only the best results go into the list; the status shows the full count
+    private static final int RESULT_LIMIT = 1_000;
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(SEARCH_DEBOUNCE_MS));
+
+    // arrowing through the list: a player is only built once the selection rests this long
+    private static final int PREVIEW_SETTLE_MS = 200;
+    // items on each side of the selection whose players are built ahead
+    private static final int PRELOAD_NEIGHBOURS = 1;
+    private final PauseTransition previewSettle = new PauseTransition(Duration.millis(PREVIEW_SETTLE_MS));
+    private String previewPath;
+    private final ContextMenu suggestionMenu = new ContextMenu();
+
+    // what a background search hands back to the FX thread in one go
+    private record SearchOutcome(String query, List<Item> hits, int totalHits,
+                                 List<String> suggestions, long micros) {}
+
     /**
      * So App.stop() can get repo to save backup.
      */
@@ -78,29 +148,39 @@ public class MainController {
         return repo;
     }
 
+    /**
+     * Called from App.stop(). Nothing is written here: unsaved changes are
+     * already in the journal and get replayed on the next start.
+     */
+    public void shutdown() throws IOException {
+        searchRunner.shutdown();
+        media.shutdown();
+        if (contentIndexer != null) contentIndexer.close();
+        if (mediaScanner != null) mediaScanner.close();
+        // the watcher's last flush still goes to the journal
+        if (watcher != null) watcher.close();
+        if (backups != null) backups.shutdown();
+        if (journal != null) journal.close();
+    }
+
+    /**
+     * Called from App once the first frame is on screen.
+     */
+    public void markFirstPaint() {
+        firstPaintMs = sinceLaunchMs();
+        reportStartup();
+    }
+
     // ====== Init ======
     @FXML
     public void initialize() {
-        // Try to load backup automatically so Collection isn't empty every run
-        try {
-            File backupFile = Path.of(
-                    System.getProperty("user.home"),
-                    "smart-collections-backup.scol"
-            ).toFile();
-            if (backupFile.exists()) {
-                persist.loadFrom(backupFile, repo);
-            }
-        } catch (Exception e) {
-            System.err.println("Startup load failed: " + e.getMessage());
-            setStatus("Could not load previous library.");
-        }
-
         categoryBox.getItems().setAll(ItemCategory.values());
 
         ratingSlider.valueProperty().addListener((obs, ov, nv) ->
                 ratingValueLabel.setText(String.format("★ %.1f", nv.doubleValue()))
         );
 
+        repo.addListener(libraryView);
         libraryList.setCellFactory(lv -> new ListCell<>() {
             @Override
             protected void updateItem(Item it, boolean empty) {
@@ -119,11 +199,126 @@ public class MainController {
                 }
         );
 
+        searchDebounce.setOnFinished(ev -> runIncrementalSearch());
+        previewSettle.setOnFinished(ev -> showPreviewAndPreload());
+        searchField.textProperty().addListener((obs, ov, nv) -> searchDebounce.playFromStart());
+        searchField.setOnAction(this::onSearchClick);
+
         setEditMode(false);
 
-        index.reindex(repo);
-        refreshAllListsAnimated();
-        setStatus("Ready");
+        searchField.setDisable(true);
+        searchField.setPromptText("Loading library...");
+        setStatus("Loading library...");
+        Thread.ofPlatform().daemon().name("library-load").start(this::loadAtStartup);
+    }
+
+    /**
+     * Background thread: load the backup so Collection isn't empty every run,
+     * then index it and replay whatever was journaled after it was written.
+     * Items show up in the list batch by batch while the file is read; edits
+     * and search wait until everything is in place.
+     */
+    private void loadAtStartup() {
+        long stamp = 0;
+        String failure = null;
+        try {
+            if (backupFile.exists()) {
+                stamp = persist.loadFrom(backupFile, repo,
+                        batch -> Platform.runLater(() -> {
+                            libraryList.getItems().addAll(batch);
+                            if (!ready) setStatus("Loading library... " + libraryList.getItems().size() + " items");
+                        }));
+            }
+        } catch (Exception e) {
+            System.err.println("Startup load failed: " + e.getMessage());
+            failure = "Could not load the previous library (" + setAsideUnreadableBackup()
+                    + "). This session is not backed up; use Save Library to keep changes.";
+        }
+
+        // postings come back from the saved segment; rebuild only if it was missing or stale
+        repo.write(() -> index.ensureIndexed(repo));
+        Journal j = null;
+        BackupScheduler b = null;
+        // the journal holds changes to the backup that failed to load: opening it
+        // would start it over, and the first snapshot would replace the backup
+        if (failure == null) {
+            try {
+                persist.loadChanges(backupFile, stamp, repo, index);
+            } catch (IOException e) {
+                System.err.println("Saved changes not applied: " + e.getMessage());
+            }
+            try {
+                j = Journal.open(backupFile, stamp, persist, repo, index);
+                b = new BackupScheduler(backupFile, j, repo,
+                        BACKUP_INTERVAL, BACKUP_AFTER_CHANGES, BACKUP_GENERATIONS);
+            } catch (IOException e) {
+                System.err.println("Journal unavailable: " + e.getMessage());
+            }
+        }
+
+        HashCache h = HashCache.load(backupFile);
+
+        Journal opened = j;
+        BackupScheduler scheduled = b;
+        String status = failure;
+        Platform.runLater(() -> {
+            journal = opened;
+            backups = scheduled;
+            hashes = h;
+            contentIndexer = ContentIndexer.start(repo, index);
+            // files changed while the app was closed; unchanged ones aren't opened
+            contentIndexer.submitAll();
+            startMediaScanner();
+            startWatcher();
+            ready = true;
+            searchField.setPromptText(null);
+            searchField.setDisable(false);
+            // the rows streamed in while loading give way to the live view
+            showWholeLibrary();
+            refreshSideLists();
+            searchableMs = sinceLaunchMs();
+            setStatus(status != null ? status : "Ready");
+            reportStartup();
+        });
+    }
+
+    /**
+     * Rename the backup that failed to load, with its journal, delta and
+     * index files, so nothing this session does can overwrite them and the
+     * next start begins afresh. Returns where the backup went, for the status.
+     */
+    private String setAsideUnreadableBackup() {
+        String suffix = ".unreadable-" + System.currentTimeMillis();
+        List<Path> files = List.of(backupFile.toPath(), Journal.pathFor(backupFile),
+                PersistenceService.deltaPathFor(backupFile), PersistenceService.segmentPathFor(backupFile),
+                ContentStore.pathFor(backupFile));
+        try {
+            for (Path p : files) {
+                if (Files.exists(p)) Files.move(p, Path.of(p + suffix));
+            }
+            return "kept as " + backupFile.getName() + suffix;
+        } catch (IOException e) {
+            System.err.println("Could not set the backup aside: " + e.getMessage());
+            return "left in place as " + backupFile.getName();
+        }
+    }
+
+    // both startup timings are in once the UI has painted and the index is ready
+    private void reportStartup() {
+        if (firstPaintMs < 0 || searchableMs < 0) return;
+        String line = String.format("Startup: first paint %d ms, searchable %d ms (%d items)",
+                firstPaintMs, searchableMs, repo.size());
+        if (statusLabel.getText() == null || statusLabel.getText().equals("Ready")) setStatus(line);
+    }
+
+    private static long sinceLaunchMs() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    // edits wait for the startup load, which replaces the repository contents
+    private boolean notReady() {
+        if (!ready) setStatus("Still loading the library...");
+        return !ready;
     }
 
     // ====== Mode helpers ======
@@ -148,7 +343,12 @@ public class MainController {
 
     // ====== Recently viewed stack ======
     private void pushRecent(Item it) {
-        repo.recentlyViewed().push(it.getId());
+        if (!ready) return;
+        repo.write(() -> {
+            repo.recentlyViewed().push(it.getId());
+            // no fsync and not counted towards a snapshot: it goes out with the next real change
+            if (journal != null) journal.recentPushed(it.getId());
+        });
         refreshRecentList();
     }
 
@@ -163,6 +363,7 @@ public class MainController {
         c.setDescription(src.getDescription());
         c.setCreatedAt(src.getCreatedAt());
         c.setMediaKind(src.getMediaKind());
+        c.setMedia(src.getMedia());
         return c;
     }
 
@@ -175,6 +376,7 @@ public class MainController {
         ratingValueLabel.setText("★ " + it.getRating() + ".0");
         pathField.setText(it.getPathOrUrl());
         descField.setText(it.getDescription());
+        mediaInfoLabel.setText(it.getMedia() != null ? it.getMedia().summary() : null);
 
         if (it.getMediaKind() == MediaKind.AUDIO || it.getMediaKind() == MediaKind.VIDEO) {
             bindMediaPreview(it.getPathOrUrl());
@@ -193,6 +395,7 @@ public class MainController {
     // ====== Edit button ======
     @FXML
     private void onEdit(ActionEvent e) {
+        if (notReady()) return;
         Item sel = libraryList.getSelectionModel().getSelectedItem();
         if (sel == null) {
             setStatus("Nothing selected to edit.");
@@ -207,27 +410,40 @@ public class MainController {
     // ====== Save Changes button ======
     @FXML
     private void onSaveChanges(ActionEvent e) {
+        if (notReady()) return;
         Item sel = libraryList.getSelectionModel().getSelectedItem();
         if (!editMode || sel == null || editingOriginal == null) {
             setStatus("No pending edits.");
             return;
         }
 
-        // push undo snapshot BEFORE applying changes
-        repo.undoStack().push(new Memento(editingOriginal, false));
-
         // commit UI -> model
         String newTitle = titleField.getText().trim();
-        sel.setTitle(newTitle.isEmpty() ? "Untitled" : newTitle);
-
-        sel.setCategory(categoryBox.getValue());
-        sel.setTags(parseTags(tagsField.getText()));
-        sel.setRating((int)Math.round(ratingSlider.getValue()));
-        sel.setPathOrUrl(pathField.getText().trim());
-        sel.setDescription(descField.getText().trim());
-
-        index.reindex(repo);
-        refreshAllListsAnimated();
+        Memento undo = new Memento(editingOriginal, false);
+        repo.write(() -> {
+            // push undo snapshot BEFORE applying changes
+            repo.undoStack().push(undo);
+
+            sel.setTitle(newTitle.isEmpty() ? "Untitled" : newTitle);
+
+            sel.setCategory(categoryBox.getValue());
+            sel.setTags(parseTags(tagsField.getText()));
+            sel.setRating((int)Math.round(ratingSlider.getValue()));
+            sel.setPathOrUrl(pathField.getText().trim());
+            sel.setDescription(descField.getText().trim());
+            // what was read from the old file says nothing about the new one
+            if (!Objects.equals(sel.getPathOrUrl(), editingOriginal.getPathOrUrl())) sel.setMedia(null);
+
+            index.update(repo, editingOriginal, sel);
+            log(j -> {
+                j.undoPushed(undo);
+                j.itemPut(sel);
+            });
+        });
+        refreshSideLists();
+        // the path may point somewhere new
+        contentIndexer.submit(List.of(sel));
+        mediaScanner.submit(List.of(sel));
 
         setEditMode(false);
         editingOriginal = null;
@@ -247,20 +463,46 @@ public class MainController {
     }
 
     // ====== Media preview ======
+    // a player already in the pool goes up at once; otherwise wait for the selection to settle
     private void bindMediaPreview(String pathOrUrl) {
-        try {
-            media.prepare(pathOrUrl);
-            media.apply(mediaView);
-        } catch (Exception ex) {
-            clearMediaPreview();
-            setStatus("Media error: " + ex.getMessage());
+        previewPath = pathOrUrl;
+        if (media.isReady(pathOrUrl)) {
+            previewSettle.stop();
+            showPreviewAndPreload();
+        } else {
+            media.clear(mediaView);
+            previewSettle.playFromStart();
         }
     }
 
+    private void showPreviewAndPreload() {
+        if (previewPath == null) return;
+        media.show(previewPath, mediaView, ex -> setStatus("Media error: " + ex.getMessage()));
+        media.preload(neighbourMediaPaths());
+    }
+
+    // audio and video files next to the selection, nearest first
+    private List<String> neighbourMediaPaths() {
+        List<Item> rows = libraryList.getItems();
+        int at = libraryList.getSelectionModel().getSelectedIndex();
+        List<String> out = new ArrayList<>();
+        if (at < 0) return out;
+        for (int d = 1; d <= PRELOAD_NEIGHBOURS; d++) {
+            for (int i : new int[]{at + d, at - d}) {
+                if (i < 0 || i >= rows.size()) continue;
+                Item it = rows.get(i);
+                if (it.getMediaKind() == MediaKind.AUDIO || it.getMediaKind() == MediaKind.VIDEO) {
+                    out.add(it.getPathOrUrl());
+                }
+            }
+        }
+        return out;
+    }
+
     private void clearMediaPreview() {
-        MediaPlayer mp = mediaView.getMediaPlayer();
-        if (mp != null) mp.stop();
-        mediaView.setMediaPlayer(null);
+        previewSettle.stop();
+        previewPath = null;
+        media.clear(mediaView);
     }
 
     @FXML
@@ -278,12 +520,16 @@ public class MainController {
     // ====== Task queue ======
     @FXML
     private void onAddTask(ActionEvent e) {
+        if (notReady()) return;
         Item sel = libraryList.getSelectionModel().getSelectedItem();
         String baseTitle = sel != null ? sel.getTitle() : "Study task";
         LocalDate due = taskDueDatePicker.getValue();
 
         TodoTask task = new TodoTask(baseTitle, Instant.now(), due);
-        repo.taskQueue().offer(task);
+        repo.write(() -> {
+            repo.taskQueue().offer(task);
+            log(j -> j.taskAdded(task));
+        });
 
         refreshTaskList();
         setStatus("Task added.");
@@ -291,7 +537,13 @@ public class MainController {
 
     @FXML
     private void onProcessNextTask(ActionEvent e) {
-        TodoTask next = repo.taskQueue().poll();
+        if (notReady()) return;
+        TodoTask[] polled = {null};
+        repo.write(() -> {
+            polled[0] = repo.taskQueue().poll();
+            if (polled[0] != null) log(j -> j.taskRemoved(polled[0]));
+        });
+        TodoTask next = polled[0];
         if (next == null) {
             setStatus("No tasks.");
         } else {
@@ -303,39 +555,125 @@ public class MainController {
     // ====== Search ======
     @FXML
     private void onSearchClick(ActionEvent e) {
+        if (notReady()) return;
+        searchDebounce.stop();
+        suggestionMenu.hide();
+
         String q = searchField.getText();
         if (q == null || q.isBlank()) {
-            refreshLibraryList();
+            searchRunner.cancel();
+            showWholeLibrary();
             setStatus("Search cleared.");
             return;
         }
 
-        List<ItemId> ranked = searcher.rankedSearch(repo, q);
-        List<Item> hits = new ArrayList<>();
-        for (ItemId id : ranked) {
-            repo.find(id).ifPresent(hits::add);
+        submitSearch(q, false);
+    }
+
+    // fired by the debounce timer while the user types
+    private void runIncrementalSearch() {
+        String q = searchField.getText();
+        if (q == null || q.isBlank()) {
+            searchRunner.cancel();
+            suggestionMenu.hide();
+            showWholeLibrary();
+            return;
         }
 
-        libraryList.getItems().setAll(hits);
+        submitSearch(q, true);
+    }
+
+    // search + item lookup happen on a virtual thread; a newer query cancels this one
+    private void submitSearch(String q, boolean asYouType) {
+        setStatus("Searching...");
+        searchRunner.submit(() -> {
+            long start = System.nanoTime();
+            SearchService.Page page = asYouType
+                    ? searcher.searchAsYouType(repo, q, RESULT_LIMIT)
+                    : searcher.topK(repo, q, RESULT_LIMIT, 0);
+
+            List<Item> hits = new ArrayList<>(page.ids().size());
+            for (ItemId id : page.ids()) {
+                repo.find(id).ifPresent(hits::add);
+            }
+            List<String> completions = asYouType ? completionsFor(q) : List.of();
+
+            long micros = (System.nanoTime() - start) / 1_000;
+            return new SearchOutcome(q, hits, page.totalHits(), completions, micros);
+        }, this::showSearchResults, ex -> setStatus("Search failed: " + ex.getMessage()));
+    }
+
+    // runs on the FX thread, once per finished query
+    private void showSearchResults(SearchOutcome r) {
+        libraryList.setItems(libraryView.showResults(r.hits()));
         fadeNode(libraryList);
-        setStatus("Found " + hits.size() + " result(s).");
+
+        String shown = r.totalHits() > r.hits().size() ? " (showing top " + r.hits().size() + ")" : "";
+        setStatus(String.format("Found %d result(s)%s in %.1f ms.",
+                r.totalHits(), shown, r.micros() / 1000.0));
+
+        showSuggestions(r.query(), r.suggestions());
+    }
+
+    // completions for the word currently being typed (background thread)
+    private List<String> completionsFor(String q) {
+        if (Character.isWhitespace(q.charAt(q.length() - 1))) return List.of();
+
+        String word = q.substring(q.lastIndexOf(' ') + 1);
+        String prefix = word.startsWith("+") ? word.substring(1) : word;
+
+        List<String> completions = searcher.suggest(repo, prefix, MAX_SUGGESTIONS);
+        if (completions.size() == 1 && completions.get(0).equalsIgnoreCase(prefix)) {
+            return List.of();
+        }
+        return completions;
+    }
+
+    private void showSuggestions(String q, List<String> completions) {
+        if (completions.isEmpty() || !q.equals(searchField.getText())) {
+            suggestionMenu.hide();
+            return;
+        }
+
+        int cut = q.lastIndexOf(' ') + 1;
+        String head = q.substring(0, cut);
+        boolean must = q.startsWith("+", cut);
+
+        suggestionMenu.getItems().clear();
+        for (String term : completions) {
+            MenuItem mi = new MenuItem(term);
+            mi.setOnAction(ev -> {
+                searchField.setText(head + (must ? "+" : "") + term + " ");
+                searchField.end();
+            });
+            suggestionMenu.getItems().add(mi);
+        }
+        if (!suggestionMenu.isShowing()) {
+            suggestionMenu.show(searchField, Side.BOTTOM, 0, 0);
+        }
     }
 
     @FXML
     private void onClearClick(ActionEvent e) {
+        searchDebounce.stop();
+        searchRunner.cancel();
+        suggestionMenu.hide();
         searchField.clear();
-        refreshLibraryList();
+        showWholeLibrary();
         setStatus("Ready");
     }
 
     // ====== New / Import / Undo ======
     @FXML
     private void onNewItem(ActionEvent e) {
+        if (notReady()) return;
         Item it = Item.newBlank();
-        repo.add(it);
-
-        index.reindex(repo);
-        refreshLibraryList();
+        repo.write(() -> {
+            repo.add(it);
+            index.index(repo, it);
+            log(j -> j.itemPut(it));
+        });
+        showWholeLibrary();
 
         libraryList.getSelectionModel().select(it);
         libraryList.scrollTo(it);
@@ -346,55 +684,291 @@ public class MainController {
 
     @FXML
     private void onImportFolder(ActionEvent e) {
+        importFolder("Choose Folder to Import", false);
+    }
+
+    @FXML
+    private void onWatchFolder(ActionEvent e) {
+        importFolder("Choose Folder to Import and Watch", true);
+    }
+
+    @FXML
+    private void onStopWatching(ActionEvent e) {
+        if (notReady() || watcher == null) return;
+        watcher.unwatchAll();
+        setStatus("No longer watching folders.");
+    }
+
+    private void importFolder(String title, boolean watch) {
+        if (notReady()) return;
+        if (importing != null) {
+            setStatus("An import is already running.");
+            return;
+        }
         DirectoryChooser chooser = new DirectoryChooser();
-        chooser.setTitle("Choose Folder to Import");
+        chooser.setTitle(title);
         File dir = chooser.showDialog(searchField.getScene().getWindow());
         if (dir == null) {
             setStatus("Import cancelled.");
             return;
         }
 
-        int added = importRecursive(dir);
-        index.reindex(repo);
-        refreshAllListsAnimated();
-        setStatus("Imported " + added + " file(s).");
+        // walked and added off the FX thread; each batch shows up in the list as it goes in
+        ImportService.Progress progress = new ImportService.Progress();
+        importing = progress;
+        cancelImportButton.setDisable(false);
+        Timeline ticker = new Timeline(new KeyFrame(Duration.millis(IMPORT_PROGRESS_MS),
+                ev -> setStatus("Importing " + dir.getName() + "... " + progressText(progress))));
+        ticker.setCycleCount(Animation.INDEFINITE);
+        ticker.play();
+        setStatus("Importing " + dir.getName() + "...");
+
+        FolderWatcher w = watch ? watcher : null;
+        HashCache h = skipSameContentItem.isSelected() ? hashes : null;
+        ContentIndexer content = contentIndexer;
+        MediaScanner media = mediaScanner;
+        Thread.ofPlatform().daemon().name("library-import").start(() -> {
+            // whatever happens, the ticker stops and the next import can start
+            String status = "Import failed: kept " + progress.added() + " file(s).";
+            try {
+                ImportService.Summary summary = importer.importFolder(repo, dir, index, h, progress, batch -> {
+                    log(j -> j.itemsPut(batch));
+                    content.submit(batch);
+                    media.submit(batch);
+                });
+                // a cancelled import only partly covers the folder, so it isn't watched
+                if (w != null && !summary.cancelled()) w.watch(dir.toPath());
+                saveHashes(h);
+                int sameContent = summary.sameContent().stream().mapToInt(g -> g.duplicates().size()).sum();
+                status = (summary.cancelled() ? "Import cancelled: kept " : "Imported ")
+                        + summary.added() + " file(s) in " + progress.elapsedMs() / 1000.0 + " s."
+                        + (sameContent > 0 ? " " + sameContent + " skipped as copies of files already there." : "")
+                        + (summary.unreadable() > 0 ? " " + summary.unreadable() + " could not be read." : "")
+                        + (w != null && !summary.cancelled() ? " Watching " + dir.getName() + " for changes." : "");
+            } catch (RuntimeException ex) {
+                status = "Import failed: " + ex.getMessage() + " Kept " + progress.added() + " file(s).";
+                throw ex;
+            } finally {
+                String done = status;
+                Platform.runLater(() -> {
+                    ticker.stop();
+                    importing = null;
+                    cancelImportButton.setDisable(true);
+                    refreshSideLists();
+                    setStatus(done);
+                });
+            }
+        });
+    }
+
+    @FXML
+    private void onCancelImport(ActionEvent e) {
+        if (importing == null) return;
+        importing.cancel();
+        cancelImportButton.setDisable(true);
+        setStatus("Cancelling import...");
+    }
+
+    // e.g. "12,400 scanned, 11,950 added (3,100 files/s)"
+    private static String progressText(ImportService.Progress p) {
+        return String.format("%,d scanned, %,d added (%,.0f files/s)", p.scanned(), p.added(), p.filesPerSecond());
+    }
+
+    private void saveHashes(HashCache h) {
+        if (h == null) return;
+        try {
+            h.save();
+        } catch (IOException ex) {
+            System.err.println("Hash cache not saved: " + ex.getMessage());
+        }
+    }
+
+    // files in the library with identical content are folded into the first of each group
+    @FXML
+    private void onMergeDuplicates(ActionEvent e) {
+        if (notReady()) return;
+        setStatus("Looking for duplicate files...");
+        HashCache h = hashes;
+        Thread.ofPlatform().daemon().name("library-dedup").start(() -> {
+            List<ImportService.DuplicateGroup> groups = importer.findDuplicates(repo, h);
+            saveHashes(h);
+            Platform.runLater(() -> confirmMerge(groups));
+        });
+    }
+
+    // show what a merge would remove and only go ahead once the user agrees
+    private void confirmMerge(List<ImportService.DuplicateGroup> groups) {
+        int duplicates = groups.stream().mapToInt(g -> g.duplicates().size()).sum();
+        if (duplicates == 0) {
+            setStatus("No duplicate files found.");
+            return;
+        }
+        StringBuilder preview = new StringBuilder();
+        for (ImportService.DuplicateGroup g : groups.subList(0, Math.min(groups.size(), MERGE_PREVIEW_GROUPS))) {
+            preview.append("Keep ").append(g.kept()).append('\n');
+            for (String d : g.duplicates()) preview.append("    remove ").append(d).append('\n');
+        }
+        if (groups.size() > MERGE_PREVIEW_GROUPS) {
+            preview.append("... and ").append(groups.size() - MERGE_PREVIEW_GROUPS).append(" more group(s)\n");
+        }
+        TextArea list = new TextArea(preview.toString());
+        list.setEditable(false);
+        list.setWrapText(false);
+
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.initOwner(searchField.getScene().getWindow());
+        confirm.setTitle("Merge Duplicates");
+        confirm.setHeaderText("Merge " + duplicates + " duplicate(s) into " + groups.size() + " item(s)?");
+        confirm.setContentText("Tags are combined and the best rating kept. One Undo takes the merge back.");
+        confirm.getDialogPane().setExpandableContent(list);
+        confirm.getDialogPane().setExpanded(true);
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            setStatus("Merge cancelled.");
+            return;
+        }
+
+        ImportService.MergeResult[] merged = new ImportService.MergeResult[1];
+        repo.write(() -> {
+            ImportService.MergeResult r = importer.mergeDuplicates(repo, index, groups);
+            log(j -> j.batch(() -> {
+                r.undo().forEach(j::undoPushed);
+                j.itemsPut(r.kept());
+                r.removed().forEach(j::itemDeleted);
+            }));
+            merged[0] = r;
+        });
+        refreshSideLists();
+        setStatus(merged[0].removed().isEmpty() ? "The duplicates were gone already."
+                : "Merged " + merged[0].removed().size() + " duplicate(s) into "
+                  + merged[0].kept().size() + " item(s).");
+    }
+
+    // probed files arrive on the media-apply thread with the write lock held, a batch at a time
+    private void startMediaScanner() {
+        mediaScanner = MediaScanner.start(repo, index, changed -> {
+            // only the media changed; logging whole items would copy every description too
+            log(j -> j.batch(() -> changed.forEach(it -> j.itemFieldsChanged(it, Item.MEDIA))));
+            Platform.runLater(() -> {
+                Item sel = libraryList.getSelectionModel().getSelectedItem();
+                if (sel != null && changed.contains(sel) && !editMode) {
+                    mediaInfoLabel.setText(sel.getMedia().summary());
+                }
+            });
+        });
+        // files imported before media was read, or added while the app was closed
+        mediaScanner.submitAll();
+    }
+
+    // folder changes arrive on the watcher thread with the write lock held
+    private void startWatcher() {
+        try {
+            watcher = FolderWatcher.start(backupFile, repo, index, (put, removed) -> {
+                log(j -> {
+                    j.itemsPut(put);
+                    removed.forEach(j::itemDeleted);
+                });
+                contentIndexer.submit(put);
+                mediaScanner.submit(put);
+                int n = put.size() + removed.size();
+                Platform.runLater(() -> {
+                    refreshSideLists();
+                    setStatus("Synced " + n + " change(s) from watched folders.");
+                });
+            });
+        } catch (IOException ex) {
+            System.err.println("Folder watching unavailable: " + ex.getMessage());
+        }
     }
 
     @FXML
     private void onUndo(ActionEvent e) {
+        if (notReady()) return;
         if (repo.undoStack().isEmpty()) {
             setStatus("Undo stack empty.");
             return;
         }
 
-        Memento m = repo.undoStack().pop();
-        repo.apply(m);
+        List<Item> restored = new ArrayList<>();
+        repo.write(() -> {
+            // a joined memento goes back together with the ones below it (a whole merge, say)
+            boolean more = true;
+            while (more && !repo.undoStack().isEmpty()) {
+                Memento m = repo.undoStack().pop();
+                repo.apply(m, index);
+                repo.find(m.snapshot().getId()).ifPresent(restored::add);
+                log(j -> {
+                    j.undoPopped();
+                    repo.find(m.snapshot().getId()).ifPresent(j::itemPut);
+                });
+                more = m.joined();
+            }
+        });
+        // words of files nothing pointed at were dropped; read them again
+        contentIndexer.submit(restored);
 
-        index.reindex(repo);
-        refreshAllListsAnimated();
+        refreshSideLists();
         setStatus("Undo applied.");
     }
 
+    // ====== Index repair ======
+    @FXML
+    private void onRebuildIndex(ActionEvent e) {
+        if (notReady()) return;
+        long start = System.nanoTime();
+        repo.write(() -> index.reindex(repo));
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        setStatus("Index rebuilt (" + repo.size() + " items, " + ms + " ms).");
+    }
+
     // ====== Persistence menu ======
     @FXML
     private void onSaveLibrary(ActionEvent e) {
+        if (notReady()) return;
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Save Library");
         chooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter("Smart Collections (*.scol)", "*.scol"));
         File out = chooser.showSaveDialog(searchField.getScene().getWindow());
         if (out == null) return;
+        LibraryCodec codec = compressFastestItem.isSelected() ? LibraryCodec.LZ
+                : compressNoneItem.isSelected() ? LibraryCodec.NONE
+                : PersistenceService.DEFAULT_CODEC;
 
-        try {
-            persist.saveTo(out, repo);
-            setStatus("Saved to " + out.getName());
-        } catch (Exception ex) {
-            setStatus("Save failed: " + ex.getMessage());
+        if (saving) {
+            setStatus("A save is still running.");
+            return;
         }
+        // off the FX thread: edits wait for the read lock the save holds, the window doesn't
+        saving = true;
+        setStatus("Saving to " + out.getName() + "...");
+        Thread.ofPlatform().daemon().name("library-save").start(() -> {
+            String status;
+            try {
+                // only the changes, if this is the file we loaded or saved last
+                long start = System.nanoTime();
+                PersistenceService.SaveResult saved = persist.saveChanges(out, repo, codec);
+                long ms = (System.nanoTime() - start) / 1_000_000;
+                status = saved.differential()
+                        ? "Saved " + saved.records() + " change(s) to " + out.getName() + " (" + ms + " ms)"
+                        : "Saved to " + out.getName() + " (" + ms + " ms)";
+            } catch (Exception ex) {
+                status = "Save failed: " + ex.getMessage();
+            }
+            String done = status;
+            Platform.runLater(() -> {
+                saving = false;
+                setStatus(done);
+            });
+        });
     }
 
     @FXML
     private void onLoadLibrary(ActionEvent e) {
+        if (notReady()) return;
+        if (saving) {
+            setStatus("A save is still running.");
+            return;
+        }
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Load Library");
         chooser.getExtensionFilters().add(
@@ -402,94 +976,126 @@ public class MainController {
         File in = chooser.showOpenDialog(searchField.getScene().getWindow());
         if (in == null) return;
 
-        try {
-            persist.loadFrom(in, repo);
-            index.reindex(repo);
-            refreshAllListsAnimated();
-            setStatus("Loaded " + in.getName());
-        } catch (Exception ex) {
-            setStatus("Load failed: " + ex.getMessage());
-        }
+        // off the FX thread, like the startup load; edits wait until it's in
+        ready = false;
+        setStatus("Loading " + in.getName() + "...");
+        Thread.ofPlatform().daemon().name("library-load").start(() -> {
+            String status;
+            try {
+                persist.loadIndexed(in, repo, index);
+                // the journal only describes changes to the backup, so re-base it on what was loaded
+                if (backups != null) backups.snapshotNow();
+                // the saved folder mtimes describe the old library's items
+                if (watcher != null) watcher.rescanAll();
+                contentIndexer.submitAll();
+                mediaScanner.submitAll();
+                status = "Loaded " + in.getName();
+            } catch (Exception ex) {
+                status = "Load failed: " + ex.getMessage();
+            }
+            String done = status;
+            Platform.runLater(() -> {
+                ready = true;
+                refreshSideLists();
+                setStatus(done);
+            });
+        });
     }
 
-    // ====== Recursive import helper ======
-    private int importRecursive(File base) {
-        Set<String> knownPaths = repo.all().stream()
-                .map(Item::getPathOrUrl)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-
-        List<String> allowed = List.of(".txt", ".md", ".pdf", ".mp3", ".mp4");
-        int[] count = {0};
+    @FXML
+    private void onExportJson(ActionEvent e) {
+        if (notReady()) return;
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Items and Tasks");
+        chooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Newline-delimited JSON (*.ndjson)", "*.ndjson", "*.jsonl"));
+        File out = chooser.showSaveDialog(searchField.getScene().getWindow());
+        if (out == null) return;
 
-        Deque<File> stack = new ArrayDeque<>();
-        stack.push(base);
+        setStatus("Exporting to " + out.getName() + "...");
+        Thread.ofPlatform().daemon().name("library-export").start(() -> {
+            try {
+                long n = ndjson.exportTo(out.toPath(), repo);
+                Platform.runLater(() -> setStatus("Exported " + n + " record(s) to " + out.getName()));
+            } catch (IOException ex) {
+                Platform.runLater(() -> setStatus("Export failed: " + ex.getMessage()));
+            }
+        });
+    }
 
-        while (!stack.isEmpty()) {
-            File f = stack.pop();
-            if (f.isDirectory()) {
-                File[] kids = f.listFiles();
-                if (kids != null) {
-                    for (File k : kids) stack.push(k);
-                }
-            } else {
-                String nameLower = f.getName().toLowerCase(Locale.ROOT);
-                boolean ok = allowed.stream().anyMatch(nameLower::endsWith);
-                if (!ok) continue;
-
-                String abs = f.getAbsolutePath();
-                if (knownPaths.contains(abs)) continue;
-
-                Item it = new Item(f.getName());
-                it.setPathOrUrl(abs);
-                it.setCreatedAt(Instant.now());
-
-                if (nameLower.endsWith(".mp3")) {
-                    it.setCategory(ItemCategory.AUDIO);
-                    it.setMediaKind(MediaKind.AUDIO);
-                } else if (nameLower.endsWith(".mp4")) {
-                    it.setCategory(ItemCategory.VIDEO);
-                    it.setMediaKind(MediaKind.VIDEO);
-                } else if (nameLower.endsWith(".pdf")) {
-                    it.setCategory(ItemCategory.DOCUMENT);
-                    it.setMediaKind(MediaKind.OTHER);
-                } else {
-                    it.setCategory(ItemCategory.NOTE);
-                    it.setMediaKind(MediaKind.OTHER);
-                }
+    @FXML
+    private void onImportJson(ActionEvent e) {
+        if (notReady()) return;
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Items and Tasks");
+        chooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Newline-delimited JSON (*.ndjson)", "*.ndjson", "*.jsonl"));
+        File in = chooser.showOpenDialog(searchField.getScene().getWindow());
+        if (in == null) return;
 
-                repo.add(it);
-                knownPaths.add(abs);
-                count[0]++;
+        // batches go in (and to the journal) as the file is read; the lists catch up at the end
+        setStatus("Importing " + in.getName() + "...");
+        ContentIndexer content = contentIndexer;
+        MediaScanner media = mediaScanner;
+        Thread.ofPlatform().daemon().name("library-import").start(() -> {
+            int[] seen = {0};
+            String status;
+            try {
+                NdjsonService.ImportResult r = ndjson.importFrom(in.toPath(), repo, index, batch -> {
+                    log(j -> {
+                        j.itemsPut(batch.items());
+                        batch.tasks().forEach(j::taskAdded);
+                    });
+                    content.submit(batch.items());
+                    media.submit(batch.items());
+                    int n = seen[0] += batch.items().size() + batch.tasks().size();
+                    Platform.runLater(() -> setStatus("Importing " + in.getName() + "... " + n + " record(s)"));
+                });
+                status = "Imported " + r.items() + " item(s) and " + r.tasks() + " task(s).";
+            } catch (IOException ex) {
+                status = "Import stopped after " + seen[0] + " record(s): " + ex.getMessage();
             }
-        }
-        return count[0];
+            String done = status;
+            Platform.runLater(() -> {
+                refreshSideLists();
+                setStatus(done);
+            });
+        });
+    }
+
+    // append to the journal (inside repo.write, so a snapshot never splits a change from its entry)
+    private void log(Consumer<Journal> entry) {
+        if (journal == null) return;
+        entry.accept(journal);
+        backups.changed();
     }
 
     // ====== Refresh helpers / animation ======
-    private void refreshAllListsAnimated() {
-        refreshLibraryList();
+    // the library list follows the repository through libraryView; these two are small
+    private void refreshSideLists() {
         refreshRecentList();
         refreshTaskList();
-        fadeNode(libraryList);
     }
 
-    private void refreshLibraryList() {
-        libraryList.getItems().setAll(new ArrayList<>(repo.all()));
+    // back from search results to the whole library
+    private void showWholeLibrary() {
+        libraryList.setItems(libraryView.showAll());
     }
 
+    // the lines are built under the read lock: background threads change items and tasks
     private void refreshRecentList() {
-        List<String> lines = repo.recentlyViewed().stream()
+        List<String> lines = repo.read(() -> repo.recentlyViewed().stream()
                 .map(id -> repo.find(id).orElse(null))
                 .filter(Objects::nonNull)
                 .map(Item::toString)
-                .toList();
+                .toList());
         recentList.getItems().setAll(lines);
     }
 
     private void refreshTaskList() {
-        var snapshot = repo.viewAllTasksByPriority();
-        var formatted = snapshot.stream().map(TodoTask::formatForList).toList();
+        List<String> formatted = repo.read(() -> repo.viewAllTasksByPriority().stream()
+                .map(TodoTask::formatForList)
+                .toList());
         taskList.getItems().setAll(formatted);
     }
 
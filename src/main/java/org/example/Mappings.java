@@ -0,0 +1,52 @@
+// src/main/java/org/example/Mappings.java
+package org.example;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Unmapping a memory-mapped file when we are done with it, instead of
+ * whenever the garbage collector gets to the buffer: Windows refuses to
+ * replace a file while a mapping of it exists, and on Linux a replaced
+ * file's blocks stay allocated for as long as it is mapped.
+ *
+ * There is no public API for this before the FFM Arena, so it goes through
+ * sun.misc.Unsafe.invokeCleaner (jdk.unsupported); where that isn't there
+ * the buffer is simply left to the collector. Touching a buffer after it
+ * has been unmapped crashes the VM, so callers must make sure nothing can
+ * still be reading it.
+ */
+final class Mappings {
+
+    // (ByteBuffer) -> void, or null if unavailable
+    private static final MethodHandle CLEANER = findCleaner();
+
+    private Mappings() {}
+
+    // release the mapping now; buffer must be the one FileChannel.map returned, not a slice
+    static void unmap(ByteBuffer buffer) {
+        if (CLEANER == null || buffer == null || !buffer.isDirect()) return;
+        try {
+            CLEANER.invokeExact(buffer);
+        } catch (Throwable ex) {
+            System.err.println("Could not unmap a file: " + ex);
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            Object unsafe = f.get(null);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
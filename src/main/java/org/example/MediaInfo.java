@@ -0,0 +1,43 @@
+// src/main/java/org/example/MediaInfo.java
+package org.example;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * What MediaProbe read from an audio or video file's headers and embedded
+ * tags. Any part may be missing (null, or -1 / 0 for the numbers); an
+ * instance with nothing in it still records that the file was looked at.
+ */
+public record MediaInfo(long durationMs, String codec, String title, String artist,
+                        String album, String genre, int year) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final MediaInfo UNKNOWN = new MediaInfo(-1, null, null, null, null, null, 0);
+
+    // e.g. "3:07 · mp3 · Artist – Album (1999)"
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        if (durationMs >= 0) sb.append(formatDuration(durationMs));
+        if (codec != null) append(sb, codec);
+        if (artist != null || album != null) {
+            append(sb, artist != null && album != null ? artist + " – " + album : artist != null ? artist : album);
+        }
+        if (year > 0) sb.append(" (").append(year).append(')');
+        return sb.toString();
+    }
+
+    static String formatDuration(long ms) {
+        long s = ms / 1000;
+        return s >= 3600
+                ? String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60)
+                : String.format("%d:%02d", s / 60, s % 60);
+    }
+
+    private static void append(StringBuilder sb, String part) {
+        if (!sb.isEmpty()) sb.append(" · ");
+        sb.append(part);
+    }
+}
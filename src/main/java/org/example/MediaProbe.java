@@ -0,0 +1,426 @@
+// src/main/java/org/example/MediaProbe.java
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads duration, codec and embedded tags from the headers of MP3 (ID3v2,
+ * ID3v1, the first MPEG frame and its Xing/VBRI header) and MP4 files (the
+ * box tree, minus the media data). Only headers are read, with positional
+ * reads of a few bytes to a few KiB; mdat, cover art and other large frames
+ * are skipped by their sizes, so a probe costs about the same for a 3 MB
+ * track as for a 3 GB film.
+ */
+final class MediaProbe {
+
+    // text frames and MP4 tag atoms are cut to this many bytes
+    private static final int MAX_TEXT = 1_024;
+    // how far past the ID3 tag the first MPEG frame is looked for
+    private static final int SYNC_WINDOW = 8_192;
+    // a file with more boxes than this is not walked further
+    private static final int MAX_BOXES = 4_096;
+
+    private static final Pattern NUMERIC_GENRE = Pattern.compile("\\((\\d+)\\)(.*)");
+    private static final Pattern YEAR = Pattern.compile("(\\d{4}).*");
+
+    // ID3v1 genres 0-79
+    private static final String[] GENRES = {
+            "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge", "Hip-Hop", "Jazz", "Metal",
+            "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae", "Rock", "Techno", "Industrial",
+            "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient", "Trip-Hop",
+            "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical", "Instrumental", "Acid", "House", "Game",
+            "Sound Clip", "Gospel", "Noise", "AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative",
+            "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave", "Techno-Industrial",
+            "Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult", "Gangsta",
+            "Top 40", "Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave",
+            "Psychadelic", "Rave", "Showtunes", "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka",
+            "Retro", "Musical", "Rock & Roll", "Hard Rock"
+    };
+
+    // kbps by [version is MPEG-1 ? 0 : 1][layer 1..3 - 1][index]
+    private static final int[][][] BITRATES = {
+            {
+                    {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                    {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+            },
+            {
+                    {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+                    {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+            }
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private final FileChannel ch;
+    private final long size;
+    private long bytesRead;
+    private int boxes;
+
+    // collected as the headers are read
+    private long durationMs = -1;
+    private String codec;
+    private String videoCodec;
+    private String title;
+    private String artist;
+    private String album;
+    private String genre;
+    private int year;
+    private String handler;
+
+    private MediaProbe(FileChannel ch) throws IOException {
+        this.ch = ch;
+        this.size = ch.size();
+    }
+
+    record Result(MediaInfo info, long bytesRead) {}
+
+    static Result probe(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MediaProbe p = new MediaProbe(ch);
+            ByteBuffer head = p.read(0, 12);
+            if (head.remaining() >= 8 && isBoxType(head, 4)) {
+                p.boxes(0, p.size);
+            } else {
+                p.mp3(head);
+            }
+            return new Result(p.info(), p.bytesRead);
+        }
+    }
+
+    private MediaInfo info() {
+        return new MediaInfo(durationMs, videoCodec != null ? videoCodec : codec, title, artist, album, genre, year);
+    }
+
+    // ====== MP3 ======
+
+    private void mp3(ByteBuffer head) throws IOException {
+        long audioStart = 0;
+        if (head.remaining() >= 10 && head.get(0) == 'I' && head.get(1) == 'D' && head.get(2) == '3') {
+            int major = head.get(3);
+            int flags = head.get(5) & 0xFF;
+            long tagSize = syncsafe(head, 6);
+            audioStart = 10 + tagSize + ((flags & 0x10) != 0 ? 10 : 0);
+            // unsynchronised tags would need every byte rewritten; not worth it for a header probe
+            if (major >= 2 && major <= 4 && (flags & 0x80) == 0) {
+                id3v2Frames(major, flags, Math.min(10 + tagSize, size));
+            }
+        }
+        mpegFrame(audioStart);
+        if (title == null && artist == null && album == null && size >= 128) id3v1();
+    }
+
+    private void id3v2Frames(int major, int flags, long end) throws IOException {
+        int idLen = major == 2 ? 3 : 4;
+        int hdrLen = major == 2 ? 6 : 10;
+        long pos = 10;
+        if (major >= 3 && (flags & 0x40) != 0) {
+            ByteBuffer ext = read(pos, 4);
+            if (ext.remaining() < 4) return;
+            pos += major == 3 ? 4 + ext.getInt(0) : syncsafe(ext, 0);
+        }
+        while (pos + hdrLen <= end) {
+            ByteBuffer fh = read(pos, hdrLen);
+            if (fh.remaining() < hdrLen || fh.get(0) == 0) break; // padding
+            String id = ascii(fh, 0, idLen);
+            long frameSize = major == 2 ? (fh.get(3) & 0xFF) << 16 | (fh.get(4) & 0xFF) << 8 | (fh.get(5) & 0xFF)
+                    : major == 4 ? syncsafe(fh, 4) : fh.getInt(4) & 0xFFFFFFFFL;
+            if (frameSize <= 0 || pos + hdrLen + frameSize > end) break;
+            // compressed or encrypted frames are left alone
+            boolean plain = major == 2 || (fh.get(9) & (major == 3 ? 0xC0 : 0x0C)) == 0;
+            String key = major == 2 ? v22(id) : id;
+            if (plain && key != null && key.startsWith("T")) {
+                String text = text(read(pos + hdrLen, (int) Math.min(frameSize, MAX_TEXT)));
+                if (text != null) frame(key, text);
+            }
+            pos += hdrLen + frameSize;
+        }
+    }
+
+    private void frame(String id, String text) {
+        switch (id) {
+            case "TIT2" -> title = text;
+            case "TPE1" -> artist = text;
+            case "TALB" -> album = text;
+            case "TCON" -> genre = genre(text);
+            case "TYER", "TDRC" -> year = year(text);
+            case "TLEN" -> {
+                try {
+                    durationMs = Long.parseLong(text.trim());
+                } catch (NumberFormatException ex) {
+                    // not a number of milliseconds; the frame headers decide
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private static String v22(String id) {
+        return switch (id) {
+            case "TT2" -> "TIT2";
+            case "TP1" -> "TPE1";
+            case "TAL" -> "TALB";
+            case "TCO" -> "TCON";
+            case "TYE" -> "TYER";
+            case "TLE" -> "TLEN";
+            default -> null;
+        };
+    }
+
+    // the first MPEG audio frame: codec, and duration from a VBR header or the bitrate
+    private void mpegFrame(long audioStart) throws IOException {
+        ByteBuffer b = read(audioStart, SYNC_WINDOW);
+        for (int i = 0; i + 4 <= b.limit(); i++) {
+            int b1 = b.get(i + 1) & 0xFF;
+            int b2 = b.get(i + 2) & 0xFF;
+            if ((b.get(i) & 0xFF) != 0xFF || (b1 & 0xE0) != 0xE0) continue;
+            int version = (b1 >> 3) & 3;   // 0 = 2.5, 2 = 2, 3 = 1
+            int layer = (b1 >> 1) & 3;     // 1 = III, 2 = II, 3 = I
+            int bitrateIdx = (b2 >> 4) & 0xF;
+            int rateIdx = (b2 >> 2) & 3;
+            if (version == 1 || layer == 0 || bitrateIdx == 0 || bitrateIdx == 15 || rateIdx == 3) continue;
+
+            boolean mpeg1 = version == 3;
+            int layerNo = 4 - layer;
+            int kbps = BITRATES[mpeg1 ? 0 : 1][layerNo - 1][bitrateIdx];
+            int sampleRate = SAMPLE_RATES[rateIdx] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+            int samplesPerFrame = layerNo == 1 ? 384 : layerNo == 3 && !mpeg1 ? 576 : 1152;
+            boolean mono = ((b.get(i + 3) & 0xFF) >> 6) == 3;
+            codec = "mp" + layerNo;
+            if (durationMs >= 0) return;
+
+            int xing = i + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+            long frames = -1;
+            if (xing + 12 <= b.limit() && (ascii(b, xing, 4).equals("Xing") || ascii(b, xing, 4).equals("Info"))
+                    && (b.getInt(xing + 4) & 1) != 0) {
+                frames = b.getInt(xing + 8) & 0xFFFFFFFFL;
+            } else if (i + 36 + 18 <= b.limit() && ascii(b, i + 36, 4).equals("VBRI")) {
+                frames = b.getInt(i + 36 + 14) & 0xFFFFFFFFL;
+            }
+            if (frames > 0) {
+                durationMs = frames * samplesPerFrame * 1000 / sampleRate;
+            } else {
+                long audioBytes = size - (audioStart + i);
+                durationMs = audioBytes * 8 / kbps;
+            }
+            return;
+        }
+    }
+
+    private void id3v1() throws IOException {
+        ByteBuffer t = read(size - 128, 128);
+        if (t.remaining() < 128 || !ascii(t, 0, 3).equals("TAG")) return;
+        title = latin1(t, 3, 30);
+        artist = latin1(t, 33, 30);
+        album = latin1(t, 63, 30);
+        String y = latin1(t, 93, 4);
+        if (y != null) year = year(y);
+        int g = t.get(127) & 0xFF;
+        if (g < GENRES.length) genre = GENRES[g];
+    }
+
+    // ====== MP4 / QuickTime ======
+
+    private void boxes(long from, long to) throws IOException {
+        long pos = from;
+        while (pos + 8 <= to && boxes++ < MAX_BOXES) {
+            ByteBuffer h = read(pos, 8);
+            if (h.remaining() < 8) return;
+            long boxSize = h.getInt(0) & 0xFFFFFFFFL;
+            String type = latin1Type(h, 4);
+            int hl = 8;
+            if (boxSize == 1) {
+                ByteBuffer large = read(pos + 8, 8);
+                if (large.remaining() < 8) return;
+                boxSize = large.getLong(0);
+                hl = 16;
+            } else if (boxSize == 0) {
+                boxSize = to - pos;
+            }
+            if (boxSize < hl || pos + boxSize > to) return;
+            long body = pos + hl;
+            long end = pos + boxSize;
+
+            switch (type) {
+                case "moov", "mdia", "minf", "stbl", "udta", "ilst" -> boxes(body, end);
+                case "trak" -> {
+                    handler = null;
+                    boxes(body, end);
+                }
+                // a full box in MP4 (version + flags first), a plain container in QuickTime
+                case "meta" -> boxes(isBoxType(read(body, 8), 4) ? body : body + 4, end);
+                case "mvhd" -> movieHeader(body);
+                case "hdlr" -> {
+                    ByteBuffer b = read(body, 12);
+                    if (b.remaining() >= 12) handler = latin1Type(b, 8);
+                }
+                case "stsd" -> sampleDescription(body);
+                case "©nam", "©ART", "aART", "©alb", "©gen", "gnre", "©day" -> tagAtom(type, body, end);
+                default -> { }
+            }
+            pos = end;
+        }
+    }
+
+    private void movieHeader(long body) throws IOException {
+        ByteBuffer b = read(body, 32);
+        if (b.remaining() < 20) return;
+        boolean v1 = b.get(0) == 1;
+        if (v1 && b.remaining() < 32) return;
+        long timescale = b.getInt(v1 ? 20 : 12) & 0xFFFFFFFFL;
+        long duration = v1 ? b.getLong(24) : b.getInt(16) & 0xFFFFFFFFL;
+        if (timescale > 0 && duration >= 0 && duration != 0xFFFFFFFFL) {
+            durationMs = duration * 1000 / timescale;
+        }
+    }
+
+    private void sampleDescription(long body) throws IOException {
+        ByteBuffer b = read(body, 16);
+        if (b.remaining() < 16 || b.getInt(4) == 0) return;
+        String name = fourcc(latin1Type(b, 12));
+        if ("vide".equals(handler)) {
+            if (videoCodec == null) videoCodec = name;
+        } else if ("soun".equals(handler) && codec == null) {
+            codec = name;
+        }
+    }
+
+    // ilst entry: a 'data' box holding a 4-byte type, a 4-byte locale, then the value
+    private void tagAtom(String type, long body, long end) throws IOException {
+        ByteBuffer b = read(body, (int) Math.min(end - body, MAX_TEXT));
+        if (b.remaining() < 16 || !latin1Type(b, 4).equals("data")) return;
+        int dataSize = Math.min(b.getInt(0), b.remaining());
+        if (dataSize < 16) return;
+        if (type.equals("gnre")) {
+            if (dataSize >= 18) {
+                int g = (b.getShort(16) & 0xFFFF) - 1;
+                if (g >= 0 && g < GENRES.length) genre = GENRES[g];
+            }
+            return;
+        }
+        String text = clean(new String(b.array(), b.arrayOffset() + 16, dataSize - 16, StandardCharsets.UTF_8));
+        if (text == null) return;
+        switch (type) {
+            case "©nam" -> title = text;
+            case "©ART" -> artist = text;
+            case "aART" -> {
+                if (artist == null) artist = text;
+            }
+            case "©alb" -> album = text;
+            case "©gen" -> genre = text;
+            default -> year = year(text);
+        }
+    }
+
+    private static String fourcc(String f) {
+        return switch (f) {
+            case "avc1", "avc3" -> "h264";
+            case "hvc1", "hev1" -> "hevc";
+            case "mp4v" -> "mpeg4";
+            case "av01" -> "av1";
+            case "vp09" -> "vp9";
+            case "mp4a" -> "aac";
+            case "ac-3" -> "ac3";
+            case "ec-3" -> "eac3";
+            case "Opus" -> "opus";
+            case ".mp3" -> "mp3";
+            default -> f.trim().toLowerCase(Locale.ROOT);
+        };
+    }
+
+    // bytes 4..8 of a file or box look like a box type we know
+    private static boolean isBoxType(ByteBuffer b, int at) {
+        if (b.remaining() < at + 4) return false;
+        return switch (latin1Type(b, at)) {
+            case "ftyp", "moov", "mdat", "free", "wide", "skip", "hdlr" -> true;
+            default -> false;
+        };
+    }
+
+    // ====== reading ======
+
+    // up to n bytes at pos (fewer at the end of the file)
+    private ByteBuffer read(long pos, int n) throws IOException {
+        if (pos < 0 || pos >= size) return ByteBuffer.allocate(0);
+        ByteBuffer b = ByteBuffer.allocate((int) Math.min(n, size - pos));
+        while (b.hasRemaining()) {
+            int r = ch.read(b, pos + b.position());
+            if (r < 0) break;
+        }
+        bytesRead += b.position();
+        return b.flip();
+    }
+
+    private static long syncsafe(ByteBuffer b, int at) {
+        return (b.get(at) & 0x7F) << 21 | (b.get(at + 1) & 0x7F) << 14 | (b.get(at + 2) & 0x7F) << 7 | (b.get(at + 3) & 0x7F);
+    }
+
+    private static String ascii(ByteBuffer b, int at, int n) {
+        return at + n > b.limit() ? "" : new String(b.array(), b.arrayOffset() + at, n, StandardCharsets.US_ASCII);
+    }
+
+    private static String latin1Type(ByteBuffer b, int at) {
+        return new String(b.array(), b.arrayOffset() + at, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String latin1(ByteBuffer b, int at, int n) {
+        return clean(new String(b.array(), b.arrayOffset() + at, n, StandardCharsets.ISO_8859_1));
+    }
+
+    // an ID3v2 text frame: encoding byte, then the text; only the first of several values
+    private static String text(ByteBuffer b) {
+        if (b.remaining() < 2) return null;
+        int enc = b.get(0);
+        Charset cs = switch (enc) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        int len = b.remaining() - 1;
+        if (enc == 1 || enc == 2) {
+            for (int i = 1; i + 1 < b.remaining(); i += 2) {
+                if (b.get(i) == 0 && b.get(i + 1) == 0) {
+                    len = i - 1;
+                    break;
+                }
+            }
+        }
+        return clean(new String(b.array(), b.arrayOffset() + 1, len, cs));
+    }
+
+    private static String clean(String s) {
+        int nul = s.indexOf('\0');
+        if (nul >= 0) s = s.substring(0, nul);
+        s = s.strip();
+        return s.isEmpty() ? null : s;
+    }
+
+    // "(17)", "(17)Rock", "17" or "Rock"
+    private static String genre(String s) {
+        Matcher m = NUMERIC_GENRE.matcher(s);
+        if (m.matches()) {
+            if (!m.group(2).isBlank()) return m.group(2).strip();
+            s = m.group(1);
+        }
+        if (s.chars().allMatch(Character::isDigit) && s.length() <= 3) {
+            int g = Integer.parseInt(s);
+            return g < GENRES.length ? GENRES[g] : null;
+        }
+        return s;
+    }
+
+    private static int year(String s) {
+        Matcher m = YEAR.matcher(s.strip());
+        return m.matches() ? Integer.parseInt(m.group(1)) : 0;
+    }
+}
@@ -0,0 +1,229 @@
+// src/main/java/org/example/MediaScanner.java
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background pipeline that fills in MediaInfo for audio and video items:
+ * WORKERS "media-scan" threads take paths off a queue and probe them with
+ * MediaProbe (headers only), and one "media-apply" thread puts the results
+ * on the items under the write lock, up to APPLY_BATCH at a time, and hands
+ * each batch to the listener.
+ *
+ * The workers share two token buckets, FILES_PER_SECOND and BYTES_PER_SECOND,
+ * so a 50k-track import trickles through at a bounded rate instead of
+ * competing with the UI and the import itself for the disk. Results go
+ * through a RESULTS-slot queue: when the applier is behind (waiting for the
+ * write lock, say) the workers stop reading rather than pile up results.
+ * The path queue itself never blocks, because submit is called with the
+ * write lock held.
+ *
+ * Items that already have media, or whose path isn't a local file, aren't
+ * queued; a file the probe chokes on gets MediaInfo.UNKNOWN so it isn't
+ * tried again on every start. A file that can't be read (an unmounted
+ * share, a locked file) is left without media and tried again next time.
+ */
+public final class MediaScanner {
+
+    static final int WORKERS = 2;
+    static final int RESULTS = 256;
+    // items updated under one write-lock hold
+    static final int APPLY_BATCH = 256;
+    // how long the applier waits for a batch to fill
+    static final long APPLY_DELAY_MS = 250;
+    static final double FILES_PER_SECOND = 200;
+    static final double BYTES_PER_SECOND = 4 << 20;
+
+    // gets the items one batch changed, while the write lock is still held
+    public interface Listener {
+        void scanned(List<Item> changed);
+    }
+
+    // info is null when the file couldn't be read; the item is left as it is
+    private record Probed(String path, MediaInfo info) {}
+
+    private final LibraryRepository repo;
+    private final IndexService index;
+    private final Listener listener;
+    private final BlockingQueue<String> paths = new LinkedBlockingQueue<>();
+    // paths queued or being probed, so a path submitted twice is read once
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Probed> results = new ArrayBlockingQueue<>(RESULTS);
+    private final Throttle files = new Throttle(FILES_PER_SECOND);
+    private final Throttle bytes = new Throttle(BYTES_PER_SECOND);
+    private final List<Thread> threads = new ArrayList<>();
+    // queued, being probed, or waiting to be applied
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile int filesProbed;
+
+    private MediaScanner(LibraryRepository repo, IndexService index, Listener listener) {
+        this.repo = repo;
+        this.index = index;
+        this.listener = listener;
+        for (int i = 1; i <= WORKERS; i++) {
+            Thread t = Thread.ofPlatform().daemon().name("media-scan-" + i).unstarted(this::probeLoop);
+            t.setPriority(Thread.MIN_PRIORITY);
+            threads.add(t);
+        }
+        threads.add(Thread.ofPlatform().daemon().name("media-apply").unstarted(this::applyLoop));
+    }
+
+    public static MediaScanner start(LibraryRepository repo, IndexService index, Listener listener) {
+        MediaScanner scanner = new MediaScanner(repo, index, listener);
+        scanner.threads.forEach(Thread::start);
+        return scanner;
+    }
+
+    // queue the audio and video files among these items that haven't been probed
+    public void submit(Collection<Item> items) {
+        for (Item it : items) {
+            String path = it.getPathOrUrl();
+            if (it.getMedia() != null || path == null || path.contains("://")) continue;
+            if (it.getMediaKind() != MediaKind.AUDIO && it.getMediaKind() != MediaKind.VIDEO) continue;
+            if (queued.add(path)) {
+                pending.incrementAndGet();
+                paths.add(path);
+            }
+        }
+    }
+
+    // every unprobed file in the library (at startup, or after loading another library)
+    public void submitAll() {
+        submit(repo.read(() -> new ArrayList<>(repo.all())));
+    }
+
+    public int filesProbed() {
+        return filesProbed;
+    }
+
+    // true when nothing is queued, being probed or waiting to be applied
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    public void close() {
+        closed = true;
+        threads.forEach(Thread::interrupt);
+        for (Thread t : threads) {
+            try {
+                t.join(2_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ====== workers ======
+
+    private void probeLoop() {
+        while (!closed) {
+            String path;
+            try {
+                path = paths.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            MediaInfo info = MediaInfo.UNKNOWN;
+            try {
+                files.acquire(1);
+                MediaProbe.Result r = MediaProbe.probe(Path.of(path));
+                info = r.info();
+                filesProbed++;
+                bytes.acquire(r.bytesRead());
+            } catch (IOException ex) {
+                // may well be readable next time, so nothing is stored
+                info = null;
+                System.err.println("Could not read " + path + ": " + ex.getMessage());
+            } catch (RuntimeException ex) {
+                System.err.println("Could not read media info of " + path + ": " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                results.put(new Probed(path, info));
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void applyLoop() {
+        List<Probed> batch = new ArrayList<>(APPLY_BATCH);
+        while (!closed) {
+            try {
+                Probed first = results.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(APPLY_DELAY_MS);
+                while (batch.size() < APPLY_BATCH) {
+                    Probed next = results.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                apply(batch);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                System.err.println("Applying media info failed: " + ex);
+            } finally {
+                for (Probed p : batch) queued.remove(p.path());
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<Probed> batch) {
+        repo.write(() -> {
+            KeywordIndex kw = repo.keywordIndex();
+            List<Item> changed = new ArrayList<>();
+            for (Probed p : batch) {
+                if (p.info() == null) continue;
+                for (int ord : repo.fieldIndex().pathPostings(p.path()).toArray()) {
+                    ItemId id = kw.idAt(ord);
+                    Item it = id == null ? null : repo.find(id).orElse(null);
+                    if (it == null || Objects.equals(it.getMedia(), p.info())) continue;
+                    Item before = Journal.copyOf(it);
+                    it.setMedia(p.info());
+                    index.update(repo, before, it);
+                    changed.add(it);
+                }
+            }
+            if (!changed.isEmpty()) listener.scanned(changed);
+        });
+    }
+
+    // token bucket holding at most one second's worth
+    private static final class Throttle {
+        private final double perSecond;
+        private double available;
+        private long last = System.nanoTime();
+
+        Throttle(double perSecond) {
+            this.perSecond = perSecond;
+            this.available = perSecond;
+        }
+
+        void acquire(double amount) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                available = Math.min(perSecond, available + (now - last) * perSecond / 1e9);
+                last = now;
+                available -= amount;
+                waitNanos = available >= 0 ? 0 : (long) (-available / perSecond * 1e9);
+            }
+            if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
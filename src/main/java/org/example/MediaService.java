@@ -1,32 +1,125 @@
 // src/main/java/org/example/MediaService.java
 package org.example;
 
+import javafx.application.Platform;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Preview players, kept instead of rebuilt: the last POOL_SIZE players are
+ * held in an LRU by path, so going back to a recent item (or on to one that
+ * was preloaded) just re-attaches its player. Media and MediaPlayer are
+ * built on the "media-preload" thread, never on the FX thread; a player
+ * leaving the pool is disposed.
+ *
+ * The pool and everything else here belong to the FX thread; only the
+ * construction happens elsewhere, and its result comes back via runLater.
+ */
 public class MediaService {
 
-    private MediaPlayer currentPlayer;
+    // players kept ready, including the one showing
+    static final int POOL_SIZE = 5;
 
-    // setup media player for file
-    public void prepare(String pathOrUrl) {
-        // clean up old player
-        if (currentPlayer != null) {
-            currentPlayer.dispose();
-            currentPlayer = null;
+    private final LinkedHashMap<String, MediaPlayer> pool = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MediaPlayer> eldest) {
+            if (size() <= POOL_SIZE || eldest.getKey().equals(showing)) return false;
+            eldest.getValue().dispose();
+            return true;
         }
-        if (pathOrUrl == null || pathOrUrl.isBlank()) {
-            return;
+    };
+    // paths being built now
+    private final Set<String> building = new HashSet<>();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("media-preload").factory());
+
+    // the path the view shows, or is waiting for
+    private String showing;
+    private MediaView view;
+    private Consumer<Exception> onError;
+    private boolean closed;
+
+    /**
+     * Show this file's player in view: at once if it is in the pool, else
+     * as soon as it has been built (unless another path has been shown by
+     * then). The previous player is stopped, not disposed.
+     */
+    public void show(String pathOrUrl, MediaView view, Consumer<Exception> onError) {
+        clear(view);
+        if (pathOrUrl == null || pathOrUrl.isBlank()) return;
+        this.showing = pathOrUrl;
+        this.view = view;
+        this.onError = onError;
+        MediaPlayer ready = pool.get(pathOrUrl);
+        if (ready != null) {
+            view.setMediaPlayer(ready);
+        } else {
+            build(pathOrUrl);
+        }
+    }
+
+    // true if show(pathOrUrl) wouldn't have to wait for a build
+    public boolean isReady(String pathOrUrl) {
+        return pool.containsKey(pathOrUrl);
+    }
+
+    // build players for paths likely to be shown next (neighbours in the list)
+    public void preload(List<String> paths) {
+        for (String p : paths) {
+            if (p != null && !p.isBlank() && !pool.containsKey(p)) build(p);
         }
+    }
+
+    // stop whatever view shows and detach it
+    public void clear(MediaView view) {
+        MediaPlayer mp = view.getMediaPlayer();
+        if (mp != null) mp.stop();
+        view.setMediaPlayer(null);
+        showing = null;
+    }
+
+    public void shutdown() {
+        closed = true;
+        builder.shutdownNow();
+        pool.values().forEach(MediaPlayer::dispose);
+        pool.clear();
+    }
 
-        // create new player from file path
-        Media media = new Media(new java.io.File(pathOrUrl).toURI().toString());
-        currentPlayer = new MediaPlayer(media);
+    private void build(String pathOrUrl) {
+        if (closed || !building.add(pathOrUrl)) return;
+        builder.execute(() -> {
+            MediaPlayer player = null;
+            Exception failure = null;
+            try {
+                Media media = new Media(new java.io.File(pathOrUrl).toURI().toString());
+                player = new MediaPlayer(media);
+            } catch (Exception ex) {
+                failure = ex;
+            }
+            MediaPlayer built = player;
+            Exception error = failure;
+            Platform.runLater(() -> built(pathOrUrl, built, error));
+        });
     }
 
-    // attach player to UI component
-    public void apply(MediaView view) {
-        view.setMediaPlayer(currentPlayer);
+    private void built(String pathOrUrl, MediaPlayer player, Exception error) {
+        building.remove(pathOrUrl);
+        boolean wanted = pathOrUrl.equals(showing);
+        if (player == null) {
+            if (wanted && onError != null) onError.accept(error);
+            return;
+        }
+        if (closed) {
+            player.dispose();
+            return;
+        }
+        pool.put(pathOrUrl, player);
+        if (wanted) view.setMediaPlayer(player);
     }
 }
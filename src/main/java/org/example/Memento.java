@@ -10,12 +10,31 @@ public class Memento implements Serializable {
 
     private final Item snapshot;
     private final boolean deleted;
+    // part of the same step as the memento below it: one Undo takes them all back
+    private final boolean joined;
 
     public Memento(Item snapshot, boolean deleted) {
+        this(snapshot, deleted, false);
+    }
+
+    public Memento(Item snapshot, boolean deleted, boolean joined) {
         this.snapshot = snapshot;
         this.deleted = deleted;
+        this.joined = joined;
     }
 
     public Item snapshot() { return snapshot; }
     public boolean deleted() { return deleted; }
+    public boolean joined() { return joined; }
+
+    // how a memento's two flags are stored (LibraryFormat, Journal); files before joined have 0 or 1
+    static final int DELETED = 1, JOINED = 2;
+
+    int flags() {
+        return (deleted ? DELETED : 0) | (joined ? JOINED : 0);
+    }
+
+    static Memento of(Item snapshot, int flags) {
+        return new Memento(snapshot, (flags & DELETED) != 0, (flags & JOINED) != 0);
+    }
 }
@@ -0,0 +1,270 @@
+// src/main/java/org/example/NdjsonService.java
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Items and tasks as newline-delimited JSON, one object per line:
+ *
+ *   {"type":"item","id":"…","title":"…","category":"AUDIO","kind":null,"rating":4,
+ *    "createdAt":"2024-03-01T10:00:00Z","path":"…","description":"…","tags":["a","b"],
+ *    "media":{"durationMs":187000,"codec":"mp3","title":"…","artist":"…","album":"…","genre":"…","year":1999}}
+ *   {"type":"task","title":"…","createdAt":"…","due":"2024-06-30"}
+ *
+ * Both directions stream: export renders BATCH records at a time under a
+ * short read lock and writes them after letting go of it, import parses a
+ * line at a time and inserts in batches, so a dump of any size needs only
+ * a batch worth of memory on top of the library itself, and edits never
+ * wait for the disk. Unknown fields are ignored; a missing id gets a new one.
+ */
+public class NdjsonService {
+
+    // records per lock hold, on import (write lock) and export (read lock)
+    static final int BATCH = 1_000;
+
+    // what one import batch added, handed over while the write lock is still held
+    public record Batch(List<Item> items, List<TodoTask> tasks) {}
+
+    public record ImportResult(int items, int tasks) {}
+
+    /**
+     * Write every item, then every task; returns how many records were
+     * written. The ids are taken first, then each BATCH of items is rendered
+     * under its own read-lock hold: an item deleted meanwhile is skipped,
+     * one added meanwhile is left for the next export.
+     */
+    public long exportTo(Path file, LibraryRepository repo) throws IOException {
+        Path tmp = Path.of(file + ".tmp");
+        long written = 0;
+        List<ItemId> ids = repo.read(() -> repo.all().stream().map(Item::getId).toList());
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (int from = 0; from < ids.size(); from += BATCH) {
+                List<ItemId> chunk = ids.subList(from, Math.min(from + BATCH, ids.size()));
+                StringBuilder lines = new StringBuilder();
+                written += repo.read(() -> {
+                    int n = 0;
+                    for (ItemId id : chunk) {
+                        Optional<Item> it = repo.find(id);
+                        if (it.isEmpty()) continue;
+                        render(lines, it.get());
+                        n++;
+                    }
+                    return n;
+                });
+                out.append(lines);
+            }
+            List<TodoTask> tasks = repo.read(repo::viewAllTasksByPriority);
+            for (TodoTask t : tasks) {
+                writeTask(out, t);
+                written++;
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    // appending to a StringBuilder can't fail
+    private static void render(StringBuilder lines, Item it) {
+        try {
+            writeItem(lines, it);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Read records and add them BATCH at a time, indexing as they go. An item
+     * whose id is already in the library replaces it. onBatch sees each batch
+     * under the write lock (to journal it, say). A bad line stops the import
+     * with its line number; the lines before it stay imported.
+     */
+    public ImportResult importFrom(Path file, LibraryRepository repo, IndexService index,
+                                   Consumer<Batch> onBatch) throws IOException {
+        int items = 0;
+        int tasks = 0;
+        List<Item> pendingItems = new ArrayList<>(BATCH);
+        List<TodoTask> pendingTasks = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                try {
+                    Map<String, Object> rec = Json.parseObject(line);
+                    Object type = rec.get("type");
+                    if ("item".equals(type)) {
+                        pendingItems.add(readItem(rec));
+                        items++;
+                    } else if ("task".equals(type)) {
+                        pendingTasks.add(readTask(rec));
+                        tasks++;
+                    } else {
+                        throw new IOException("unknown record type " + type);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    flush(pendingItems, pendingTasks, repo, index, onBatch);
+                    throw new IOException("Line " + lineNo + ": " + ex.getMessage(), ex);
+                }
+                if (pendingItems.size() + pendingTasks.size() >= BATCH) {
+                    flush(pendingItems, pendingTasks, repo, index, onBatch);
+                }
+            }
+        }
+        flush(pendingItems, pendingTasks, repo, index, onBatch);
+        return new ImportResult(items, tasks);
+    }
+
+    private static void flush(List<Item> items, List<TodoTask> tasks, LibraryRepository repo,
+                              IndexService index, Consumer<Batch> onBatch) {
+        if (items.isEmpty() && tasks.isEmpty()) return;
+        Batch batch = new Batch(List.copyOf(items), List.copyOf(tasks));
+        repo.write(() -> {
+            for (Item it : batch.items()) {
+                Optional<Item> existing = repo.find(it.getId());
+                existing.ifPresent(old -> index.unindex(repo, old));
+                repo.add(it);
+                index.index(repo, it);
+            }
+            repo.taskQueue().addAll(batch.tasks());
+            onBatch.accept(batch);
+        });
+        items.clear();
+        tasks.clear();
+    }
+
+    // ====== records ======
+
+    private static void writeItem(Appendable out, Item it) throws IOException {
+        out.append("{\"type\":\"item\",\"id\":");
+        Json.writeString(out, it.getId().value());
+        out.append(",\"title\":");
+        Json.writeString(out, it.getTitle());
+        out.append(",\"category\":");
+        Json.writeString(out, it.getCategory() == null ? null : it.getCategory().name());
+        out.append(",\"kind\":");
+        Json.writeString(out, it.getMediaKind() == null ? null : it.getMediaKind().name());
+        out.append(",\"rating\":");
+        out.append(Integer.toString(it.getRating()));
+        out.append(",\"createdAt\":");
+        Json.writeString(out, it.getCreatedAt() == null ? null : it.getCreatedAt().toString());
+        out.append(",\"path\":");
+        Json.writeString(out, it.getPathOrUrl());
+        out.append(",\"description\":");
+        Json.writeString(out, it.getDescription());
+        out.append(",\"tags\":[");
+        for (int i = 0; i < it.getTags().size(); i++) {
+            if (i > 0) out.append(',');
+            Json.writeString(out, it.getTags().get(i));
+        }
+        out.append(']');
+        MediaInfo m = it.getMedia();
+        if (m != null) {
+            out.append(",\"media\":{\"durationMs\":");
+            out.append(Long.toString(m.durationMs()));
+            out.append(",\"codec\":");
+            Json.writeString(out, m.codec());
+            out.append(",\"title\":");
+            Json.writeString(out, m.title());
+            out.append(",\"artist\":");
+            Json.writeString(out, m.artist());
+            out.append(",\"album\":");
+            Json.writeString(out, m.album());
+            out.append(",\"genre\":");
+            Json.writeString(out, m.genre());
+            out.append(",\"year\":");
+            out.append(Integer.toString(m.year()));
+            out.append('}');
+        }
+        out.append('}');
+        out.append('\n');
+    }
+
+    private static void writeTask(Appendable out, TodoTask t) throws IOException {
+        out.append("{\"type\":\"task\",\"title\":");
+        Json.writeString(out, t.getTitle());
+        out.append(",\"createdAt\":");
+        Json.writeString(out, t.getCreatedAt() == null ? null : t.getCreatedAt().toString());
+        out.append(",\"due\":");
+        Json.writeString(out, t.getDueDate() == null ? null : t.getDueDate().toString());
+        out.append('}');
+        out.append('\n');
+    }
+
+    private static Item readItem(Map<String, Object> rec) throws IOException {
+        String title = string(rec, "title");
+        String id = string(rec, "id");
+        Item it = id != null ? new Item(new ItemId(id), title) : new Item(title);
+        String category = string(rec, "category");
+        String kind = string(rec, "kind");
+        it.setCategory(category == null ? null : ItemCategory.valueOf(category));
+        it.setMediaKind(kind == null ? null : MediaKind.valueOf(kind));
+        if (rec.get("rating") instanceof Number n) it.setRating(n.intValue());
+        String created = string(rec, "createdAt");
+        if (created != null) it.setCreatedAt(instant(created));
+        it.setPathOrUrl(string(rec, "path"));
+        it.setDescription(string(rec, "description"));
+        List<String> tags = new ArrayList<>();
+        if (rec.get("tags") instanceof List<?> list) {
+            for (Object tag : list) {
+                if (!(tag instanceof String s)) throw new IOException("tags must be strings");
+                tags.add(s);
+            }
+        }
+        it.setTags(tags);
+        if (rec.get("media") instanceof Map<?, ?> media) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> m = (Map<String, Object>) media;
+            it.setMedia(new MediaInfo(
+                    m.get("durationMs") instanceof Number n ? n.longValue() : -1,
+                    string(m, "codec"), string(m, "title"), string(m, "artist"),
+                    string(m, "album"), string(m, "genre"),
+                    m.get("year") instanceof Number n ? n.intValue() : 0));
+        }
+        return it;
+    }
+
+    private static TodoTask readTask(Map<String, Object> rec) throws IOException {
+        String created = string(rec, "createdAt");
+        String due = string(rec, "due");
+        try {
+            return new TodoTask(string(rec, "title"),
+                    created == null ? Instant.now() : instant(created),
+                    due == null ? null : LocalDate.parse(due));
+        } catch (DateTimeParseException ex) {
+            throw new IOException("bad date " + due);
+        }
+    }
+
+    private static Instant instant(String s) throws IOException {
+        try {
+            return Instant.parse(s);
+        } catch (DateTimeParseException ex) {
+            throw new IOException("bad timestamp " + s);
+        }
+    }
+
+    private static String string(Map<String, Object> rec, String key) throws IOException {
+        Object v = rec.get(key);
+        if (v == null || v instanceof String) return (String) v;
+        throw new IOException(key + " must be a string");
+    }
+}
@@ -0,0 +1,265 @@
+// src/main/java/org/example/PdfText.java
+package org.example;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The built-in .pdf extractor for ContentIndexer: enough of PDF to find the
+ * words of ordinary text-based documents without a PDF library.
+ *
+ * The file is memory-mapped and scanned for content streams; uncompressed
+ * and FlateDecode ones are inflated CHUNK bytes at a time straight out of
+ * the mapping, and the literal strings shown between BT and ET are fed to
+ * Words. Fonts, images, cross-reference and object streams are skipped by
+ * their dictionaries. Text in custom-encoded or CID fonts (hex strings) and
+ * other filters are not decoded; register a full extractor for those.
+ */
+final class PdfText {
+
+    private static final byte[] STREAM = "stream".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ENDSTREAM = "endstream".getBytes(StandardCharsets.US_ASCII);
+    // how far back from "stream" its dictionary is looked for
+    private static final int DICT_WINDOW = 2_048;
+    // TJ adjustments (thousandths of an em) at least this far apart are a space
+    private static final int WORD_GAP = 200;
+
+    private PdfText() {}
+
+    static void extract(Path file, ContentIndexer.Words words) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = Math.min(ch.size(), Math.min(ContentIndexer.MAX_BYTES, Integer.MAX_VALUE));
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int limit = (int) size;
+            int at = 0;
+            while ((at = indexOf(map, STREAM, at, limit)) >= 0) {
+                int keyword = at;
+                at += STREAM.length;
+                // "endstream", or "stream" not starting a line's data
+                if (keyword >= 3 && map.get(keyword - 3) == 'e' && map.get(keyword - 2) == 'n'
+                        && map.get(keyword - 1) == 'd') continue;
+                if (at < limit && map.get(at) == '\r') at++;
+                if (at >= limit || map.get(at) != '\n') continue;
+                int start = at + 1;
+                int end = indexOf(map, ENDSTREAM, start, limit);
+                if (end < 0) break;
+                at = end + ENDSTREAM.length;
+
+                String dict = dictionaryBefore(map, keyword);
+                if (!isContent(dict)) continue;
+                Scanner scanner = new Scanner(words);
+                if (dict.contains("/FlateDecode")) {
+                    inflate(map, start, end, scanner);
+                } else if (!dict.contains("/Filter")) {
+                    for (int i = start; i < end; i++) scanner.accept(map.get(i));
+                }
+                words.end();
+            }
+        }
+    }
+
+    private static void inflate(MappedByteBuffer map, int start, int end, Scanner scanner) {
+        Inflater inflater = new Inflater();
+        byte[] out = new byte[ContentIndexer.CHUNK];
+        try {
+            inflater.setInput(map.slice(start, end - start));
+            while (!inflater.finished()) {
+                int n = inflater.inflate(out);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                for (int i = 0; i < n; i++) scanner.accept(out[i]);
+            }
+        } catch (DataFormatException ex) {
+            // damaged stream: keep what came out of it
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // page contents and forms; not fonts, images, metadata or the file's own bookkeeping
+    private static boolean isContent(String dict) {
+        return !(dict.contains("/Image") || dict.contains("/Length1") || dict.contains("/Length2")
+                || dict.contains("/FontFile") || dict.contains("/XRef") || dict.contains("/ObjStm")
+                || dict.contains("/Metadata") || dict.contains("/EmbeddedFile") || dict.contains("/ICC"));
+    }
+
+    // text between the last "obj" before the stream keyword and the keyword
+    private static String dictionaryBefore(MappedByteBuffer map, int keyword) {
+        int from = Math.max(0, keyword - DICT_WINDOW);
+        int start = from;
+        for (int i = keyword - 3; i >= from; i--) {
+            if (map.get(i) == 'o' && map.get(i + 1) == 'b' && map.get(i + 2) == 'j') {
+                start = i + 3;
+                break;
+            }
+        }
+        byte[] b = new byte[keyword - start];
+        map.get(start, b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int indexOf(MappedByteBuffer map, byte[] what, int from, int limit) {
+        byte first = what[0];
+        outer:
+        for (int i = from; i <= limit - what.length; i++) {
+            if (map.get(i) != first) continue;
+            for (int j = 1; j < what.length; j++) {
+                if (map.get(i + j) != what[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Content-stream operators, a byte at a time: tracks BT/ET, the strings
+     * shown inside them (with their escapes) and TJ spacing, and skips hex
+     * strings and inline image data.
+     */
+    private static final class Scanner {
+        private final ContentIndexer.Words words;
+        private final StringBuilder token = new StringBuilder();
+        private boolean inText;
+        private boolean inArray;
+        private int depth;         // inside a (string) when > 0
+        private int escape = -1;   // -1 none, 0 just saw '\', 1..3 octal digits read
+        private int octal;
+        private boolean inHex;
+        private boolean inImage;
+        private int imageTail;     // the last bytes of inline image data, to spot "EI"
+
+        Scanner(ContentIndexer.Words words) {
+            this.words = words;
+        }
+
+        void accept(byte b) {
+            int c = b & 0xFF;
+            if (inImage) {
+                imageTail = (imageTail << 8 | c) & 0xFFFFFF;
+                // whitespace then "EI" ends the image data
+                if ((imageTail & 0xFFFF) == ('E' << 8 | 'I') && isSpace(imageTail >>> 16)) {
+                    inImage = false;
+                    token.setLength(0);
+                }
+                return;
+            }
+            if (depth > 0) {
+                string(c);
+                return;
+            }
+            if (inHex) {
+                if (c == '>') inHex = false;
+                return;
+            }
+            switch (c) {
+                case '(' -> {
+                    operator();
+                    depth = 1;
+                }
+                case '<' -> {
+                    operator();
+                    inHex = true;
+                }
+                case '[' -> {
+                    operator();
+                    inArray = true;
+                }
+                case ']' -> {
+                    operator();
+                    inArray = false;
+                }
+                default -> {
+                    if (isSpace(c) || c == '/' || c == '>' || c == '{' || c == '}') {
+                        operator();
+                    }
+                    if (!isSpace(c)) token.append((char) c);
+                }
+            }
+        }
+
+        // a token has ended: a number inside TJ, or an operator
+        private void operator() {
+            if (token.isEmpty()) return;
+            String t = token.toString();
+            token.setLength(0);
+            char first = t.charAt(0);
+            if (inArray && (first == '-' || first == '.' || Character.isDigit(first))) {
+                try {
+                    if (Math.abs(Double.parseDouble(t)) >= WORD_GAP) words.end();
+                } catch (NumberFormatException ex) {
+                    // not a number after all
+                }
+                return;
+            }
+            switch (t) {
+                case "BT" -> inText = true;
+                case "ET" -> {
+                    inText = false;
+                    words.end();
+                }
+                case "ID" -> {
+                    inImage = true;
+                    imageTail = 0;
+                }
+                // showing strings, or moving to another line
+                case "Tj", "TJ", "'", "\"", "Td", "TD", "T*", "Tm" -> words.end();
+                default -> { }
+            }
+        }
+
+        private void string(int c) {
+            if (escape == 0) {
+                escape = -1;
+                switch (c) {
+                    case 'n', 'r', 't', 'b', 'f' -> emit(' ');
+                    case '\r', '\n' -> { }
+                    default -> {
+                        if (c >= '0' && c <= '7') {
+                            escape = 1;
+                            octal = c - '0';
+                        } else {
+                            emit(c);
+                        }
+                    }
+                }
+                return;
+            }
+            if (escape > 0) {
+                if (c >= '0' && c <= '7') {
+                    octal = octal * 8 + (c - '0');
+                    if (++escape < 3) return;
+                    escape = -1;
+                    emit(octal & 0xFF);
+                    return;
+                }
+                // a short octal escape; c is ordinary string content
+                escape = -1;
+                emit(octal & 0xFF);
+            }
+            switch (c) {
+                case '\\' -> escape = 0;
+                case '(' -> {
+                    depth++;
+                    emit(c);
+                }
+                case ')' -> {
+                    if (--depth > 0) emit(c);
+                }
+                default -> emit(c);
+            }
+        }
+
+        private void emit(int c) {
+            if (inText) words.accept((char) c);
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+        }
+    }
+}
@@ -2,63 +2,432 @@
 package org.example;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class PersistenceService {
 
-    private static final String MAGIC = "SCOL";
-    private static final int VERSION = 1;
+    // header of libraries saved before LibraryFormat (versions 1 and 2)
+    private static final String LEGACY_MAGIC = "SCOL";
+    private static final int LEGACY_VERSION = 2;
+    private static final int SERIALIZATION_MAGIC = 0xACED;
 
-    // save library to binary file
-    public void saveTo(File file, LibraryRepository repo) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(file);
-             DataOutputStream dos = new DataOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+    // a delta this big relative to its library file is folded into a full save
+    private static final int DELTA_FRACTION = 4;
 
-            // write file header
-            dos.writeUTF(MAGIC);
-            dos.writeInt(VERSION);
+    // compression when the caller doesn't pick one
+    public static final LibraryCodec DEFAULT_CODEC = LibraryCodec.DEFLATE;
 
-            oos.writeObject(repo);
-            oos.flush();
+    // the file last loaded or fully saved, and the Item clock its contents correspond to
+    // and its tasks, recents and undo stack as they were then (top first), to diff the next delta against
+    private record SaveTarget(File file, long stamp, long clock, Lists lists) {}
+
+    private record Lists(List<TodoTask> tasks, List<ItemId> recents, List<Memento> undo) {
+        static Lists of(LibraryRepository repo) {
+            return new Lists(List.copyOf(repo.taskQueue()), List.copyOf(repo.recentlyViewed()),
+                    List.copyOf(repo.undoStack()));
         }
     }
+    private volatile SaveTarget target;
 
-    // load library from binary file
-    public void loadFrom(File file, LibraryRepository repo) throws IOException, ClassNotFoundException {
-        try (FileInputStream fis = new FileInputStream(file);
-             DataInputStream dis = new DataInputStream(fis);
-             ObjectInputStream ois = new ObjectInputStream(fis)) {
+    public record SaveResult(boolean differential, int records) {}
 
-            // check file header
-            String magic = dis.readUTF();
-            int ver = dis.readInt();
-            if (!MAGIC.equals(magic)) {
-                throw new IOException("Not a Smart Collections file.");
+    // a written snapshot whose search index segment still waits to be swapped in (see install)
+    record Snapshot(long stamp, Path segmentTmp, Path segmentFile, long indexVersion) {}
+
+    // one snapshot at a time: they share the mapped bodies being copied and the temp files
+    private static final Object SNAPSHOT_LOCK = new Object();
+
+    // search index segment saved next to the library file
+    public static Path segmentPathFor(File file) {
+        return Path.of(file.getPath() + ".idx");
+    }
+
+    // changes saved on top of a library file, replayed over it on load
+    public static Path deltaPathFor(File file) {
+        return Path.of(file.getPath() + ".delta");
+    }
+
+    public long saveTo(File file, LibraryRepository repo) throws IOException {
+        return saveTo(file, repo, DEFAULT_CODEC);
+    }
+
+    // save library to binary file, then the file content it indexed and its
+    // search index as a segment. All carry the same random stamp so a
+    // mismatched set is detected on load; the journal uses it too. Returns the stamp.
+    // Holds the read lock while writing, so edits from other threads wait instead of tearing
+    // the files; the segment is swapped in under the write lock afterwards.
+    public long saveTo(File file, LibraryRepository repo, LibraryCodec codec) throws IOException {
+        Snapshot snap = underReadLock(repo, () -> snapshot(file, repo, codec));
+        install(snap, repo);
+        return snap.stamp();
+    }
+
+    /**
+     * Write the library and its content store over the old ones, and the
+     * search index to a temp segment beside them. The caller holds the
+     * read lock and passes the result to install() once it is released.
+     * The library file may be mapped (descriptions left on disk), so it is
+     * replaced through TextStore; the index segment in use can only be
+     * replaced once no search is reading it, which is install's job.
+     */
+    Snapshot snapshot(File file, LibraryRepository repo, LibraryCodec codec) throws IOException {
+        synchronized (SNAPSHOT_LOCK) {
+            long stamp = ThreadLocalRandom.current().nextLong();
+            Path tmp = Path.of(file.getPath() + ".tmp");
+            LibraryFormat.Written written = LibraryFormat.write(tmp, repo, stamp, codec);
+            TextStore.replace(tmp, file.toPath(), written.bodyPosition(), written.bodyLength(), written.moved());
+
+            // the library itself is safe at this point; without a segment the next load just reindexes
+            Path segmentFile = segmentPathFor(file);
+            Path segmentTmp = Path.of(segmentFile + "." + Long.toHexString(stamp) + ".tmp");
+            try {
+                // the segment holds content postings, so it is only written once their source is
+                repo.content().write(ContentStore.pathFor(file), stamp, repo.fieldIndex()::hasPath);
+                long version = repo.keywordIndex().version();
+                IndexSegment.writeTo(segmentTmp, repo.keywordIndex(), stamp);
+                return new Snapshot(stamp, segmentTmp, segmentFile, version);
+            } catch (IOException ex) {
+                System.err.println("Search index not saved: " + ex.getMessage());
+                Files.deleteIfExists(segmentTmp);
+                return new Snapshot(stamp, null, segmentFile, 0);
             }
-            if (ver > VERSION) {
-                throw new IOException("Unsupported version: " + ver);
+        }
+    }
+
+    /**
+     * Second half of a snapshot, without the read lock held: take the write
+     * lock, read the index from the new segment instead of the old one and
+     * move it into place. If the index changed in between, the new segment
+     * no longer matches it and is dropped (the next load then reindexes).
+     */
+    void install(Snapshot snap, LibraryRepository repo) {
+        if (snap.segmentTmp() == null) return;
+        repo.write(() -> {
+            KeywordIndex kw = repo.keywordIndex();
+            IndexSegment seg = kw.version() == snap.indexVersion()
+                    ? IndexSegment.open(snap.segmentTmp(), snap.stamp()) : null;
+            try {
+                if (seg == null || !kw.rebase(seg, snap.indexVersion())) {
+                    if (seg != null) seg.close();
+                    Files.deleteIfExists(snap.segmentTmp());
+                    return;
+                }
+                // the mapping follows the file through the rename
+                Files.move(snap.segmentTmp(), snap.segmentFile(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                System.err.println("Search index not saved: " + ex.getMessage());
             }
+        });
+    }
+
+    public SaveResult saveChanges(File file, LibraryRepository repo) throws IOException {
+        return saveChanges(file, repo, DEFAULT_CODEC);
+    }
+
+    /**
+     * Save only what changed since this file was last loaded or fully saved:
+     * added/removed items in full, edited items as just their changed fields,
+     * plus tasks, recents and undo. The records go to the file's delta log, so
+     * the cost follows the edit, not the library. Falls back to a full save
+     * for another file, a file replaced behind our back, or a delta that has
+     * grown past a quarter of the library file; the codec applies to that
+     * full save (the delta itself is written uncompressed). Like saveTo it
+     * holds the read lock while it writes.
+     */
+    public SaveResult saveChanges(File file, LibraryRepository repo, LibraryCodec codec) throws IOException {
+        long[] clock = {0};
+        Snapshot[] full = {null};
+        SaveResult saved = underReadLock(repo, () -> {
+            clock[0] = Item.clock();
+            return writeChanges(file, repo, codec, clock[0], full);
+        });
+        if (full[0] != null) install(full[0], repo);
+        repo.write(() -> repo.forgetMembershipChanges(clock[0]));
+        return saved;
+    }
+
+    // full[0] is set when it falls back to a full save, which the caller installs
+    private SaveResult writeChanges(File file, LibraryRepository repo, LibraryCodec codec, long clock,
+                                    Snapshot[] full) throws IOException {
+        SaveTarget t = target;
+        Path delta = deltaPathFor(file);
+
+        boolean differential = t != null && t.stamp() != 0 && t.file().equals(file) && file.exists()
+                && LibraryFormat.readStamp(file.toPath()) == t.stamp()
+                && (!Files.exists(delta) || Files.size(delta) < file.length() / DELTA_FRACTION);
+        if (!differential) {
+            full[0] = snapshot(file, repo, codec);
+            Files.deleteIfExists(delta);
+            target = new SaveTarget(file, full[0].stamp(), clock, Lists.of(repo));
+            return new SaveResult(false, repo.size());
+        }
+
+        int[] records = {0};
+        Lists now = Lists.of(repo);
+        Journal log = Journal.open(delta, file, t.stamp(), this, null, null);
+        try {
+            log.batch(() -> {
+                Set<ItemId> membership = new HashSet<>(repo.membershipChangedSince(t.clock()));
+                for (ItemId id : membership) {
+                    Optional<Item> it = repo.find(id);
+                    if (it.isPresent()) {
+                        log.itemPut(it.get());
+                    } else {
+                        log.itemDeleted(id);
+                    }
+                    records[0]++;
+                }
+                for (ItemId id : repo.editedSince(t.clock())) {
+                    if (membership.contains(id)) continue;
+                    Optional<Item> it = repo.find(id);
+                    if (it.isPresent()) {
+                        log.itemFieldsChanged(it.get(), it.get().changedFields());
+                        records[0]++;
+                    }
+                }
+                records[0] += logListChanges(log, t.lists(), now);
+            });
+            if (log.isDamaged()) throw new IOException("Could not write " + delta.getFileName());
+        } finally {
+            log.close();
+        }
+        target = new SaveTarget(file, t.stamp(), clock, now);
+        return new SaveResult(true, records[0]);
+    }
 
-            LibraryRepository loaded = (LibraryRepository) ois.readObject();
+    /**
+     * Log how tasks, recents and the undo stack got from saved to now: the
+     * stacks as pops down to the part they still share plus pushes, tasks as
+     * removals and additions. Only recents popped (nothing does that today)
+     * need the lists written out whole. Returns the number of records.
+     */
+    private static int logListChanges(Journal log, Lists saved, Lists now) {
+        int keptRecents = sharedBottom(saved.recents(), now.recents(), Object::equals);
+        if (keptRecents < saved.recents().size()) {
+            log.listsReplaced(now.tasks(), now.recents(), now.undo());
+            return 1;
+        }
+        int records = 0;
+        for (int i = now.recents().size() - keptRecents - 1; i >= 0; i--) {
+            log.recentPushed(now.recents().get(i));
+            records++;
+        }
 
-            // copy data into existing repo instance
-            repo.all().clear();
-            repo.all().addAll(loaded.all());
+        int keptUndo = sharedBottom(saved.undo(), now.undo(), (a, b) -> a == b);
+        for (int i = keptUndo; i < saved.undo().size(); i++) {
+            log.undoPopped();
+            records++;
+        }
+        for (int i = now.undo().size() - keptUndo - 1; i >= 0; i--) {
+            log.undoPushed(now.undo().get(i));
+            records++;
+        }
 
-            repo.recentlyViewed().clear();
-            repo.recentlyViewed().addAll(loaded.recentlyViewed());
+        List<TodoTask> removed = new ArrayList<>(saved.tasks());
+        List<TodoTask> added = new ArrayList<>();
+        for (TodoTask t : now.tasks()) {
+            if (!removed.removeIf(new SameTask(t))) added.add(t);
+        }
+        removed.forEach(log::taskRemoved);
+        added.forEach(log::taskAdded);
+        return records + removed.size() + added.size();
+    }
 
-            repo.undoStack().clear();
-            repo.undoStack().addAll(loaded.undoStack());
+    // how many entries at the bottom of two top-first stacks are the same
+    private static <T> int sharedBottom(List<T> a, List<T> b, BiPredicate<T, T> same) {
+        int n = 0;
+        for (int i = a.size() - 1, j = b.size() - 1; i >= 0 && j >= 0 && same.test(a.get(i), b.get(j)); i--, j--) {
+            n++;
+        }
+        return n;
+    }
 
-            repo.taskQueue().clear();
-            repo.taskQueue().addAll(loaded.taskQueue());
+    // matches the first task equal to t, once
+    private static final class SameTask implements Predicate<TodoTask> {
+        private final TodoTask t;
+        private boolean found;
 
+        SameTask(TodoTask t) {
+            this.t = t;
+        }
+
+        @Override
+        public boolean test(TodoTask other) {
+            if (found || !Journal.sameTask(t, other)) return false;
+            found = true;
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Save<T> {
+        T run() throws IOException;
+    }
+
+    // the read lock is reentrant, so this also works from inside repo.read (Journal.compact)
+    private static <T> T underReadLock(LibraryRepository repo, Save<T> save) throws IOException {
+        IOException[] failure = {null};
+        T result = repo.read(() -> {
+            try {
+                return save.run();
+            } catch (IOException ex) {
+                failure[0] = ex;
+                return null;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return result;
+    }
+
+    /**
+     * Second half of a load, after IndexService.ensureIndexed: replay the
+     * file's delta if it belongs to this snapshot, and remember the file so
+     * the next saveChanges to it can be differential.
+     */
+    public void loadChanges(File file, long stamp, LibraryRepository repo, IndexService index) throws IOException {
+        Path delta = deltaPathFor(file);
+        if (stamp != 0 && Files.exists(delta)) {
+            Journal.open(delta, file, stamp, this, repo, index).close();
+        }
+        repo.write(() -> {
+            long clock = Item.clock();
+            target = new SaveTarget(file, stamp, clock, Lists.of(repo));
+            repo.forgetMembershipChanges(clock);
+        });
+    }
+
+    // load library from binary file (current format, or an older serialized one); returns its stamp
+    public long loadFrom(File file, LibraryRepository repo) throws IOException, ClassNotFoundException {
+        return loadFrom(file, repo, batch -> { });
+    }
+
+    /**
+     * Same, but hands the items to onItems in batches while the file is still
+     * being read (on the calling thread). The repository itself only changes
+     * once everything has been read.
+     */
+    public long loadFrom(File file, LibraryRepository repo, Consumer<List<Item>> onItems)
+            throws IOException, ClassNotFoundException {
+        Read read = read(file, onItems);
+        // copy data into existing repo instance (blocks searches while swapping);
+        // the caller finishes the index with IndexService.ensureIndexed
+        repo.write(() -> swapIn(read, repo));
+        return read.contents().stamp();
+    }
+
+    /**
+     * A whole load while the app is running: read the file, then swap it in,
+     * index it and replay its delta under one write-lock hold, so no other
+     * thread ever sees items the index doesn't match yet. Returns the stamp.
+     */
+    public long loadIndexed(File file, LibraryRepository repo, IndexService index)
+            throws IOException, ClassNotFoundException {
+        Read read = read(file, batch -> { });
+        long stamp = read.contents().stamp();
+        IOException[] failure = {null};
+        repo.write(() -> {
+            swapIn(read, repo);
+            index.ensureIndexed(repo);
+            try {
+                loadChanges(file, stamp, repo, index);
+            } catch (IOException ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return stamp;
+    }
+
+    // a library file read into memory, not yet in the repository
+    private record Read(LibraryFormat.Contents contents, ContentStore content, IndexSegment segment) {}
+
+    private Read read(File file, Consumer<List<Item>> onItems) throws IOException, ClassNotFoundException {
+        LibraryFormat.Contents loaded;
+        if (isLegacy(file)) {
+            loaded = readLegacy(file);
+            onItems.accept(List.copyOf(loaded.items()));
+        } else {
+            loaded = LibraryFormat.read(file.toPath(), onItems);
+        }
+        ContentStore content = loaded.stamp() != 0 ? ContentStore.read(ContentStore.pathFor(file), loaded.stamp()) : null;
+        // postings of content we no longer have would never be removed; reindex instead
+        IndexSegment segment = content != null ? IndexSegment.open(segmentPathFor(file), loaded.stamp()) : null;
+        return new Read(loaded, content, segment);
+    }
+
+    // with the write lock held
+    private static void swapIn(Read read, LibraryRepository repo) {
+        LibraryFormat.Contents loaded = read.contents();
+        repo.clearItems();
+        loaded.items().forEach(repo::add);
+
+        repo.recentlyViewed().clear();
+        repo.recentlyViewed().addAll(loaded.recents());
+
+        repo.undoStack().clear();
+        repo.undoStack().addAll(loaded.undo());
+
+        repo.taskQueue().clear();
+        repo.taskQueue().addAll(loaded.tasks());
+
+        if (read.content() != null) {
+            repo.content().replaceWith(read.content());
+        } else {
+            repo.content().clear();
+        }
+        if (read.segment() != null) {
+            repo.keywordIndex().attach(read.segment());
+        } else {
             repo.keywordIndex().clear();
-            repo.keywordIndex().putAll(loaded.keywordIndex());
+        }
+        repo.fieldIndex().clear();
+        repo.tagFrequency().clear();
+    }
 
-            repo.tagFrequency().clear();
-            repo.tagFrequency().putAll(loaded.tagFrequency());
+    // older files start with a Java serialization stream header
+    private static boolean isLegacy(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 2 && in.readUnsignedShort() == SERIALIZATION_MAGIC;
+        }
+    }
+
+    private LibraryFormat.Contents readLegacy(File file) throws IOException, ClassNotFoundException {
+        try (FileInputStream fis = new FileInputStream(file);
+             DataInputStream dis = new DataInputStream(fis);
+             ObjectInputStream ois = new LegacyLibraryRepository.Input(fis)) {
+
+            // check file header
+            String magic = dis.readUTF();
+            int ver = dis.readInt();
+            if (!LEGACY_MAGIC.equals(magic)) {
+                throw new IOException("Not a Smart Collections file.");
+            }
+            if (ver > LEGACY_VERSION) {
+                throw new IOException("Unsupported version: " + ver);
+            }
+            long stamp = ver >= 2 ? dis.readLong() : 0;
+
+            // version 1 files may hold the first release's repository class
+            Object loaded = ois.readObject();
+            if (loaded instanceof LegacyLibraryRepository first) {
+                return first.toContents(stamp);
+            }
+            LibraryRepository repo = (LibraryRepository) loaded;
+            return new LibraryFormat.Contents(stamp, new ArrayList<>(repo.all()),
+                    new ArrayList<>(repo.taskQueue()), new ArrayList<>(repo.recentlyViewed()),
+                    new ArrayList<>(repo.undoStack()));
         }
     }
 }
@@ -0,0 +1,404 @@
+// src/main/java/org/example/PostingList.java
+package org.example;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.IntPredicate;
+
+/**
+ * Sorted set of dense item ordinals for one term, with a small term
+ * frequency per entry.
+ *
+ * Small lists are a sorted int[]; once a list gets dense enough that a
+ * bitmap over [0, maxOrdinal] is smaller, it switches to a long[] bitmap
+ * (and back again when it shrinks). Same idea as a single Roaring container.
+ *
+ * Frequencies are one unsigned byte per entry (saturating at 255), stored in
+ * ordinal order so the i-th set bit / array slot owns freqs[i]. Lists where
+ * every frequency is 1 (e.g. results of and/or) don't allocate them at all.
+ */
+public final class PostingList implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    public static final int MAX_FREQ = 255;
+
+    // array form
+    private int[] ords;
+    // bitmap form (null while in array form)
+    private long[] words;
+    // per-entry frequency, null means "all 1"
+    private byte[] freqs;
+    private int size;
+
+    public PostingList() {
+        this.ords = new int[2];
+    }
+
+    private PostingList(int[] ords, long[] words, int size) {
+        this.ords = ords;
+        this.words = words;
+        this.size = size;
+    }
+
+    // build from ordinals already in ascending order (freqs may be null = all 1)
+    static PostingList ofSorted(int[] sortedOrds, byte[] freqs, int n) {
+        PostingList p = new PostingList(sortedOrds.length < 2 ? Arrays.copyOf(sortedOrds, 2) : sortedOrds, null, n);
+        p.freqs = freqs;
+        if (n > 0 && preferBitmap(n, sortedOrds[n - 1])) p.convertToBitmap();
+        return p;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int ord) {
+        if (words != null) {
+            int w = ord >>> 6;
+            return w < words.length && (words[w] & (1L << ord)) != 0;
+        }
+        return Arrays.binarySearch(ords, 0, size, ord) >= 0;
+    }
+
+    // frequency of an ordinal, 0 if absent
+    public int freq(int ord) {
+        int rank = indexOf(ord);
+        if (rank < 0) return 0;
+        return freqs == null ? 1 : freqs[rank] & 0xFF;
+    }
+
+    public boolean add(int ord) {
+        return add(ord, 1);
+    }
+
+    // returns true if the ordinal was not there yet; otherwise updates its frequency
+    public boolean add(int ord, int freq) {
+        int f = Math.max(1, Math.min(MAX_FREQ, freq));
+
+        int rank = indexOf(ord);
+        if (rank >= 0) {
+            setFreqAt(rank, f);
+            return false;
+        }
+        rank = -(rank + 1);
+
+        if (words != null) {
+            int w = ord >>> 6;
+            if (w >= words.length) {
+                words = Arrays.copyOf(words, w + 1 + (w >>> 3));
+            }
+            words[w] |= 1L << ord;
+        } else {
+            if (size == ords.length) {
+                ords = Arrays.copyOf(ords, ords.length * 2);
+            }
+            System.arraycopy(ords, rank, ords, rank + 1, size - rank);
+            ords[rank] = ord;
+        }
+        insertFreqAt(rank, f);
+        size++;
+
+        if (words == null && preferBitmap(size, ords[size - 1])) convertToBitmap();
+        return true;
+    }
+
+    // returns true if the ordinal was present
+    public boolean remove(int ord) {
+        int rank = indexOf(ord);
+        if (rank < 0) return false;
+
+        if (words != null) {
+            words[ord >>> 6] &= ~(1L << ord);
+        } else {
+            System.arraycopy(ords, rank + 1, ords, rank, size - rank - 1);
+        }
+        if (freqs != null) {
+            System.arraycopy(freqs, rank + 1, freqs, rank, size - rank - 1);
+        }
+        size--;
+
+        if (words != null && preferArray(size, words.length * 64 - 1)) convertToArray();
+        return true;
+    }
+
+    // smallest ordinal >= from, or -1
+    public int nextOrdinal(int from) {
+        if (words != null) {
+            int w = from >>> 6;
+            if (w >= words.length) return -1;
+            long word = words[w] & (-1L << from);
+            while (true) {
+                if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+                if (++w == words.length) return -1;
+                word = words[w];
+            }
+        }
+        int pos = Arrays.binarySearch(ords, 0, size, from);
+        if (pos < 0) pos = -(pos + 1);
+        return pos < size ? ords[pos] : -1;
+    }
+
+    public void forEach(OrdinalConsumer action) {
+        if (words != null) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) action.accept(ords[i]);
+        }
+    }
+
+    public void forEachWithFreq(FreqConsumer action) {
+        if (words != null) {
+            int rank = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    int f = freqs == null ? 1 : freqs[rank] & 0xFF;
+                    action.accept((w << 6) + Long.numberOfTrailingZeros(word), f);
+                    word &= word - 1;
+                    rank++;
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                action.accept(ords[i], freqs == null ? 1 : freqs[i] & 0xFF);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] out = new int[size];
+        int[] n = {0};
+        forEach(ord -> out[n[0]++] = ord);
+        return out;
+    }
+
+    // ====== set algebra (results carry no frequencies) ======
+
+    public static PostingList and(PostingList a, PostingList b) {
+        if (a.words != null && b.words != null) {
+            long[] w = new long[Math.min(a.words.length, b.words.length)];
+            int card = 0;
+            for (int i = 0; i < w.length; i++) {
+                w[i] = a.words[i] & b.words[i];
+                card += Long.bitCount(w[i]);
+            }
+            return fromWords(w, card);
+        }
+        // walk the smaller list and probe the other one
+        PostingList small = a.size <= b.size ? a : b;
+        PostingList big = small == a ? b : a;
+        PostingList out = new PostingList();
+        small.forEach(ord -> {
+            if (big.contains(ord)) out.appendSorted(ord);
+        });
+        return out;
+    }
+
+    public static PostingList or(PostingList a, PostingList b) {
+        if (a.words != null || b.words != null) {
+            int max = Math.max(a.maxOrdinal(), b.maxOrdinal());
+            long[] w = new long[(max >>> 6) + 1];
+            a.orInto(w);
+            b.orInto(w);
+            int card = 0;
+            for (long word : w) card += Long.bitCount(word);
+            return fromWords(w, card);
+        }
+        // merge two sorted arrays
+        int[] out = new int[Math.max(2, a.size + b.size)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.size && j < b.size) {
+            int x = a.ords[i], y = b.ords[j];
+            if (x == y) { out[n++] = x; i++; j++; }
+            else if (x < y) { out[n++] = x; i++; }
+            else { out[n++] = y; j++; }
+        }
+        while (i < a.size) out[n++] = a.ords[i++];
+        while (j < b.size) out[n++] = b.ords[j++];
+        PostingList merged = new PostingList(out, null, n);
+        if (n > 0 && preferBitmap(n, out[n - 1])) merged.convertToBitmap();
+        return merged;
+    }
+
+    // union of many lists at once (one pass into a bitmap instead of pairwise merges)
+    public static PostingList union(Collection<PostingList> lists) {
+        int max = -1;
+        for (PostingList p : lists) max = Math.max(max, p.maxOrdinal());
+        if (max < 0) return new PostingList();
+
+        long[] w = new long[(max >>> 6) + 1];
+        for (PostingList p : lists) p.orInto(w);
+        int card = 0;
+        for (long word : w) card += Long.bitCount(word);
+        return fromWords(w, card);
+    }
+
+    // keep only the entries a test accepts
+    public PostingList filter(IntPredicate keep) {
+        PostingList out = new PostingList();
+        forEach(ord -> {
+            if (keep.test(ord)) out.appendSorted(ord);
+        });
+        return out;
+    }
+
+    public static PostingList andNot(PostingList a, PostingList b) {
+        PostingList out = new PostingList();
+        a.forEach(ord -> {
+            if (!b.contains(ord)) out.appendSorted(ord);
+        });
+        return out;
+    }
+
+    public PostingList copy() {
+        PostingList p = words != null
+                ? new PostingList(null, words.clone(), size)
+                : new PostingList(Arrays.copyOf(ords, Math.max(size, 2)), null, size);
+        p.freqs = freqs == null ? null : Arrays.copyOf(freqs, Math.max(size, 2));
+        return p;
+    }
+
+    // rough heap footprint of the payload, for diagnostics
+    public long sizeInBytes() {
+        long bytes = words != null ? 8L * words.length : 4L * ords.length;
+        return bytes + (freqs == null ? 0 : freqs.length);
+    }
+
+    // ====== internals ======
+
+    // index of ord in ordinal order if present, else -(insertion point + 1)
+    private int indexOf(int ord) {
+        if (words != null) {
+            int w = ord >>> 6;
+            if (w >= words.length) return -(size + 1);
+            // count set bits from whichever end is closer (appends are the common case)
+            int rank;
+            if (w < words.length / 2) {
+                rank = 0;
+                for (int i = 0; i < w; i++) rank += Long.bitCount(words[i]);
+                rank += Long.bitCount(words[w] & ((1L << ord) - 1));
+            } else {
+                int above = 0;
+                for (int i = w + 1; i < words.length; i++) above += Long.bitCount(words[i]);
+                above += Long.bitCount(words[w] & (-1L << ord));
+                rank = size - above;
+            }
+            return (words[w] & (1L << ord)) != 0 ? rank : -(rank + 1);
+        }
+        // new ordinals are usually the largest, so try the cheap append first
+        if (size == 0 || ords[size - 1] < ord) return -(size + 1);
+        return Arrays.binarySearch(ords, 0, size, ord);
+    }
+
+    private void setFreqAt(int rank, int f) {
+        if (freqs == null) {
+            if (f == 1) return;
+            freqs = new byte[Math.max(size, 2)];
+            Arrays.fill(freqs, 0, size, (byte) 1);
+        }
+        freqs[rank] = (byte) f;
+    }
+
+    // called before size is incremented
+    private void insertFreqAt(int rank, int f) {
+        if (freqs == null) {
+            if (f == 1) return;
+            freqs = new byte[Math.max(size + 1, 2)];
+            Arrays.fill(freqs, 0, size, (byte) 1);
+        } else if (size == freqs.length) {
+            freqs = Arrays.copyOf(freqs, Math.max(2, freqs.length * 2));
+        }
+        System.arraycopy(freqs, rank, freqs, rank + 1, size - rank);
+        freqs[rank] = (byte) f;
+    }
+
+    private int maxOrdinal() {
+        if (size == 0) return -1;
+        if (words == null) return ords[size - 1];
+        for (int w = words.length - 1; w >= 0; w--) {
+            if (words[w] != 0) return (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+        }
+        return -1;
+    }
+
+    private void orInto(long[] target) {
+        if (words != null) {
+            int n = Math.min(words.length, target.length);
+            for (int i = 0; i < n; i++) target[i] |= words[i];
+        } else {
+            for (int i = 0; i < size; i++) target[ords[i] >>> 6] |= 1L << ords[i];
+        }
+    }
+
+    // only valid while building a frequency-less list in ascending order
+    private void appendSorted(int ord) {
+        if (words != null) {
+            add(ord);
+            return;
+        }
+        if (size == ords.length) ords = Arrays.copyOf(ords, ords.length * 2);
+        ords[size++] = ord;
+        if (preferBitmap(size, ord)) convertToBitmap();
+    }
+
+    // bitmap costs maxOrd/8 bytes, array costs 4 bytes per entry
+    private static boolean preferBitmap(int card, int maxOrd) {
+        return card > 64 && (maxOrd >>> 3) < 4L * card;
+    }
+
+    // only switch back once the array would be clearly smaller, so a list
+    // sitting on the boundary doesn't flip on every add/remove
+    private static boolean preferArray(int card, int maxOrd) {
+        return (maxOrd >>> 3) > 8L * card;
+    }
+
+    private static PostingList fromWords(long[] w, int card) {
+        PostingList p = new PostingList(null, w, card);
+        if (!preferBitmap(card, w.length * 64 - 1)) p.convertToArray();
+        return p;
+    }
+
+    private void convertToBitmap() {
+        long[] w = new long[(ords[size - 1] >>> 6) + 1];
+        for (int i = 0; i < size; i++) w[ords[i] >>> 6] |= 1L << ords[i];
+        words = w;
+        ords = null;
+    }
+
+    private void convertToArray() {
+        int[] out = new int[Math.max(size, 2)];
+        int n = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                out[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        ords = out;
+        words = null;
+    }
+
+    @FunctionalInterface
+    public interface OrdinalConsumer {
+        void accept(int ord);
+    }
+
+    @FunctionalInterface
+    public interface FreqConsumer {
+        void accept(int ord, int freq);
+    }
+}
@@ -0,0 +1,199 @@
+// src/main/java/org/example/QueryParser.java
+package org.example;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a search string into free-text words and structured clauses.
+ *
+ * Supported clauses:
+ *   tag:piano   tag:"study notes"   category:audio   kind:video
+ *   rating>=4   rating<2   rating:5
+ *   created:2024   created:2024-03   created:2024-01-01..2024-06-30
+ *   created>=2024-05-01   created:..2023-12
+ *   codec:aac   duration>=3:00   duration<90   duration:1:00..5:00
+ * Anything else is a keyword (with the usual + * ~ markers).
+ */
+public final class QueryParser {
+
+    private static final Pattern FIELD = Pattern.compile("(tag|category|kind|codec):(.+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COMPARE = Pattern.compile("(rating|created|duration)(>=|<=|>|<|=|:)(.+)");
+
+    public record Parsed(List<String> words, List<FieldFilter> filters) {}
+
+    private QueryParser() {
+    }
+
+    public static Parsed parse(String query) {
+        return parse(query, false);
+    }
+
+    // lenient: a clause that doesn't parse yet (category:au, created:2024-0) is
+    // left out instead of failing, so a half-typed query still searches
+    public static Parsed parse(String query, boolean lenient) {
+        List<String> words = new ArrayList<>();
+        List<FieldFilter> filters = new ArrayList<>();
+
+        for (String token : tokenize(query)) {
+            FieldFilter f;
+            try {
+                f = toFilter(token);
+            } catch (IllegalArgumentException ex) {
+                if (!lenient) throw ex;
+                continue;
+            }
+            if (f != null) {
+                filters.add(f);
+            } else {
+                words.add(token.toLowerCase(Locale.ROOT));
+            }
+        }
+        return new Parsed(words, filters);
+    }
+
+    // true for tokens like "tag:x" or "rating>=3" (no prefix/fuzzy expansion for those)
+    public static boolean isFieldClause(String token) {
+        String t = token.toLowerCase(Locale.ROOT);
+        return FIELD.matcher(t).matches() || COMPARE.matcher(t).matches();
+    }
+
+    // whitespace-separated, but "double quoted parts" stay together
+    static List<String> tokenize(String query) {
+        List<String> out = new ArrayList<>();
+        if (query == null) return out;
+
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!cur.isEmpty()) out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        if (!cur.isEmpty()) out.add(cur.toString());
+        return out;
+    }
+
+    private static FieldFilter toFilter(String token) {
+        Matcher m = FIELD.matcher(token);
+        if (m.matches() && !m.group(2).isBlank()) {
+            String field = m.group(1).toLowerCase(Locale.ROOT);
+            String value = m.group(2).trim();
+            return switch (field) {
+                case "tag" -> new FieldFilter.Tag(value);
+                case "category" -> new FieldFilter.Category(enumValue(ItemCategory.class, value, "category"));
+                case "codec" -> new FieldFilter.Codec(value);
+                default -> new FieldFilter.Kind(enumValue(MediaKind.class, value, "kind"));
+            };
+        }
+
+        m = COMPARE.matcher(token.toLowerCase(Locale.ROOT));
+        if (!m.matches()) return null;
+
+        String op = m.group(2);
+        String value = m.group(3).trim();
+        if (m.group(1).equals("rating")) {
+            int n;
+            try {
+                n = Integer.parseInt(value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Rating must be a number: " + value);
+            }
+            return switch (op) {
+                case ">=" -> new FieldFilter.Rating(n, FieldIndex.MAX_RATING);
+                case ">" -> new FieldFilter.Rating(n + 1, FieldIndex.MAX_RATING);
+                case "<=" -> new FieldFilter.Rating(0, n);
+                case "<" -> new FieldFilter.Rating(0, n - 1);
+                default -> new FieldFilter.Rating(n, n);
+            };
+        }
+
+        if (m.group(1).equals("duration")) {
+            if (op.equals(":") || op.equals("=")) {
+                int dots = value.indexOf("..");
+                if (dots < 0) {
+                    int s = seconds(value);
+                    return new FieldFilter.Duration(s, s);
+                }
+                String from = value.substring(0, dots);
+                String to = value.substring(dots + 2);
+                return new FieldFilter.Duration(from.isEmpty() ? 0 : seconds(from),
+                        to.isEmpty() ? Integer.MAX_VALUE : seconds(to));
+            }
+            int s = seconds(value);
+            return switch (op) {
+                case ">=" -> new FieldFilter.Duration(s, Integer.MAX_VALUE);
+                case ">" -> new FieldFilter.Duration(s + 1, Integer.MAX_VALUE);
+                case "<=" -> new FieldFilter.Duration(0, s);
+                default -> new FieldFilter.Duration(0, s - 1);
+            };
+        }
+
+        // created: ranges are whole days; a bare year or month covers all of it
+        if (op.equals(":") || op.equals("=")) {
+            int dots = value.indexOf("..");
+            if (dots < 0) {
+                long[] d = dateSpan(value);
+                return new FieldFilter.Created(d[0], d[1]);
+            }
+            String from = value.substring(0, dots);
+            String to = value.substring(dots + 2);
+            long fromDay = from.isEmpty() ? Long.MIN_VALUE : dateSpan(from)[0];
+            long toDay = to.isEmpty() ? Long.MAX_VALUE : dateSpan(to)[1];
+            return new FieldFilter.Created(fromDay, toDay);
+        }
+        long[] d = dateSpan(value);
+        return switch (op) {
+            case ">=" -> new FieldFilter.Created(d[0], Long.MAX_VALUE);
+            case ">" -> new FieldFilter.Created(d[1] + 1, Long.MAX_VALUE);
+            case "<=" -> new FieldFilter.Created(Long.MIN_VALUE, d[1]);
+            default -> new FieldFilter.Created(Long.MIN_VALUE, d[0] - 1);
+        };
+    }
+
+    // 90 (seconds), 3:30 or 1:02:00
+    private static int seconds(String s) {
+        if (!s.matches("\\d+(:\\d{1,2}){0,2}")) {
+            throw new IllegalArgumentException("Duration must be seconds, m:ss or h:mm:ss: " + s);
+        }
+        int total = 0;
+        for (String part : s.split(":")) total = total * 60 + Integer.parseInt(part);
+        return total;
+    }
+
+    // first and last epoch day covered by 2024 / 2024-03 / 2024-03-15
+    private static long[] dateSpan(String s) {
+        try {
+            if (s.matches("\\d{4}")) {
+                int y = Integer.parseInt(s);
+                return new long[]{LocalDate.of(y, 1, 1).toEpochDay(), LocalDate.of(y, 12, 31).toEpochDay()};
+            }
+            if (s.matches("\\d{4}-\\d{1,2}")) {
+                YearMonth ym = YearMonth.parse(s.length() == 7 ? s : s.substring(0, 5) + "0" + s.substring(5));
+                return new long[]{ym.atDay(1).toEpochDay(), ym.atEndOfMonth().toEpochDay()};
+            }
+            long day = LocalDate.parse(s).toEpochDay();
+            return new long[]{day, day};
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Not a date (use YYYY, YYYY-MM or YYYY-MM-DD): " + s);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String value, String field) {
+        for (E e : type.getEnumConstants()) {
+            if (e.name().equalsIgnoreCase(value)) return e;
+        }
+        throw new IllegalArgumentException("Unknown " + field + ": " + value
+                + " (one of " + Arrays.toString(type.getEnumConstants()).toLowerCase(Locale.ROOT) + ")");
+    }
+}
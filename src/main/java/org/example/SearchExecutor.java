@@ -0,0 +1,77 @@
+// src/main/java/org/example/SearchExecutor.java
+package org.example;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs searches on virtual threads, one query at a time.
+ *
+ * Submitting a new query interrupts the one in flight, and a result is only
+ * handed to the publisher (Platform::runLater in the UI) if no newer query
+ * has been submitted since, so stale results never overwrite fresh ones.
+ */
+public class SearchExecutor {
+
+    private final LibraryRepository repo;
+    private final Executor publisher;
+    private final ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+
+    // bumped on every submit/cancel; a task only publishes if it is still current
+    private final AtomicLong generation = new AtomicLong();
+    private Future<?> inFlight;
+
+    public SearchExecutor(LibraryRepository repo, Executor publisher) {
+        this.repo = repo;
+        this.publisher = publisher;
+    }
+
+    public synchronized <T> void submit(Supplier<T> work, Consumer<T> onDone, Consumer<Exception> onError) {
+        if (inFlight != null) {
+            inFlight.cancel(true);
+        }
+        long gen = generation.incrementAndGet();
+
+        inFlight = pool.submit(() -> {
+            T result;
+            try {
+                // read lock: edits on the FX thread wait for us, not the other way round
+                result = repo.read(work);
+            } catch (CancellationException ex) {
+                return;
+            } catch (Exception ex) {
+                publishIfCurrent(gen, () -> onError.accept(ex));
+                return;
+            }
+            publishIfCurrent(gen, () -> onDone.accept(result));
+        });
+    }
+
+    // drop whatever is running without replacing it
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        pool.shutdownNow();
+    }
+
+    private void publishIfCurrent(long gen, Runnable action) {
+        if (generation.get() != gen) return;
+        publisher.execute(() -> {
+            // check again on the publishing thread, a newer query may have arrived meanwhile
+            if (generation.get() == gen) action.run();
+        });
+    }
+}
@@ -2,37 +2,289 @@
 package org.example;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 public class SearchService {
 
-    // search and rank results by relevance
+    // how many dictionary terms a single "prefix*" word may expand to
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    // how many prefix matches we look at when ranking suggestions
+    private static final int SUGGEST_SCAN_LIMIT = 2_000;
+
+    // BM25 parameters (the usual defaults)
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // a completed term scores slightly below the word the user actually typed
+    private static final double PREFIX_WEIGHT = 0.8;
+
+    // 2 edits score below 1 edit (and both below the word as typed, see topK)
+    private static final double[] FUZZY_WEIGHTS = {1.0, 0.6, 0.35};
+
+    // one page of ranked results plus how many matched overall
+    public record Page(List<ItemId> ids, int totalHits) {}
+
+    /**
+     * How much work a single misspelled word may cost: the largest edit
+     * distance allowed, how many dictionary terms get a full distance check,
+     * and how many close terms the word expands to.
+     */
+    public record FuzzyBudget(int maxEdits, int maxCandidates, int maxExpansions) {
+        public static final FuzzyBudget DEFAULT = new FuzzyBudget(2, 500, 16);
+        public static final FuzzyBudget OFF = new FuzzyBudget(0, 0, 0);
+    }
+
+    private FuzzyBudget fuzzy = FuzzyBudget.DEFAULT;
+
+    public void setFuzzyBudget(FuzzyBudget budget) {
+        this.fuzzy = budget == null ? FuzzyBudget.OFF : budget;
+    }
+
+    // search and rank every match by relevance
     public List<ItemId> rankedSearch(LibraryRepository repo, String query) {
-        if (query == null || query.isBlank()) return List.of();
-
-        String[] words = query.toLowerCase(Locale.ROOT).split("\\s+");
-        Map<ItemId, Integer> scoreMap = new HashMap<>();
-
-        // score each item based on keyword matches
-        for (String w : words) {
-            Set<ItemId> hits = repo.keywordIndex().get(w);
-            if (hits == null) continue;
-            for (ItemId id : hits) {
-                // boost score for popular tags
-                int scoreBump = 1 + repo.tagFrequency().getOrDefault(w, 0);
-                scoreMap.put(id, scoreMap.getOrDefault(id, 0) + scoreBump);
+        return topK(repo, query, Integer.MAX_VALUE, 0).ids();
+    }
+
+    // best k results after skipping `offset`, keeping only k + offset in memory
+    // words prefixed with '+' must appear in every result,
+    // words ending in '*' match every term starting with them,
+    // words ending in '~' also match close misspellings (unknown words always do),
+    // field clauses (tag:, category:, kind:, rating>=, created:, codec:, duration>=) filter the result (see QueryParser)
+    public Page topK(LibraryRepository repo, String query, int k, int offset) {
+        return topK(repo, query, k, offset, false);
+    }
+
+    private Page topK(LibraryRepository repo, String query, int k, int offset, boolean lenient) {
+        if (query == null || query.isBlank() || k <= 0) return new Page(List.of(), 0);
+
+        QueryParser.Parsed parsed = QueryParser.parse(query, lenient);
+        KeywordIndex kw = repo.keywordIndex();
+        List<PostingList> required = new ArrayList<>();
+        Map<String, Double> scored = new HashMap<>();
+        // per expanded word, the items that have it as typed (they rank above typo and prefix hits)
+        List<PostingList> typedHits = new ArrayList<>();
+        PostingList candidates = null;
+
+        for (String raw : parsed.words()) {
+            boolean must = raw.startsWith("+");
+            String w = must ? raw.substring(1) : raw;
+            if (w.isEmpty() || w.equals("*") || w.equals("~")) continue;
+            checkCancelled();
+
+            // resolve the word to one or more dictionary terms
+            Map<String, Double> terms = expand(kw, w);
+            if (terms.isEmpty()) {
+                // a required word nobody has means no results at all
+                if (must) return new Page(List.of(), 0);
+                continue;
             }
+
+            PostingList hits = null;
+            PostingList typed = null;
+            for (Map.Entry<String, Double> e : terms.entrySet()) {
+                PostingList p = kw.get(e.getKey());
+                hits = hits == null ? p : PostingList.or(hits, p);
+                if (e.getValue() >= 1.0) typed = typed == null ? p : PostingList.or(typed, p);
+            }
+            if (typed != null && typed.size() < hits.size()) typedHits.add(typed);
+            if (must) required.add(hits);
+            terms.forEach((t, weight) -> scored.merge(t, weight, Double::sum));
+
+            // candidates: union of all matching words
+            candidates = candidates == null ? hits : PostingList.or(candidates, hits);
+        }
+        // words were given but none of them matched anything
+        if (candidates == null && (!parsed.words().isEmpty() || parsed.filters().isEmpty())) {
+            return new Page(List.of(), 0);
         }
 
-        // sort results by score (highest first)
-        PriorityQueue<Map.Entry<ItemId,Integer>> pq =
-                new PriorityQueue<>((a,b) -> Integer.compare(b.getValue(), a.getValue()));
+        // narrow by required words, smallest first so the working set shrinks fastest
+        required.sort(Comparator.comparingInt(PostingList::size));
+        for (PostingList must : required) {
+            candidates = PostingList.and(candidates, must);
+        }
+
+        // field clauses: the planner starts from the most selective one
+        if (!parsed.filters().isEmpty()) {
+            checkCancelled();
+            candidates = repo.fieldIndex().plan(parsed.filters(), candidates);
+        }
+
+        checkCancelled();
+        double[] scores = bm25(kw, scored);
+        // rank in tiers: an item that has a word as typed goes above every one
+        // that only has its typos or completions, however rare those terms are
+        double tier = maxScore(kw, scored);
+        for (PostingList typed : typedHits) {
+            typed.forEach(ord -> scores[ord] += tier);
+        }
+        checkCancelled();
+        int[] best = selectTop(candidates, scores, (int) Math.min((long) k + offset, candidates.size()));
 
-        pq.addAll(scoreMap.entrySet());
+        List<ItemId> page = new ArrayList<>();
+        for (int i = offset; i < best.length; i++) {
+            page.add(kw.idAt(best[i]));
+        }
+        return new Page(page, candidates.size());
+    }
+
+    // search while the user is still typing: the last word counts as a prefix,
+    // and clauses that don't parse yet are skipped (errors wait for an explicit search)
+    public Page searchAsYouType(LibraryRepository repo, String partial, int k) {
+        if (partial == null || partial.isBlank()) return new Page(List.of(), 0);
+        // only a plain word being typed gets completed (not field clauses or quoted tags)
+        String last = partial.substring(partial.lastIndexOf(' ') + 1);
+        if (Character.isWhitespace(partial.charAt(partial.length() - 1))
+                || !last.matches("\\+?[^:<>=\"*~]+")) {
+            return topK(repo, partial, k, 0, true);
+        }
+        return topK(repo, partial + "*", k, 0, true);
+    }
+
+    // completions for a prefix, most common terms first
+    public List<String> suggest(LibraryRepository repo, String prefix, int limit) {
+        if (prefix == null || prefix.isBlank() || limit <= 0) return List.of();
+        String p = prefix.toLowerCase(Locale.ROOT).trim();
+
+        // keep the `limit` terms with the most items (min-heap on document count)
+        KeywordIndex kw = repo.keywordIndex();
+        PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(
+                Map.Entry.<String, Integer>comparingByValue()
+                        .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+        int scanned = 0;
+        for (String term : kw.termsStartingWith(p)) {
+            if (++scanned > SUGGEST_SCAN_LIMIT) break;
+            best.offer(Map.entry(term, kw.docFreq(term)));
+            if (best.size() > limit) best.poll();
+        }
+
+        List<String> out = new ArrayList<>(best.size());
+        while (!best.isEmpty()) out.add(best.poll().getKey());
+        Collections.reverse(out);
+        return out;
+    }
+
+    // dictionary terms a query word stands for, with a weight per term
+    private Map<String, Double> expand(KeywordIndex kw, String w) {
+        Map<String, Double> terms = new LinkedHashMap<>();
+        if (w.endsWith("*")) {
+            String prefix = w.substring(0, w.length() - 1);
+            for (String t : kw.termsWithPrefix(prefix, MAX_PREFIX_EXPANSIONS)) {
+                terms.put(t, t.equals(prefix) ? 1.0 : PREFIX_WEIGHT);
+            }
+            return terms;
+        }
+
+        boolean forceFuzzy = w.endsWith("~");
+        String word = forceFuzzy ? w.substring(0, w.length() - 1) : w;
+        if (kw.docFreq(word) > 0) {
+            terms.put(word, 1.0);
+        }
+        // only go looking for typos when asked to, or when the word matched nothing
+        if (forceFuzzy || terms.isEmpty()) {
+            fuzzyMatches(kw, word).forEach((t, d) -> terms.putIfAbsent(t, FUZZY_WEIGHTS[d]));
+        }
+        return terms;
+    }
+
+    // close dictionary terms within the fuzzy budget, term -> edit distance
+    private Map<String, Integer> fuzzyMatches(KeywordIndex kw, String word) {
+        // short words get fewer edits, otherwise everything matches everything
+        int maxEdits = Math.min(fuzzy.maxEdits(), word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2);
+        if (maxEdits <= 0 || fuzzy.maxCandidates() <= 0) return Map.of();
+
+        return kw.grams().similar(word, maxEdits, fuzzy.maxCandidates(), fuzzy.maxExpansions());
+    }
+
+    // BM25 over the field-weighted term frequencies stored in the index
+    private double[] bm25(KeywordIndex kw, Map<String, Double> terms) {
+        double[] scores = new double[kw.ordinalLimit()];
+        double n = kw.docCount();
+        double avgLen = Math.max(1.0, kw.averageDocLength());
+
+        terms.forEach((term, weight) -> {
+            checkCancelled();
+            PostingList p = kw.get(term);
+            double idf = idf(n, p.size());
+            p.forEachWithFreq((ord, tf) -> {
+                double norm = K1 * (1 - B + B * kw.docLength(ord) / avgLen);
+                scores[ord] += weight * idf * (tf * (K1 + 1)) / (tf + norm);
+            });
+        });
+        return scores;
+    }
+
+    // more than any item can score from these terms (each one adds at most weight * idf * (K1 + 1))
+    private double maxScore(KeywordIndex kw, Map<String, Double> terms) {
+        double n = kw.docCount();
+        double max = 1;
+        for (Map.Entry<String, Double> e : terms.entrySet()) {
+            max += e.getValue() * idf(n, kw.docFreq(e.getKey())) * (K1 + 1);
+        }
+        return max;
+    }
+
+    private static double idf(double n, double df) {
+        return Math.log(1 + (n - df + 0.5) / (df + 0.5));
+    }
+
+    // the `limit` best ordinals, best first, via a bounded min-heap
+    private int[] selectTop(PostingList candidates, double[] scores, int limit) {
+        if (limit <= 0) return new int[0];
+
+        int[] heap = new int[limit];
+        int[] size = {0};
+        candidates.forEach(ord -> {
+            if (size[0] < limit) {
+                heap[size[0]] = ord;
+                siftUp(heap, size[0]++, scores);
+            } else if (better(ord, heap[0], scores)) {
+                heap[0] = ord;
+                siftDown(heap, size[0], scores);
+            }
+        });
+
+        // drain worst-first into the back of the result
+        int[] out = new int[size[0]];
+        for (int n = size[0]; n > 0; n--) {
+            out[n - 1] = heap[0];
+            heap[0] = heap[n - 1];
+            siftDown(heap, n - 1, scores);
+        }
+        return out;
+    }
+
+    // searches run on background threads; a newer query interrupts the old one
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("search superseded");
+        }
+    }
+
+    // higher score wins, lower ordinal breaks ties
+    private static boolean better(int a, int b, double[] scores) {
+        return scores[a] != scores[b] ? scores[a] > scores[b] : a < b;
+    }
+
+    private static void siftUp(int[] heap, int i, double[] scores) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], heap[i], scores)) break;
+            int t = heap[i]; heap[i] = heap[parent]; heap[parent] = t;
+            i = parent;
+        }
+    }
 
-        List<ItemId> ordered = new ArrayList<>();
-        while (!pq.isEmpty()) {
-            ordered.add(pq.poll().getKey());
+    private static void siftDown(int[] heap, int n, double[] scores) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, worst = i;
+            if (l < n && better(heap[worst], heap[l], scores)) worst = l;
+            if (r < n && better(heap[worst], heap[r], scores)) worst = r;
+            if (worst == i) return;
+            int t = heap[i]; heap[i] = heap[worst]; heap[worst] = t;
+            i = worst;
         }
-        return ordered;
     }
 }
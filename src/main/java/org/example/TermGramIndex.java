@@ -0,0 +1,208 @@
+// src/main/java/org/example/TermGramIndex.java
+package org.example;
+
+import java.util.*;
+
+/**
+ * Trigram index over the term dictionary, for typo-tolerant lookups.
+ *
+ * Each term is split into trigrams of "$term$"; one edit can destroy at most
+ * three of them, so a term within k edits of the query must share at least
+ * (grams - 3k) trigrams with it. That count filter leaves a small candidate
+ * set, and only those get a real (bounded) Levenshtein check.
+ *
+ * For short words the bound drops to zero; there we still require one shared
+ * trigram, which misses a few pathological typos but keeps the scan bounded.
+ *
+ * Grams found in more than 1/COMMON_GRAM_FRACTION of a large dictionary
+ * ("ing", "$co") say little about a term and would make every lookup walk
+ * most of it, so they aren't counted; the shared-gram bound is lowered by
+ * as many. Counts go into a primitive table of at most MAX_COUNTED terms,
+ * filled from the rarest grams first.
+ */
+public class TermGramIndex {
+
+    // a gram in more than this share of the terms is skipped...
+    static final int COMMON_GRAM_FRACTION = 8;
+    // ...once the dictionary has this many terms
+    static final int COMMON_GRAM_MIN_TERMS = 2_000;
+    // distinct terms counted per lookup
+    static final int MAX_COUNTED = 1 << 15;
+
+    private final Map<String, PostingList> gramPostings = new HashMap<>();
+
+    // term <-> dense term ordinal, so gram postings can reuse PostingList
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final ArrayList<String> terms = new ArrayList<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+
+    public void add(String term) {
+        if (termIds.containsKey(term)) return;
+
+        int id;
+        if (!freeIds.isEmpty()) {
+            id = freeIds.pop();
+            terms.set(id, term);
+        } else {
+            id = terms.size();
+            terms.add(term);
+        }
+        termIds.put(term, id);
+
+        for (String g : gramsOf(term)) {
+            gramPostings.computeIfAbsent(g, k -> new PostingList()).add(id);
+        }
+    }
+
+    public void remove(String term) {
+        Integer id = termIds.remove(term);
+        if (id == null) return;
+
+        for (String g : gramsOf(term)) {
+            PostingList p = gramPostings.get(g);
+            if (p == null) continue;
+            p.remove(id);
+            if (p.isEmpty()) gramPostings.remove(g);
+        }
+        terms.set(id, null);
+        freeIds.push(id);
+    }
+
+    public int termCount() {
+        return termIds.size();
+    }
+
+    /**
+     * Terms within maxEdits of word, mapped to their edit distance.
+     * At most maxCandidates terms get the full distance check, and the
+     * closest maxResults are returned.
+     */
+    public Map<String, Integer> similar(String word, int maxEdits, int maxCandidates, int maxResults) {
+        Set<String> queryGrams = gramsOf(word);
+        int common = termIds.size() >= COMMON_GRAM_MIN_TERMS ? termIds.size() / COMMON_GRAM_FRACTION : Integer.MAX_VALUE;
+
+        // rarest grams first, so a full counter holds the most telling terms
+        List<PostingList> lists = new ArrayList<>(queryGrams.size());
+        int skipped = 0;
+        for (String g : queryGrams) {
+            PostingList p = gramPostings.get(g);
+            if (p == null) continue;
+            if (p.size() > common) {
+                skipped++;
+            } else {
+                lists.add(p);
+            }
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int minShared = Math.max(1, queryGrams.size() - 3 * maxEdits - skipped);
+
+        // count shared grams per term
+        Counter shared = new Counter();
+        for (PostingList p : lists) p.forEach(shared::increment);
+
+        // best candidates first: most shared grams
+        long[] ranked = shared.atLeast(minShared);
+        Arrays.sort(ranked);
+
+        List<Map.Entry<String, Integer>> found = new ArrayList<>();
+        for (int k = 0; k < ranked.length && k < maxCandidates; k++) {
+            String term = terms.get((int) ranked[k]);
+            if (term == null || Math.abs(term.length() - word.length()) > maxEdits) continue;
+
+            int d = boundedLevenshtein(word, term, maxEdits);
+            if (d <= maxEdits) found.add(Map.entry(term, d));
+        }
+
+        found.sort(Map.Entry.<String, Integer>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : found) {
+            if (out.size() >= maxResults) break;
+            out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
+    // term id -> shared grams, open addressing; ids are >= 0, so -1 marks a free slot
+    private static final class Counter {
+        private int[] keys = new int[64];
+        private int[] counts = new int[64];
+        private int size;
+
+        Counter() {
+            Arrays.fill(keys, -1);
+        }
+
+        // terms first seen once the table holds MAX_COUNTED are not counted
+        void increment(int id) {
+            int mask = keys.length - 1;
+            int i = (id * 0x9E3779B9) >>> 7 & mask;
+            while (keys[i] != -1) {
+                if (keys[i] == id) {
+                    counts[i]++;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            if (size >= MAX_COUNTED) return;
+            keys[i] = id;
+            counts[i] = 1;
+            if (++size * 2 > keys.length) grow();
+        }
+
+        // ids counted at least min times, most shared first (count negated in the high half, id low)
+        long[] atLeast(int min) {
+            long[] out = new long[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != -1 && counts[i] >= min) out[n++] = ((long) -counts[i] << 32) | keys[i];
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == -1) continue;
+                int i = (oldKeys[j] * 0x9E3779B9) >>> 7 & mask;
+                while (keys[i] != -1) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    // edit distance, giving up (returning max + 1) as soon as it must exceed max
+    static int boundedLevenshtein(String a, String b, int max) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+
+    private static Set<String> gramsOf(String term) {
+        String padded = "$" + term + "$";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+}
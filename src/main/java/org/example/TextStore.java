@@ -0,0 +1,170 @@
+// src/main/java/org/example/TextStore.java
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Large text fields of a loaded library, left in a memory-mapped region of
+ * the library file. Items hold a small Ref instead of the string; the text
+ * is decoded when something asks for it, and the most recent few are kept
+ * so flipping between items doesn't decode the same body again. A body
+ * may be compressed on its own (see LibraryCodec); it is inflated then too.
+ *
+ * Saving over the mapped file goes through replace(): the new file's
+ * bodies are mapped, the old mapping released before the rename (Windows
+ * won't replace a mapped file), and the saved items pointed at their text
+ * in the new file. A Ref that was missed still reads through the old store,
+ * which forwards to the new one. All stores share one lock, so no text is
+ * being decoded while a region goes away.
+ */
+final class TextStore {
+
+    private static final int CACHE_SIZE = 64;
+    private static final Object LOCK = new Object();
+    // stores with a live mapping, so replace() can release the ones of the file it overwrites
+    private static final Map<TextStore, Boolean> MAPPED = new WeakHashMap<>();
+
+    // mapped once the reader reaches the bodies section
+    private ByteBuffer region;
+    // where region comes from, so it can be mapped again
+    private Path file;
+    private long position;
+    private long length;
+    // once unmapped for good: offset here -> the same text in the file that replaced this one
+    private Map<Long, Ref> forward;
+
+    private final Map<Long, String> recent = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // a saved description whose Ref has to follow it into the new file
+    record Moved(Item item, long offset, int length, int rawLength, LibraryCodec codec) {}
+
+    // map length bytes of ch from position; file is the path to map again from if that is ever needed
+    void attach(FileChannel ch, Path file, long position, long length) throws IOException {
+        synchronized (LOCK) {
+            this.region = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+            this.file = file.toAbsolutePath().normalize();
+            this.position = position;
+            this.length = length;
+            MAPPED.put(this, Boolean.TRUE);
+        }
+    }
+
+    Ref ref(long offset, int length, int rawLength, LibraryCodec codec) {
+        return new Ref(this, offset, length, rawLength, codec);
+    }
+
+    /**
+     * Move the library file written to tmp over target. Stores mapped from
+     * target are released first and mapped again if the move fails; after
+     * it, every moved item refers to its text in the new file.
+     */
+    static void replace(Path tmp, Path target, long bodyPosition, long bodyLength, List<Moved> moved)
+            throws IOException {
+        target = target.toAbsolutePath().normalize();
+        TextStore fresh = null;
+        if (!moved.isEmpty()) {
+            fresh = new TextStore();
+            // a mapping follows the file through the rename
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ)) {
+                fresh.attach(ch, target, bodyPosition, bodyLength);
+            }
+        }
+        synchronized (LOCK) {
+            List<TextStore> old = new ArrayList<>();
+            for (TextStore s : MAPPED.keySet()) {
+                if (s != fresh && target.equals(s.file)) old.add(s);
+            }
+            old.forEach(TextStore::unmap);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException ex) {
+                if (fresh != null) fresh.unmap();
+                for (TextStore s : old) s.remap();
+                throw ex;
+            }
+
+            Map<TextStore, Map<Long, Ref>> forwards = new IdentityHashMap<>();
+            for (Moved m : moved) {
+                Ref was = m.item().descriptionRef();
+                Ref now = fresh.ref(m.offset(), m.length(), m.rawLength(), m.codec());
+                forwards.computeIfAbsent(was.store(), s -> new HashMap<>()).put(was.offset(), now);
+                m.item().setDescriptionRef(now);
+            }
+            for (TextStore s : old) s.forward = forwards.getOrDefault(s, Map.of());
+        }
+    }
+
+    private void unmap() {
+        Mappings.unmap(region);
+        region = null;
+        MAPPED.remove(this);
+    }
+
+    private void remap() throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            attach(ch, file, position, length);
+        }
+    }
+
+    private String text(Ref ref) {
+        synchronized (LOCK) {
+            String s = recent.get(ref.offset());
+            if (s != null) return s;
+            if (region == null) {
+                // replaced by a save; null only for text no saved item had any more
+                Ref to = forward == null ? null : forward.get(ref.offset());
+                return to == null ? null : to.text();
+            }
+            ByteBuffer stored = region.slice((int) ref.offset(), ref.length());
+            if (ref.codec() == LibraryCodec.NONE) {
+                s = StandardCharsets.UTF_8.decode(stored).toString();
+            } else {
+                byte[] packed = new byte[ref.length()];
+                stored.get(packed);
+                byte[] raw = new byte[ref.rawLength()];
+                try {
+                    ref.codec().decompress(packed, 0, packed.length, raw, 0, raw.length);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                s = new String(raw, StandardCharsets.UTF_8);
+            }
+            recent.put(ref.offset(), s);
+            return s;
+        }
+    }
+
+    // a view of the mapping (null once it is gone): only for the save copying it, saves run one at a time
+    private ByteBuffer bytes(Ref ref) {
+        synchronized (LOCK) {
+            return region == null ? null : region.slice((int) ref.offset(), ref.length());
+        }
+    }
+
+    // where one text lives in the region, and how it was stored
+    record Ref(TextStore store, long offset, int length, int rawLength, LibraryCodec codec) {
+        String text() {
+            return store.text(this);
+        }
+
+        // the stored bytes, so a save with the same codec can copy the body without decoding it;
+        // null if this store has been replaced
+        ByteBuffer bytes() {
+            return store.bytes(this);
+        }
+    }
+}
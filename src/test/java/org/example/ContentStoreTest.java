@@ -0,0 +1,84 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ContentStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static ContentStore.Entry entry(String... terms) {
+        int[] freqs = new int[terms.length];
+        for (int i = 0; i < freqs.length; i++) freqs[i] = i + 1;
+        return new ContentStore.Entry(10, 20, terms.clone(), freqs);
+    }
+
+    private static Map<String, Integer> terms(ContentStore store, String path) {
+        Map<String, Integer> out = new HashMap<>();
+        store.forEachTerm(path, out::put);
+        return out;
+    }
+
+    @Test
+    public void dropsWordsWithTheLastFileUsingThem() {
+        ContentStore store = new ContentStore();
+        store.put("/a.txt", entry("piano", "scales"));
+        store.put("/b.txt", entry("piano", "chords"));
+        assertEquals(3, store.wordCount());
+
+        store.put("/a.txt", null);
+        assertEquals(2, store.wordCount());
+        assertEquals(Map.of("piano", 1, "chords", 2), terms(store, "/b.txt"));
+
+        // a replaced entry lets go of the words it no longer has
+        store.put("/b.txt", entry("chords", "modes"));
+        assertEquals(Map.of("chords", 1, "modes", 2), terms(store, "/b.txt"));
+        assertEquals(2, store.wordCount());
+    }
+
+    @Test
+    public void roundTripsThroughTheFile() throws Exception {
+        ContentStore store = new ContentStore();
+        store.put("/a.txt", entry("piano", "scales"));
+        store.put("/gone.txt", entry("lost"));
+        Path file = dir.resolve("lib.scol.content");
+        store.write(file, 7, path -> !path.equals("/gone.txt"));
+
+        ContentStore read = ContentStore.read(file, 7);
+        assertEquals(1, read.size());
+        assertEquals(Map.of("piano", 1, "scales", 2), terms(read, "/a.txt"));
+        assertTrue(read.isCurrent("/a.txt", 10, 20));
+        assertNull(ContentStore.read(file, 8));
+    }
+
+    @Test
+    public void forgetsAFileOnceNoItemPointsAtIt() {
+        LibraryRepository repo = new LibraryRepository();
+        IndexService index = new IndexService();
+        Item first = new Item("Notes");
+        Item second = new Item("Copy");
+        for (Item it : new Item[]{first, second}) {
+            it.setPathOrUrl("/notes.txt");
+            repo.add(it);
+            index.index(repo, it);
+        }
+        index.setContent(repo, "/notes.txt", entry("arpeggio"));
+        assertEquals(2, repo.keywordIndex().get("arpeggio").size());
+
+        index.unindex(repo, first);
+        assertTrue(repo.content().contains("/notes.txt"));
+
+        index.unindex(repo, second);
+        assertFalse(repo.content().contains("/notes.txt"));
+        assertEquals(0, repo.content().wordCount());
+        assertEquals(0, repo.keywordIndex().docFreq("arpeggio"));
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class FolderWatcherTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void pairsAMoveByFileName() {
+        Item song = ImportService.itemFor(Path.of("/music/old/song.mp3"));
+        Path to = Path.of("/music/new/song.mp3");
+        Map<Item, Path> moves = FolderWatcher.pairMoves(List.of(song), Set.of(to, Path.of("/music/new/other.mp3")));
+        assertEquals(Map.of(song, to), moves);
+    }
+
+    @Test
+    public void prefersTheMostAlikeFolder() {
+        Item a = ImportService.itemFor(Path.of("/docs/2023/a/notes.txt"));
+        Item b = ImportService.itemFor(Path.of("/docs/2024/b/notes.txt"));
+        Path toA = Path.of("/archive/2023/a/notes.txt");
+        Path toB = Path.of("/archive/2024/b/notes.txt");
+        Map<Item, Path> moves = FolderWatcher.pairMoves(List.of(a, b), Set.of(toB, toA));
+        assertEquals(toA, moves.get(a));
+        assertEquals(toB, moves.get(b));
+    }
+
+    @Test
+    public void pairsALoneRenameInTheSameFolder() {
+        Item note = ImportService.itemFor(Path.of("/notes/draft.md"));
+        Path to = Path.of("/notes/final.md");
+        assertEquals(Map.of(note, to), FolderWatcher.pairMoves(List.of(note), Set.of(to)));
+        // a different extension is a different file
+        assertTrue(FolderWatcher.pairMoves(List.of(note), Set.of(Path.of("/notes/final.pdf"))).isEmpty());
+    }
+
+    @Test
+    public void keepsItemsOfUnavailableRoots() throws Exception {
+        Path missing = dir.resolve("usb");
+        Path mountPoint = Files.createDirectory(dir.resolve("nas"));
+        Path live = Files.createDirectory(dir.resolve("live"));
+        Files.writeString(live.resolve("kept.txt"), "x");
+
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        Item offUsb = ImportService.itemFor(missing.resolve("album/track.mp3"));
+        Item offNas = ImportService.itemFor(mountPoint.resolve("film.mp4"));
+        Item kept = ImportService.itemFor(live.resolve("kept.txt"));
+        Item deleted = ImportService.itemFor(live.resolve("deleted.txt"));
+        repo.write(() -> List.of(offUsb, offNas, kept, deleted).forEach(it -> {
+            repo.add(it);
+            index.index(repo, it);
+        }));
+
+        FolderWatcher w = FolderWatcher.start(dir.resolve("lib.scol").toFile(), repo, index, (put, removed) -> { });
+        try {
+            w.watch(missing);
+            w.watch(mountPoint);
+            w.watch(live);
+            // roots are reconciled in order, so once live is done the others are too
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (repo.read(() -> repo.find(deleted.getId()).isPresent())) {
+                assertTrue(System.currentTimeMillis() < deadline, "live root was not reconciled");
+                Thread.sleep(20);
+            }
+        } finally {
+            w.close();
+        }
+        assertTrue(repo.find(offUsb.getId()).isPresent());
+        assertTrue(repo.find(offNas.getId()).isPresent());
+        assertTrue(repo.find(kept.getId()).isPresent());
+    }
+}
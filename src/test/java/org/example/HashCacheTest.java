@@ -0,0 +1,53 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class HashCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private File library() {
+        return dir.resolve("lib.scol").toFile();
+    }
+
+    @Test
+    public void seesAFileThatChangedSize() throws Exception {
+        Path f = Files.writeString(dir.resolve("a.txt"), "short");
+        HashCache cache = HashCache.load(library());
+        assertEquals(5, cache.sizeOf(f));
+
+        Files.writeString(f, "a good deal longer");
+        Files.setLastModifiedTime(f, FileTime.fromMillis(Files.getLastModifiedTime(f).toMillis() + 2_000));
+        assertEquals(18, cache.sizeOf(f));
+    }
+
+    @Test
+    public void retriesASaveThatFailed() throws Exception {
+        Path f = Files.writeString(dir.resolve("a.txt"), "content");
+        HashCache cache = HashCache.load(library());
+        cache.hash(f);
+
+        // a non-empty directory where the cache goes: the final move fails
+        Path target = HashCache.pathFor(library());
+        Files.createDirectories(target.resolve("blocker"));
+        assertThrows(IOException.class, cache::save);
+
+        Files.delete(target.resolve("blocker"));
+        Files.delete(target);
+        cache.save();
+        HashCache reloaded = HashCache.load(library());
+        assertArrayEquals(cache.hash(f), reloaded.hash(f));
+        assertEquals(0, reloaded.filesRead());
+    }
+}
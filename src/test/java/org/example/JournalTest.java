@@ -0,0 +1,127 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class JournalTest {
+
+    private static final long STAMP = 42;
+
+    @TempDir
+    Path dir;
+
+    private File library() {
+        return dir.resolve("lib.scol").toFile();
+    }
+
+    private Journal open(LibraryRepository repo, long stamp) throws Exception {
+        return Journal.open(library(), stamp, new PersistenceService(), repo, new IndexService());
+    }
+
+    @Test
+    public void replaysEntriesOverTheSnapshot() throws Exception {
+        Item a = new Item("Alpha");
+        Item b = new Item("Beta");
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.itemsPut(List.of(a, b));
+        j.itemDeleted(a.getId());
+        j.close();
+
+        var repo = new LibraryRepository();
+        open(repo, STAMP).close();
+        assertEquals(List.of("Beta"), repo.all().stream().map(Item::getTitle).toList());
+    }
+
+    @Test
+    public void cutsOffATornTail() throws Exception {
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.itemPut(new Item("Kept"));
+        j.close();
+        Path file = Journal.pathFor(library());
+        long good = Files.size(file);
+        // half an entry, as a crash mid-append leaves it
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        var repo = new LibraryRepository();
+        Journal reopened = open(repo, STAMP);
+        assertEquals(List.of("Kept"), repo.all().stream().map(Item::getTitle).toList());
+        assertEquals(good, reopened.size());
+
+        // appends continue after the last good entry
+        reopened.itemPut(new Item("After"));
+        reopened.close();
+        var again = new LibraryRepository();
+        open(again, STAMP).close();
+        assertEquals(List.of("Kept", "After"), again.all().stream().map(Item::getTitle).toList());
+    }
+
+    @Test
+    public void discardsAJournalForAnotherSnapshot() throws Exception {
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.itemPut(new Item("Old"));
+        j.close();
+
+        var repo = new LibraryRepository();
+        Journal reopened = open(repo, STAMP + 1);
+        assertEquals(0, repo.size());
+        assertFalse(reopened.hasChanges());
+        reopened.close();
+    }
+
+    @Test
+    public void skipsChangesToAnUnknownItem() throws Exception {
+        Item gone = new Item("Gone");
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.itemFieldsChanged(gone, Item.TITLE);
+        j.itemPut(new Item("After"));
+        j.close();
+
+        var repo = new LibraryRepository();
+        open(repo, STAMP).close();
+        assertEquals(List.of("After"), repo.all().stream().map(Item::getTitle).toList());
+    }
+
+    @Test
+    public void writesNestedBatchesWhenTheOuterOneEnds() throws Exception {
+        Item a = new Item("Alpha");
+        Item b = new Item("Beta");
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.batch(() -> {
+            j.undoPushed(new Memento(a, true));
+            j.itemsPut(List.of(a, b));
+            j.undoPushed(new Memento(b, true, true));
+        });
+        j.close();
+
+        var repo = new LibraryRepository();
+        open(repo, STAMP).close();
+        assertEquals(List.of("Alpha", "Beta"), repo.all().stream().map(Item::getTitle).toList());
+        assertEquals(2, repo.undoStack().size());
+        assertTrue(repo.undoStack().peek().joined());
+    }
+
+    @Test
+    public void recentsGoOutWithTheNextEntry() throws Exception {
+        Item a = new Item("Alpha");
+        Journal j = open(new LibraryRepository(), STAMP);
+        j.recentPushed(a.getId());
+        assertFalse(j.hasChanges());
+        j.itemPut(a);
+        assertTrue(j.hasChanges());
+        j.recentPushed(a.getId());
+        j.close();
+
+        var repo = new LibraryRepository();
+        open(repo, STAMP).close();
+        assertEquals(List.of(a.getId(), a.getId()), List.copyOf(repo.recentlyViewed()));
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class KeywordIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private KeywordIndex onSegment() throws Exception {
+        KeywordIndex built = new KeywordIndex();
+        built.add("apple", built.ordinalOf(new ItemId("a")), 1);
+        built.add("apricot", built.ordinalOf(new ItemId("b")), 2);
+        built.add("banana", built.ordinalOf(new ItemId("a")), 1);
+        Path file = dir.resolve("lib.scol.idx");
+        IndexSegment.write(file, built, 7);
+
+        KeywordIndex kw = new KeywordIndex();
+        kw.attach(IndexSegment.open(file, 7));
+        return kw;
+    }
+
+    private static int counted(KeywordIndex kw) {
+        int n = 0;
+        for (String ignored : kw.termsStartingWith("")) n++;
+        return n;
+    }
+
+    @Test
+    public void keepsTheTermCountOverASegment() throws Exception {
+        KeywordIndex kw = onSegment();
+        assertEquals(3, kw.termCount());
+
+        int b = kw.existingOrdinal(new ItemId("b"));
+        kw.remove("apricot", b);
+        kw.add("cherry", b, 1);
+        kw.add("apple", b, 1);
+        assertEquals(3, kw.termCount());
+        kw.remove("cherry", b);
+        assertEquals(2, kw.termCount());
+        kw.add("apricot", b, 1);
+        assertEquals(counted(kw), kw.termCount());
+    }
+
+    @Test
+    public void decodesAnUnchangedTermOnce() throws Exception {
+        KeywordIndex kw = onSegment();
+        PostingList first = kw.get("banana");
+        assertSame(first, kw.get("banana"));
+
+        // a change works on a copy, not on the list a search was handed
+        int b = kw.ordinalOf(new ItemId("b"));
+        kw.add("banana", b, 1);
+        assertEquals(1, first.size());
+        assertEquals(2, kw.get("banana").size());
+    }
+}
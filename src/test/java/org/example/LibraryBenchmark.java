@@ -0,0 +1,127 @@
+package org.example;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough timings for the library paths the performance work touched: search
+ * (postings, BM25 top-k, search-as-you-type, field clauses), full saves and
+ * loads per codec, a differential save, and NDJSON export. Not a test; run
+ * it by hand after `mvn test-compile`:
+ *
+ *   java -cp target/classes:target/test-classes org.example.LibraryBenchmark [items]
+ *
+ * The library is generated from a fixed seed, so runs on the same machine
+ * compare. Each step runs WARMUP times before the timed ROUNDS; the median
+ * is printed.
+ */
+public final class LibraryBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 5;
+    private static final String[] WORDS = ("budget review hiring plan travel invoice meeting notes draft final "
+            + "summer winter concert live remix album single demo lecture recipe garden photo family archive "
+            + "project report quarterly weekly monthly scan receipt contract design sketch").split(" ");
+
+    private LibraryBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path dir = Files.createTempDirectory("scol-bench");
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        var search = new SearchService();
+        generate(repo, n);
+        time("index " + n + " items", () -> index.reindex(repo));
+        System.out.printf("  %,d terms, %,d KB of postings%n",
+                repo.keywordIndex().termCount(), repo.keywordIndex().postingBytes() / 1024);
+
+        time("search 'budget review'", () -> search.topK(repo, "budget review", 50, 0));
+        time("search-as-you-type 'budget re'", () -> search.searchAsYouType(repo, "budget re", 50));
+        time("search 'tag:work rating>=3 plan'", () -> search.topK(repo, "tag:work rating>=3 plan", 50, 0));
+        time("search typo 'quartelry'", () -> search.topK(repo, "quartelry", 50, 0));
+        time("parse field query", () -> QueryParser.parse("tag:work category:audio rating>=3 created:2024 plan"));
+
+        var persist = new PersistenceService();
+        for (LibraryCodec codec : LibraryCodec.values()) {
+            File file = dir.resolve("bench-" + codec + ".scol").toFile();
+            time("save " + codec, () -> persist.saveTo(file, repo, codec));
+            System.out.printf("  %,d KB%n", file.length() / 1024);
+            time("load " + codec, () -> {
+                var loaded = new LibraryRepository();
+                persist.loadFrom(file, loaded);
+                new IndexService().ensureIndexed(loaded);
+            });
+        }
+
+        File file = dir.resolve("bench-delta.scol").toFile();
+        persist.saveChanges(file, repo);
+        Item first = repo.all().iterator().next();
+        time("differential save of one edit", () -> {
+            Item before = Journal.copyOf(first);
+            first.setRating((first.getRating() + 1) % 6);
+            index.update(repo, before, first);
+            persist.saveChanges(file, repo);
+        });
+
+        var ndjson = new NdjsonService();
+        Path export = dir.resolve("bench.ndjson");
+        time("NDJSON export", () -> ndjson.exportTo(export, repo));
+        System.out.printf("  %,d KB%n", Files.size(export) / 1024);
+
+        try (var files = Files.list(dir)) {
+            for (Path p : files.toList()) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private static void generate(LibraryRepository repo, int n) {
+        Random rnd = new Random(42);
+        for (int i = 0; i < n; i++) {
+            Item it = new Item(words(rnd, 2 + rnd.nextInt(3)) + " " + i);
+            boolean audio = rnd.nextInt(4) == 0;
+            it.setCategory(audio ? ItemCategory.AUDIO : ItemCategory.NOTE);
+            it.setMediaKind(audio ? MediaKind.AUDIO : MediaKind.OTHER);
+            it.setRating(rnd.nextInt(6));
+            it.setPathOrUrl("/library/" + WORDS[rnd.nextInt(WORDS.length)] + "/" + (i / 100) + "/file" + i
+                    + (audio ? ".mp3" : ".txt"));
+            List<String> tags = new ArrayList<>();
+            tags.add(rnd.nextBoolean() ? "work" : "home");
+            if (rnd.nextInt(3) == 0) tags.add(WORDS[rnd.nextInt(WORDS.length)]);
+            it.setTags(tags);
+            // about one in ten has a long description, left in the file's bodies section
+            it.setDescription(words(rnd, rnd.nextInt(10) == 0 ? 120 : 8));
+            repo.add(it);
+        }
+    }
+
+    private static String words(Random rnd, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static void time(String name, Step step) throws Exception {
+        for (int i = 0; i < WARMUP; i++) step.run();
+        long[] ns = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            step.run();
+            ns[i] = System.nanoTime() - start;
+        }
+        java.util.Arrays.sort(ns);
+        System.out.printf("%-36s %10.3f ms%n", name, ns[ROUNDS / 2] / 1e6);
+    }
+}
@@ -0,0 +1,109 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LibraryFormatTest {
+
+    private static final String LONG = "Budget review and hiring plan. ".repeat(20);
+
+    @TempDir
+    Path dir;
+
+    // the same library as the version 3 and 4 fixtures, which the writers of those releases produced
+    private static LibraryRepository sample() {
+        var repo = new LibraryRepository();
+        Item note = new Item(new ItemId("note-1"), "Meeting notes");
+        note.setTags(List.of("work", "weekly"));
+        note.setRating(4);
+        note.setCreatedAt(Instant.parse("2024-03-01T10:00:00Z"));
+        note.setDescription(LONG);
+        Item song = new Item(new ItemId("song-1"), "Blue in Green");
+        song.setCategory(ItemCategory.AUDIO);
+        song.setMediaKind(MediaKind.AUDIO);
+        song.setPathOrUrl("/music/kind-of-blue/03.mp3");
+        song.setCreatedAt(Instant.parse("2024-03-02T10:00:00Z"));
+        song.setDescription("short");
+        repo.add(note);
+        repo.add(song);
+        repo.recentlyViewed().push(song.getId());
+        repo.recentlyViewed().push(note.getId());
+        repo.undoStack().push(new Memento(new Item(new ItemId("old-1"), "Old draft"), true));
+        repo.taskQueue().add(new TodoTask("Renew passport", Instant.parse("2024-03-03T10:00:00Z"),
+                LocalDate.of(2024, 6, 30)));
+        return repo;
+    }
+
+    private static void assertSample(LibraryFormat.Contents c) {
+        assertEquals(0x1234L, c.stamp());
+        assertEquals(2, c.items().size());
+        Item note = c.items().get(0);
+        assertEquals("Meeting notes", note.getTitle());
+        assertEquals(List.of("work", "weekly"), note.getTags());
+        assertEquals(4, note.getRating());
+        assertEquals(Instant.parse("2024-03-01T10:00:00Z"), note.getCreatedAt());
+        assertEquals(LONG, note.getDescription());
+        Item song = c.items().get(1);
+        assertEquals(ItemCategory.AUDIO, song.getCategory());
+        assertEquals(MediaKind.AUDIO, song.getMediaKind());
+        assertEquals("/music/kind-of-blue/03.mp3", song.getPathOrUrl());
+        assertEquals("short", song.getDescription());
+        assertEquals(List.of(new ItemId("note-1"), new ItemId("song-1")), c.recents());
+        assertEquals("Old draft", c.undo().get(0).snapshot().getTitle());
+        assertTrue(c.undo().get(0).deleted());
+        assertEquals("Renew passport", c.tasks().get(0).getTitle());
+        assertEquals(LocalDate.of(2024, 6, 30), c.tasks().get(0).getDueDate());
+    }
+
+    @ParameterizedTest
+    @EnumSource(LibraryCodec.class)
+    public void roundTripsWithEveryCodec(LibraryCodec codec) throws Exception {
+        Path file = dir.resolve("lib.scol");
+        LibraryFormat.write(file, sample(), 0x1234L, codec);
+        assertEquals(0x1234L, LibraryFormat.readStamp(file));
+        assertSample(LibraryFormat.read(file, batch -> { }));
+    }
+
+    @Test
+    public void roundTripsManyBlocksAndMedia() throws Exception {
+        var repo = new LibraryRepository();
+        for (int i = 0; i < 5_000; i++) {
+            Item it = new Item("Track " + i);
+            it.setPathOrUrl("/music/album-" + (i / 12) + "/track-" + i + ".mp3");
+            it.setMedia(new MediaInfo(180_000 + i, "mp3", "Track " + i, "Artist " + i % 7, "Album " + i / 12,
+                    "Jazz", 1959));
+            repo.add(it);
+        }
+        for (LibraryCodec codec : LibraryCodec.values()) {
+            Path file = dir.resolve("many-" + codec + ".scol");
+            LibraryFormat.write(file, repo, 7, codec);
+            List<Item> items = LibraryFormat.read(file, batch -> { }).items();
+            assertEquals(repo.size(), items.size());
+            Item last = items.get(items.size() - 1);
+            assertEquals("/music/album-416/track-4999.mp3", last.getPathOrUrl());
+            assertEquals("Artist " + 4999 % 7, last.getMedia().artist());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 4})
+    public void readsEarlierVersions(int version) throws Exception {
+        Path file = dir.resolve("v" + version + ".scol");
+        try (var in = getClass().getResourceAsStream("/library-v" + version + ".scol")) {
+            Files.copy(in, file);
+        }
+        assertSample(LibraryFormat.read(file, batch -> { }));
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LzCodecTest {
+
+    private static byte[] roundTrip(byte[] raw, int off, int len) throws IOException {
+        byte[] packed = LzCodec.compress(raw, off, len);
+        assertNotNull(packed);
+        assertTrue(packed.length < len);
+        byte[] out = new byte[len];
+        LzCodec.decompress(packed, 0, packed.length, out, 0, len);
+        return out;
+    }
+
+    @Test
+    public void restoresRepetitiveText() throws Exception {
+        byte[] raw = "/music/kind-of-blue/0.mp3 jazz 1959\n".repeat(500).getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(raw, roundTrip(raw, 0, raw.length));
+    }
+
+    @Test
+    public void restoresAnOffsetSlice() throws Exception {
+        byte[] raw = ("xxxx" + "abcdefgh".repeat(100) + "yyyy").getBytes(StandardCharsets.UTF_8);
+        byte[] out = roundTrip(raw, 4, raw.length - 8);
+        assertEquals("abcdefgh".repeat(100), new String(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void restoresRandomDataWithRepeats() throws Exception {
+        Random rnd = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            // random runs copied from earlier on, at all distances and lengths (long ones too)
+            byte[] raw = new byte[1 + rnd.nextInt(200_000)];
+            int p = 0;
+            while (p < raw.length) {
+                int n = Math.min(raw.length - p, 1 + rnd.nextInt(rnd.nextBoolean() ? 16 : 600));
+                if (p > 4 && rnd.nextBoolean()) {
+                    int from = Math.max(0, p - 1 - rnd.nextInt(Math.min(p, 70_000)));
+                    for (int i = 0; i < n; i++) raw[p + i] = raw[from + i];
+                } else {
+                    for (int i = 0; i < n; i++) raw[p + i] = (byte) rnd.nextInt(4);
+                }
+                p += n;
+            }
+            byte[] packed = LzCodec.compress(raw, 0, raw.length);
+            if (packed == null) continue;
+            byte[] out = new byte[raw.length];
+            LzCodec.decompress(packed, 0, packed.length, out, 0, out.length);
+            assertArrayEquals(raw, out, "round " + round);
+        }
+    }
+
+    @Test
+    public void givesUpOnIncompressibleInput() {
+        byte[] raw = new byte[100_000];
+        new Random(1).nextBytes(raw);
+        assertNull(LzCodec.compress(raw, 0, raw.length));
+        assertNull(LzCodec.compress(new byte[0], 0, 0));
+        assertNull(LzCodec.compress(new byte[3], 0, 3));
+    }
+
+    @Test
+    public void rejectsDamagedInput() {
+        byte[] raw = "abcdefgh".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] packed = LzCodec.compress(raw, 0, raw.length);
+        byte[] out = new byte[raw.length];
+        assertThrows(IOException.class, () -> LzCodec.decompress(packed, 0, packed.length - 1, out, 0, out.length));
+        assertThrows(IOException.class, () -> LzCodec.decompress(packed, 0, packed.length, out, 0, out.length - 1));
+    }
+}
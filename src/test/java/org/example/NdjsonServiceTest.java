@@ -0,0 +1,132 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class NdjsonServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final NdjsonService ndjson = new NdjsonService();
+
+    private NdjsonService.ImportResult importInto(LibraryRepository repo, Path file) throws IOException {
+        return ndjson.importFrom(file, repo, new IndexService(), batch -> { });
+    }
+
+    @Test
+    public void roundTripsItemsAndTasks() throws Exception {
+        var repo = new LibraryRepository();
+        Item song = new Item("Quote \" slash \\ tab\t line\nend \u0001 ünï 😀");
+        song.setCategory(ItemCategory.AUDIO);
+        song.setMediaKind(MediaKind.AUDIO);
+        song.setRating(4);
+        song.setCreatedAt(Instant.parse("2024-03-01T10:00:00Z"));
+        song.setPathOrUrl("C:\\music\\song.mp3");
+        song.setDescription(null);
+        song.setTags(new ArrayList<>(List.of("jazz", "live \"take\"")));
+        song.setMedia(new MediaInfo(187_000, "mp3", "Song", "Artist", null, "Jazz", 1999));
+        repo.add(song);
+        repo.taskQueue().add(new TodoTask("Tag \"it\"", Instant.parse("2024-01-02T03:04:05Z"), LocalDate.of(2024, 6, 30)));
+
+        Path file = dir.resolve("out.ndjson");
+        assertEquals(2, ndjson.exportTo(file, repo));
+
+        var loaded = new LibraryRepository();
+        assertEquals(new NdjsonService.ImportResult(1, 1), importInto(loaded, file));
+        Item back = loaded.find(song.getId()).orElseThrow();
+        assertEquals(song.getTitle(), back.getTitle());
+        assertEquals(ItemCategory.AUDIO, back.getCategory());
+        assertEquals(MediaKind.AUDIO, back.getMediaKind());
+        assertEquals(4, back.getRating());
+        assertEquals(song.getCreatedAt(), back.getCreatedAt());
+        assertEquals(song.getPathOrUrl(), back.getPathOrUrl());
+        assertNull(back.getDescription());
+        assertEquals(song.getTags(), back.getTags());
+        assertEquals(song.getMedia(), back.getMedia());
+        TodoTask task = loaded.taskQueue().peek();
+        assertEquals("Tag \"it\"", task.getTitle());
+        assertEquals(LocalDate.of(2024, 6, 30), task.getDueDate());
+    }
+
+    @Test
+    public void parsesEscapesAndUnicodeSequences() throws Exception {
+        Map<String, Object> rec = Json.parseObject(
+                "{\"s\":\"a\\\"b\\\\c\\/d\\n\\t\\u00e9\\ud83d\\ude00\",\"n\":-12,\"d\":2.5e1,"
+                        + "\"b\":true,\"z\":null,\"l\":[1,\"x\",{\"k\":false}],\"o\":{}}");
+        assertEquals("a\"b\\c/d\n\té😀", rec.get("s"));
+        assertEquals(-12L, rec.get("n"));
+        assertEquals(25.0, rec.get("d"));
+        assertEquals(Boolean.TRUE, rec.get("b"));
+        assertTrue(rec.containsKey("z"));
+        assertNull(rec.get("z"));
+        assertEquals(List.of(1L, "x", Map.of("k", false)), rec.get("l"));
+        assertEquals(Map.of(), rec.get("o"));
+
+        StringBuilder out = new StringBuilder();
+        Json.writeString(out, "q\"\\\n\u0007");
+        assertEquals("\"q\\\"\\\\\\n\\u0007\"", out.toString());
+
+        assertThrows(IOException.class, () -> Json.parseObject("{\"s\":\"\\u12\"}"));
+        assertThrows(IOException.class, () -> Json.parseObject("{\"s\":\"\\x\"}"));
+        assertThrows(IOException.class, () -> Json.parseObject("{\"s\":1} extra"));
+        assertThrows(IOException.class, () -> Json.parseObject("[1]"));
+    }
+
+    @Test
+    public void stopsAtABadLineKeepingTheOnesBefore() throws Exception {
+        Path file = Files.writeString(dir.resolve("in.ndjson"), """
+                {"type":"item","title":"First"}
+
+                {"type":"task","title":"Call back"}
+                {"type":"item","title":"Broken",
+                {"type":"item","title":"Never"}
+                """);
+        var repo = new LibraryRepository();
+        IOException ex = assertThrows(IOException.class, () -> importInto(repo, file));
+        assertTrue(ex.getMessage().startsWith("Line 4:"), ex.getMessage());
+        assertEquals(List.of("First"), repo.all().stream().map(Item::getTitle).toList());
+        assertEquals(1, repo.taskQueue().size());
+    }
+
+    @Test
+    public void reportsAnUnknownRecordType() throws Exception {
+        Path file = Files.writeString(dir.resolve("in.ndjson"), "{\"type\":\"note\"}\n");
+        IOException ex = assertThrows(IOException.class, () -> importInto(new LibraryRepository(), file));
+        assertEquals("Line 1: unknown record type note", ex.getMessage());
+    }
+
+    @Test
+    public void replacesItemsWithTheSameId() throws Exception {
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        Item old = new Item("Old title");
+        old.setTags(new ArrayList<>(List.of("stale")));
+        repo.add(old);
+        index.index(repo, old);
+
+        Path file = Files.writeString(dir.resolve("in.ndjson"),
+                "{\"type\":\"item\",\"id\":\"" + old.getId().value() + "\",\"title\":\"New title\",\"tags\":[\"fresh\"]}\n"
+                        + "{\"type\":\"item\",\"title\":\"Without id\"}\n");
+        ndjson.importFrom(file, repo, index, batch -> { });
+
+        assertEquals(2, repo.size());
+        assertEquals("New title", repo.find(old.getId()).orElseThrow().getTitle());
+        SearchService search = new SearchService();
+        assertEquals(List.of(old.getId()), search.rankedSearch(repo, "fresh"));
+        assertTrue(search.rankedSearch(repo, "stale").isEmpty());
+        assertEquals(1, search.rankedSearch(repo, "without").size());
+    }
+}
@@ -1,17 +1,259 @@
 package org.example;
 
-import org.testng.annotations.Test;
-import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class PersistenceServiceTest {
+
+    @TempDir
+    Path dir;
+
     @Test
     public void roundTrip() throws Exception {
-        var repo = new LibraryRepository(); var it = new Item("Test"); repo.put(it);
-        var file = Files.createTempFile("lib", ".scol"); new PersistenceService().save(repo, file);
-        var loaded = new PersistenceService().load(file);
-        Assertions.assertTrue(loaded.all().stream().anyMatch(x -> x.getTitle().equals("Test")));
+        var repo = new LibraryRepository(); var it = new Item("Test"); repo.add(it);
+        var file = dir.resolve("lib.scol").toFile(); new PersistenceService().saveTo(file, repo);
+        var loaded = new LibraryRepository(); new PersistenceService().loadFrom(file, loaded);
+        assertTrue(loaded.all().stream().anyMatch(x -> x.getTitle().equals("Test")));
+    }
+
+    @Test
+    public void keepsUndoStepsJoined() throws Exception {
+        var repo = new LibraryRepository();
+        repo.undoStack().push(new Memento(new Item("Removed"), true, false));
+        repo.undoStack().push(new Memento(new Item("Kept"), false, true));
+        var file = dir.resolve("lib.scol").toFile();
+        new PersistenceService().saveTo(file, repo);
+
+        var loaded = new LibraryRepository();
+        new PersistenceService().loadFrom(file, loaded);
+        List<Memento> undo = List.copyOf(loaded.undoStack());
+        assertTrue(undo.get(0).joined());
+        assertFalse(undo.get(0).deleted());
+        assertFalse(undo.get(1).joined());
+        assertTrue(undo.get(1).deleted());
+    }
+
+    // descriptions stay mapped from the file after a load; saving over that file has to carry them along
+    @Test
+    public void savesOverTheFileItWasLoadedFrom() throws Exception {
+        String body = "Quarterly planning notes. ".repeat(40);
+        var repo = new LibraryRepository();
+        var it = new Item("Plans");
+        it.setDescription(body);
+        repo.add(it);
+        new IndexService().reindex(repo);
+        File file = dir.resolve("lib.scol").toFile();
+        var persist = new PersistenceService();
+        persist.saveTo(file, repo);
+
+        var loaded = new LibraryRepository();
+        var index = new IndexService();
+        persist.loadFrom(file, loaded);
+        index.ensureIndexed(loaded);
+        Item mapped = loaded.all().iterator().next();
+        assertNotNull(mapped.descriptionRef());
+
+        // once with the same codec (bytes copied), once with another (re-encoded)
+        persist.saveTo(file, loaded, PersistenceService.DEFAULT_CODEC);
+        assertEquals(body, mapped.getDescription());
+        persist.saveTo(file, loaded, LibraryCodec.LZ);
+        assertEquals(body, mapped.getDescription());
+        assertNotNull(loaded.keywordIndex().get("quarterly"));
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp")));
+        }
+
+        var again = new LibraryRepository();
+        persist.loadFrom(file, again);
+        assertEquals(body, again.all().iterator().next().getDescription());
+        assertNotNull(again.keywordIndex().get("quarterly"));
+    }
+
+    @Test
+    public void savesChangesAsADeltaAndLoadsThemBack() throws Exception {
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        Item a = new Item("Alpha");
+        Item b = new Item("Beta");
+        repo.add(a);
+        repo.add(b);
+        // enough of a library that the deltas stay small next to it
+        for (int i = 0; i < 200; i++) repo.add(new Item("Filler " + i));
+        index.reindex(repo);
+        File file = dir.resolve("lib.scol").toFile();
+        var persist = new PersistenceService();
+        assertFalse(persist.saveChanges(file, repo).differential());
+
+        Item before = Journal.copyOf(a);
+        a.setTitle("Alpha 2");
+        index.update(repo, before, a);
+        index.unindex(repo, b);
+        repo.remove(b.getId());
+        Item c = new Item("Gamma");
+        repo.add(c);
+        index.index(repo, c);
+        repo.undoStack().push(new Memento(b, true));
+        repo.taskQueue().add(new TodoTask("Call back", Instant.EPOCH, null));
+        repo.recentlyViewed().push(c.getId());
+
+        PersistenceService.SaveResult saved = persist.saveChanges(file, repo);
+        assertTrue(saved.differential());
+        // a's fields, b's removal, c, one recent, one undo push, one task
+        assertEquals(6, saved.records());
+        assertTrue(Files.exists(PersistenceService.deltaPathFor(file)));
+
+        LibraryRepository loaded = load(file);
+        assertEquals("Alpha 2", loaded.find(a.getId()).orElseThrow().getTitle());
+        assertTrue(loaded.find(b.getId()).isEmpty());
+        assertEquals("Gamma", loaded.find(c.getId()).orElseThrow().getTitle());
+        assertEquals("Beta", loaded.undoStack().peek().snapshot().getTitle());
+        assertEquals("Call back", loaded.taskQueue().peek().getTitle());
+        assertEquals(List.of(c.getId()), List.copyOf(loaded.recentlyViewed()));
+
+        // undo and the task go again: only a pop and a removal are written
+        repo.undoStack().pop();
+        repo.taskQueue().poll();
+        saved = persist.saveChanges(file, repo);
+        assertTrue(saved.differential());
+        assertEquals(2, saved.records());
+        LibraryRepository again = load(file);
+        assertTrue(again.undoStack().isEmpty());
+        assertTrue(again.taskQueue().isEmpty());
+        assertEquals(repo.size(), again.size());
+        assertEquals("Alpha 2", again.find(a.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    public void logsOnlyTheFieldsAnEditChanged() throws Exception {
+        var repo = new LibraryRepository();
+        Item a = new Item("Alpha");
+        a.setDescription("Long notes. ".repeat(500));
+        repo.add(a);
+        for (int i = 0; i < 200; i++) repo.add(new Item("Filler " + i));
+        new IndexService().reindex(repo);
+        File file = dir.resolve("lib.scol").toFile();
+        new PersistenceService().saveChanges(file, repo);
+
+        var loaded = new LibraryRepository();
+        var index = new IndexService();
+        var persist = new PersistenceService();
+        long stamp = persist.loadFrom(file, loaded);
+        index.ensureIndexed(loaded);
+        persist.loadChanges(file, stamp, loaded, index);
+        Item it = loaded.find(a.getId()).orElseThrow();
+
+        // the edit form sets every field; only the rating is different
+        edit(loaded, index, it, x -> {
+            x.setTitle(x.getTitle());
+            x.setDescription(x.getDescription());
+            x.setTags(new ArrayList<>(x.getTags()));
+            x.setRating(4);
+        });
+        assertEquals(1, persist.saveChanges(file, loaded).records());
+        edit(loaded, index, it, x -> x.setTitle("Alpha 2"));
+        assertEquals(1, persist.saveChanges(file, loaded).records());
+
+        assertEquals(List.of(Item.RATING, Item.TITLE), loggedFields(PersistenceService.deltaPathFor(file)));
+        assertTrue(Files.size(PersistenceService.deltaPathFor(file)) < 1_000);
+        Item back = load(file).find(a.getId()).orElseThrow();
+        assertEquals(4, back.getRating());
+        assertEquals("Alpha 2", back.getTitle());
+    }
+
+    @Test
+    public void loadsIndexesAndReplaysInOneStep() throws Exception {
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        for (int i = 0; i < 200; i++) repo.add(new Item("Filler " + i));
+        index.reindex(repo);
+        File file = dir.resolve("lib.scol").toFile();
+        var persist = new PersistenceService();
+        persist.saveChanges(file, repo);
+        Item added = new Item("Harpsichord");
+        repo.add(added);
+        index.index(repo, added);
+        assertTrue(persist.saveChanges(file, repo).differential());
+
+        var loaded = new LibraryRepository();
+        loaded.add(new Item("Replaced"));
+        new PersistenceService().loadIndexed(file, loaded, new IndexService());
+        assertEquals(201, loaded.size());
+        assertEquals(List.of(added.getId()), new SearchService().rankedSearch(loaded, "harpsichord"));
+        assertTrue(new SearchService().rankedSearch(loaded, "replaced").isEmpty());
+    }
+
+    private static void edit(LibraryRepository repo, IndexService index, Item it, Consumer<Item> change) {
+        Item before = Journal.copyOf(it);
+        change.accept(it);
+        index.update(repo, before, it);
+    }
+
+    // the field masks of the ITEM_FIELDS (8) records in a delta log
+    private static List<Integer> loggedFields(Path delta) throws Exception {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(delta));
+        in.position(16);
+        List<Integer> out = new ArrayList<>();
+        while (in.hasRemaining()) {
+            int length = in.getInt();
+            int start = in.position();
+            if (in.get() == 8) {
+                in.position(in.position() + 4 + in.getInt());
+                out.add(in.getInt());
+            }
+            in.position(start + length + 4);
+        }
+        return out;
+    }
+
+    private static LibraryRepository load(File file) throws Exception {
+        var repo = new LibraryRepository();
+        var index = new IndexService();
+        var persist = new PersistenceService();
+        long stamp = persist.loadFrom(file, repo);
+        index.ensureIndexed(repo);
+        persist.loadChanges(file, stamp, repo, index);
+        return repo;
+    }
+
+    // written by the first release: "SCOL" version 1 around a serialized LibraryRepository (UID 1)
+    @Test
+    public void loadsFirstReleaseFile() throws Exception {
+        File file = dir.resolve("old.scol").toFile();
+        try (var in = getClass().getResourceAsStream("/baseline-library.scol")) {
+            Files.copy(in, file.toPath());
+        }
+        var repo = new LibraryRepository();
+        long stamp = new PersistenceService().loadFrom(file, repo);
+
+        assertEquals(0, stamp);
+        List<String> titles = repo.all().stream().map(Item::getTitle).toList();
+        assertEquals(List.of("Meeting notes", "Blue in Green"), titles);
+
+        Item note = repo.all().iterator().next();
+        assertEquals(List.of("work", "weekly"), note.getTags());
+        assertEquals(4, note.getRating());
+        assertEquals("Budget review and hiring plan", note.getDescription());
+
+        Item song = repo.all().stream().skip(1).findFirst().orElseThrow();
+        assertEquals(ItemCategory.AUDIO, song.getCategory());
+        assertEquals(MediaKind.AUDIO, song.getMediaKind());
+        assertEquals("/music/kind-of-blue/03.mp3", song.getPathOrUrl());
+
+        assertEquals(List.of(note.getId(), song.getId()), List.copyOf(repo.recentlyViewed()));
+        assertEquals("Old draft", repo.undoStack().peek().snapshot().getTitle());
+        assertTrue(repo.undoStack().peek().deleted());
+        assertEquals("Renew passport", repo.taskQueue().peek().getTitle());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PostingListTest {
+
+    private static PostingList of(TreeSet<Integer> ords) {
+        PostingList p = new PostingList();
+        for (int ord : ords) p.add(ord);
+        return p;
+    }
+
+    private static TreeSet<Integer> random(Random rnd, int count, int bound) {
+        TreeSet<Integer> out = new TreeSet<>();
+        while (out.size() < count) out.add(rnd.nextInt(bound));
+        return out;
+    }
+
+    private static int[] toArray(TreeSet<Integer> ords) {
+        return ords.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void combinesListsInEveryForm() {
+        Random rnd = new Random(3);
+        // sparse lists stay arrays, dense ones become bitmaps; try every pairing
+        int[][] shapes = {{20, 100_000}, {5_000, 10_000}, {300, 2_000}, {0, 1}};
+        for (int[] sa : shapes) {
+            for (int[] sb : shapes) {
+                TreeSet<Integer> a = random(rnd, sa[0], sa[1]);
+                TreeSet<Integer> b = random(rnd, sb[0], sb[1]);
+                PostingList pa = of(a);
+                PostingList pb = of(b);
+
+                TreeSet<Integer> both = new TreeSet<>(a);
+                both.retainAll(b);
+                TreeSet<Integer> either = new TreeSet<>(a);
+                either.addAll(b);
+                TreeSet<Integer> onlyA = new TreeSet<>(a);
+                onlyA.removeAll(b);
+
+                assertArrayEquals(toArray(both), PostingList.and(pa, pb).toArray());
+                assertArrayEquals(toArray(either), PostingList.or(pa, pb).toArray());
+                assertArrayEquals(toArray(either), PostingList.union(List.of(pa, pb)).toArray());
+                assertArrayEquals(toArray(onlyA), PostingList.andNot(pa, pb).toArray());
+                assertEquals(either.size(), PostingList.or(pa, pb).size());
+            }
+        }
+    }
+
+    @Test
+    public void unionOfNothingIsEmpty() {
+        assertTrue(PostingList.union(List.of()).isEmpty());
+        assertTrue(PostingList.union(List.of(new PostingList(), new PostingList())).isEmpty());
+    }
+
+    @Test
+    public void switchesToABitmapAndBackKeepingFrequencies() {
+        PostingList p = new PostingList();
+        for (int ord = 0; ord < 1_000; ord++) p.add(ord, ord % 7 + 1);
+        // a thousand ints would take 4000 bytes; the bitmap is 16 words
+        assertTrue(p.sizeInBytes() < 4_000 + 1_000, "expected bitmap form, " + p.sizeInBytes() + " bytes");
+        assertEquals(1_000, p.size());
+        assertEquals(4, p.freq(500));
+        assertEquals(0, p.freq(1_000));
+        assertEquals(999, p.nextOrdinal(999));
+        assertEquals(-1, p.nextOrdinal(1_000));
+
+        // thin it out until the array is clearly smaller again
+        for (int ord = 0; ord < 1_000; ord++) {
+            if (ord % 100 != 0) assertTrue(p.remove(ord));
+        }
+        assertArrayEquals(new int[]{0, 100, 200, 300, 400, 500, 600, 700, 800, 900}, p.toArray());
+        assertEquals(7, p.freq(300));
+        assertEquals(5, p.freq(900));
+        assertEquals(100, p.nextOrdinal(1));
+        assertFalse(p.contains(150));
+        assertFalse(p.remove(150));
+    }
+
+    @Test
+    public void saturatesFrequenciesAndUpdatesInPlace() {
+        PostingList p = new PostingList();
+        assertTrue(p.add(5, 1_000));
+        assertEquals(PostingList.MAX_FREQ, p.freq(5));
+        assertFalse(p.add(5, 2));
+        assertEquals(2, p.freq(5));
+        assertEquals(1, p.size());
+
+        // set algebra drops frequencies
+        PostingList q = new PostingList();
+        q.add(5, 9);
+        assertEquals(1, PostingList.and(p, q).freq(5));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        PostingList p = new PostingList();
+        for (int ord = 0; ord < 200; ord++) p.add(ord * 2, 3);
+        PostingList copy = p.copy();
+        p.remove(0);
+        p.add(1);
+        assertTrue(copy.contains(0));
+        assertFalse(copy.contains(1));
+        assertEquals(200, copy.size());
+        assertEquals(3, copy.freq(398));
+    }
+}
@@ -0,0 +1,81 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class QueryParserTest {
+
+    @Test
+    public void splitsWordsFromClauses() {
+        QueryParser.Parsed p = QueryParser.parse("Piano tag:\"study notes\" +scales category:audio kind:VIDEO");
+        assertEquals(List.of("piano", "+scales"), p.words());
+        assertEquals(List.of(new FieldFilter.Tag("study notes"),
+                new FieldFilter.Category(ItemCategory.AUDIO),
+                new FieldFilter.Kind(MediaKind.VIDEO)), p.filters());
+    }
+
+    @Test
+    public void parsesRatingComparisons() {
+        assertEquals(new FieldFilter.Rating(4, FieldIndex.MAX_RATING), only("rating>=4"));
+        assertEquals(new FieldFilter.Rating(3, FieldIndex.MAX_RATING), only("rating>2"));
+        assertEquals(new FieldFilter.Rating(0, 1), only("rating<2"));
+        assertEquals(new FieldFilter.Rating(5, 5), only("rating:5"));
+    }
+
+    @Test
+    public void parsesCreatedSpans() {
+        long jan1 = LocalDate.of(2024, 1, 1).toEpochDay();
+        assertEquals(new FieldFilter.Created(jan1, LocalDate.of(2024, 12, 31).toEpochDay()), only("created:2024"));
+        assertEquals(new FieldFilter.Created(LocalDate.of(2024, 3, 1).toEpochDay(),
+                LocalDate.of(2024, 3, 31).toEpochDay()), only("created:2024-3"));
+        assertEquals(new FieldFilter.Created(jan1, LocalDate.of(2024, 6, 30).toEpochDay()),
+                only("created:2024-01-01..2024-06-30"));
+        assertEquals(new FieldFilter.Created(Long.MIN_VALUE, LocalDate.of(2023, 12, 31).toEpochDay()),
+                only("created:..2023-12"));
+        assertEquals(new FieldFilter.Created(LocalDate.of(2024, 5, 1).toEpochDay(), Long.MAX_VALUE),
+                only("created>=2024-05-01"));
+    }
+
+    @Test
+    public void parsesCodecAndDuration() {
+        assertEquals(new FieldFilter.Codec("aac"), only("codec:aac"));
+        assertEquals(new FieldFilter.Duration(180, Integer.MAX_VALUE), only("duration>=3:00"));
+        assertEquals(new FieldFilter.Duration(0, 89), only("duration<90"));
+        assertEquals(new FieldFilter.Duration(60, 300), only("duration:1:00..5:00"));
+        assertEquals(new FieldFilter.Duration(3720, 3720), only("duration=1:02:00"));
+    }
+
+    @Test
+    public void rejectsBadClausesOnSubmit() {
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("category:au"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("kind:vid"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("rating>=x"));
+        assertThrows(IllegalArgumentException.class, () -> QueryParser.parse("created:2024-0"));
+    }
+
+    @Test
+    public void skipsHalfTypedClausesWhileTyping() {
+        QueryParser.Parsed p = QueryParser.parse("piano category:au kind:vid duration>=3: tag:jazz", true);
+        assertEquals(List.of("piano"), p.words());
+        assertEquals(List.of(new FieldFilter.Tag("jazz")), p.filters());
+    }
+
+    @Test
+    public void treatsAnEmptyClauseAsAWord() {
+        QueryParser.Parsed p = QueryParser.parse("tag:");
+        assertEquals(List.of("tag:"), p.words());
+        assertTrue(p.filters().isEmpty());
+    }
+
+    private static FieldFilter only(String clause) {
+        QueryParser.Parsed p = QueryParser.parse(clause);
+        assertTrue(p.words().isEmpty());
+        assertEquals(1, p.filters().size());
+        return p.filters().get(0);
+    }
+}
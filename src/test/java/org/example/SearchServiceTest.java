@@ -0,0 +1,82 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SearchServiceTest {
+
+    private final SearchService search = new SearchService();
+
+    private static LibraryRepository library(Item... items) {
+        var repo = new LibraryRepository();
+        for (Item it : items) repo.add(it);
+        // enough unrelated items that document frequencies mean something
+        for (int i = 0; i < 200; i++) repo.add(new Item("Filler " + i));
+        new IndexService().reindex(repo);
+        return repo;
+    }
+
+    private static Item item(String title, String description) {
+        Item it = new Item(title);
+        it.setDescription(description);
+        return it;
+    }
+
+    @Test
+    public void ranksRareTermsAndTitlesHigher() {
+        Item common = item("Piano", null);
+        Item rare = item("Scales", null);
+        List<Item> others = new ArrayList<>();
+        for (int i = 0; i < 20; i++) others.add(item("Piano " + i, null));
+        Item inDescription = item("Lesson", "piano");
+        List<Item> all = new ArrayList<>(List.of(common, rare, inDescription));
+        all.addAll(others);
+        var repo = library(all.toArray(new Item[0]));
+
+        List<ItemId> ranked = search.rankedSearch(repo, "piano scales");
+        assertEquals(rare.getId(), ranked.get(0));
+        // a word in the title outweighs the same word in the description
+        assertTrue(ranked.indexOf(common.getId()) < ranked.indexOf(inDescription.getId()));
+    }
+
+    @Test
+    public void pagesThroughTheRanking() {
+        Item[] items = new Item[30];
+        for (int i = 0; i < items.length; i++) items[i] = item("Alpha", "alpha ".repeat(i % 5 + 1));
+        var repo = library(items);
+
+        List<ItemId> all = search.rankedSearch(repo, "alpha");
+        assertEquals(30, all.size());
+        SearchService.Page page = search.topK(repo, "alpha", 10, 10);
+        assertEquals(30, page.totalHits());
+        assertEquals(all.subList(10, 20), page.ids());
+        assertTrue(search.topK(repo, "alpha", 10, 30).ids().isEmpty());
+    }
+
+    @Test
+    public void ranksExactMatchesAboveRareTypos() {
+        List<Item> exact = new ArrayList<>();
+        for (int i = 0; i < 50; i++) exact.add(item("Color study " + i, "long notes about shading ".repeat(5)));
+        // rare, short and repeated: on BM25 alone it would come first
+        Item typo = item("Colour colour", "colour");
+        List<Item> all = new ArrayList<>(exact);
+        all.add(typo);
+        var repo = library(all.toArray(new Item[0]));
+
+        List<ItemId> ranked = search.rankedSearch(repo, "color~");
+        assertEquals(51, ranked.size());
+        assertEquals(typo.getId(), ranked.get(50));
+    }
+
+    @Test
+    public void findsTyposOfUnknownWords() {
+        Item it = item("Harpsichord", null);
+        var repo = library(it);
+        assertEquals(List.of(it.getId()), search.rankedSearch(repo, "harpsicord"));
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TermGramIndexTest {
+
+    @Test
+    public void findsATypoPastCommonGrams() {
+        TermGramIndex grams = new TermGramIndex();
+        // enough terms sharing "ing" and "ng$" that both count as common
+        for (int i = 0; i < 5_000; i++) grams.add("thing" + Integer.toString(i, 36) + "ing");
+        grams.add("tracking");
+        grams.add("trading");
+
+        Map<String, Integer> found = grams.similar("trackign", 2, 50, 5);
+        assertEquals(2, found.get("tracking"));
+        assertFalse(found.containsKey("thing0ing"));
+    }
+
+    @Test
+    public void ranksCloserTermsFirst() {
+        TermGramIndex grams = new TermGramIndex();
+        grams.add("colour");
+        grams.add("color");
+        grams.add("collar");
+        assertEquals(Map.of("color", 0, "colour", 1), grams.similar("color", 1, 10, 10));
+        assertEquals("color", grams.similar("colr", 2, 10, 10).keySet().iterator().next());
+    }
+}